@@ -1,6 +1,8 @@
 plugins {
   id("uk.gov.justice.hmpps.gradle-spring-boot") version "3.1.7"
   kotlin("plugin.spring") version "1.4.32"
+  id("me.champeau.jmh") version "0.6.5"
+  `java-test-fixtures`
 }
 
 configurations {
@@ -23,6 +25,7 @@ dependencies {
   implementation("org.springframework.boot:spring-boot-starter-oauth2-client")
   implementation("org.springframework.boot:spring-boot-starter-webflux")
 
+  implementation("io.micrometer:micrometer-registry-prometheus")
   implementation("org.springframework:spring-jms")
   implementation("com.amazonaws:amazon-sqs-java-messaging-lib:1.0.8")
 
@@ -33,13 +36,14 @@ dependencies {
   implementation("io.springfox:springfox-boot-starter:3.0.0")
 
   implementation("net.sf.ehcache:ehcache:2.10.6")
+  implementation("org.hibernate:hibernate-ehcache")
   implementation("org.apache.commons:commons-text:1.9")
   implementation("com.fasterxml.jackson.datatype:jackson-datatype-jsr310:2.12.2")
   implementation("com.fasterxml.jackson.module:jackson-module-kotlin:2.12.2")
   implementation("com.pauldijou:jwt-core_2.11:5.0.0")
   implementation("com.google.code.gson:gson:2.8.6")
 
-  implementation("software.amazon.awssdk:sns:2.16.44")
+  implementation("software.amazon.awssdk:sns:2.17.100")
 
   testAnnotationProcessor("org.projectlombok:lombok:1.18.20")
   testCompileOnly("org.projectlombok:lombok:1.18.20")
@@ -52,6 +56,25 @@ dependencies {
 
   testImplementation("org.springframework.security.oauth:spring-security-oauth2:2.5.1.RELEASE")
   testImplementation("org.springframework.security:spring-security-jwt:1.1.1.RELEASE")
+
+  // the synthetic data generator, kept out of the application jar
+  testFixturesImplementation("org.slf4j:slf4j-api")
+  testFixturesImplementation("org.springframework:spring-jdbc")
+  testFixturesImplementation("org.postgresql:postgresql:42.2.19")
+  jmhImplementation(testFixtures(project))
+}
+
+jmh {
+  jmhVersion.set("1.32")
+  // enough forks, iterations and a fixed heap that results are comparable from run to run
+  fork.set(2)
+  warmupIterations.set(5)
+  warmup.set("1s")
+  iterations.set(10)
+  timeOnIteration.set("1s")
+  jvmArgs.set(listOf("-Xms1g", "-Xmx1g"))
+  resultFormat.set("JSON")
+  humanOutputFile.set(file("$buildDir/results/jmh/human.txt"))
 }
 
 tasks {
@@ -60,4 +83,64 @@ tasks {
       jvmTarget = "15"
     }
   }
+
+  test {
+    useJUnitPlatform {
+      excludeTags("load")
+    }
+  }
+
+  register<Test>("loadTest") {
+    group = "verification"
+    description = "Runs a mixed workload through the application with the other services stubbed, see the README"
+    useJUnitPlatform {
+      includeTags("load")
+    }
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    // pass the load test settings through from the command line, e.g. -Dload.concurrency=16
+    systemProperties(System.getProperties().filterKeys { it.toString().startsWith("load.") }.mapKeys { it.key.toString() })
+    outputs.upToDateWhen { false }
+    testLogging.showStandardStreams = true
+  }
+
+  register<JavaExec>("generateData") {
+    group = "application"
+    description = "Fills a database with synthetic case notes, see the README"
+    classpath = sourceSets["testFixtures"].runtimeClasspath
+    mainClass.set("uk.gov.justice.hmpps.casenotes.datagen.CaseNoteDataGenerator")
+    args = listOf(
+      project.findProperty("datagen.url") ?: "jdbc:postgresql://localhost:5432/case_notes",
+      project.findProperty("datagen.username") ?: "case_notes",
+      project.findProperty("datagen.password") ?: "case_notes",
+      project.findProperty("datagen.offenders") ?: "10000",
+      project.findProperty("datagen.seed") ?: "42"
+    ).map { it.toString() }
+  }
+
+  register("jmhCompare") {
+    group = "verification"
+    description = "Compares the latest benchmark results with a baseline made locally, failing when any has become more than 10% slower"
+    doLast {
+      val baselineFile = file(project.findProperty("jmhBaseline") ?: "jmh-baseline.json")
+      val resultsFile = file("$buildDir/results/jmh/results.json")
+      if (!baselineFile.exists()) throw GradleException("No baseline at $baselineFile, create one by copying $resultsFile")
+
+      @Suppress("UNCHECKED_CAST")
+      fun scores(json: File) = (groovy.json.JsonSlurper().parse(json) as List<Map<String, Any?>>).associate {
+        val metric = it["primaryMetric"] as Map<*, *>
+        "${it["benchmark"]}${it["params"] ?: ""}" to Pair((metric["score"] as Number).toDouble(), (metric["scoreError"] as? Number)?.toDouble() ?: 0.0)
+      }
+      val baseline = scores(baselineFile)
+      val regressions = scores(resultsFile).mapNotNull { (benchmark, result) ->
+        val (score, error) = result
+        val (baselineScore, baselineError) = baseline[benchmark] ?: return@mapNotNull null
+        val change = (score - baselineScore) / baselineScore * 100
+        logger.lifecycle(String.format("%-110s %12.3f %12.3f %+7.1f%%", benchmark, baselineScore, score, change))
+        // all the benchmarks measure average time, so higher is slower; ignore changes within the measurement error
+        benchmark.takeIf { change > 10 && score - baselineScore > error + baselineError }
+      }
+      if (regressions.isNotEmpty()) throw GradleException("Benchmarks slower than the baseline: $regressions")
+    }
+  }
 }
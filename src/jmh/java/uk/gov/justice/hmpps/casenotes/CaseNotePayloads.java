@@ -0,0 +1,128 @@
+package uk.gov.justice.hmpps.casenotes;
+
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteAmendment;
+import uk.gov.justice.hmpps.casenotes.dto.NomisCaseNote;
+import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNote;
+import uk.gov.justice.hmpps.casenotes.model.ParentNoteType;
+import uk.gov.justice.hmpps.casenotes.model.SensitiveCaseNoteType;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Generates case notes that look like those in production - a spread of types, note lengths, authors and amendments -
+ * for the benchmarks.  The generator is seeded so that every run of a benchmark works on exactly the same data.
+ */
+public final class CaseNotePayloads {
+
+    private static final String[][] TYPES = {
+            {"GEN", "General", "OSE", "Offender Supervisor Entry"},
+            {"GEN", "General", "HIS", "History Sheet Entry"},
+            {"OBS", "Observation", "GEN", "General"},
+            {"OBS", "Observation", "SPECIAL", "Special"},
+            {"KA", "Key Worker Activity", "KS", "Key Worker Session"},
+            {"ACP", "Accredited Programme", "ASSESSMENT", "Assessment"},
+            {"POM", "POM Notes", "GEN", "General POM Note"},
+            {"POM", "POM Notes", "SPECIAL", "Special POM Note"},
+            {"NEG", "Negative Behaviour", "IEP_WARN", "IEP Warning"},
+            {"POS", "Positive Behaviour", "IEP_ENC", "IEP Encouragement"},
+    };
+    private static final String[] AGENCIES = {"MDI", "LEI", "BXI", "WWI", "PVI"};
+    private static final String WORDS = "the prisoner was seen on the wing this morning and discussed their progress with " +
+            "education work and family contact they were polite and engaged well but raised concerns about a visit " +
+            "which will be followed up by the key worker before the next review";
+
+    private final Random random;
+    private final LocalDateTime now = LocalDateTime.of(2021, 4, 1, 10, 0);
+
+    public CaseNotePayloads(final long seed) {
+        random = new Random(seed);
+    }
+
+    public List<OffenderCaseNote> offenderCaseNotes(final String offenderIdentifier, final int count) {
+        return IntStream.range(0, count).mapToObj(i -> offenderCaseNote(offenderIdentifier, i)).collect(Collectors.toList());
+    }
+
+    public List<NomisCaseNote> nomisCaseNotes(final String offenderIdentifier, final int count) {
+        return IntStream.range(0, count).mapToObj(i -> nomisCaseNote(offenderIdentifier, i)).collect(Collectors.toList());
+    }
+
+    private OffenderCaseNote offenderCaseNote(final String offenderIdentifier, final int i) {
+        final var type = TYPES[random.nextInt(TYPES.length)];
+        final var author = random.nextInt(50);
+        final var caseNote = OffenderCaseNote.builder()
+                .id(new UUID(random.nextLong(), random.nextLong()))
+                .offenderIdentifier(offenderIdentifier)
+                .occurrenceDateTime(dateTime())
+                .createDateTime(dateTime())
+                .locationId(AGENCIES[random.nextInt(AGENCIES.length)])
+                .authorUsername("USER" + author)
+                .authorUserId(String.valueOf(author))
+                .authorName("Author Name" + author)
+                .eventId(-i - 1)
+                .sensitiveCaseNoteType(SensitiveCaseNoteType.builder()
+                        .parentType(ParentNoteType.builder().type(type[0]).description(type[1]).build())
+                        .type(type[2])
+                        .description(type[3])
+                        .build())
+                .noteText(text())
+                .build();
+        IntStream.range(0, amendments()).forEach(a -> caseNote.addAmendment(text(), "USER" + author, "Author Name" + author, String.valueOf(author)));
+        return caseNote;
+    }
+
+    private NomisCaseNote nomisCaseNote(final String offenderIdentifier, final int i) {
+        final var type = TYPES[random.nextInt(TYPES.length)];
+        final var text = text();
+        return NomisCaseNote.builder()
+                .caseNoteId(i + 1)
+                .offenderIdentifier(offenderIdentifier)
+                .type(type[0])
+                .typeDescription(type[1])
+                .subType(type[2])
+                .subTypeDescription(type[3])
+                .source(random.nextBoolean() ? "INST" : "AUTO")
+                .creationDateTime(dateTime())
+                .occurrenceDateTime(dateTime())
+                .staffId((long) random.nextInt(50))
+                .authorName("Staff Name" + random.nextInt(50))
+                .text(text)
+                .originalNoteText(text)
+                .agencyId(AGENCIES[random.nextInt(AGENCIES.length)])
+                .amendments(IntStream.range(0, amendments())
+                        .mapToObj(a -> CaseNoteAmendment.builder()
+                                .additionalNoteText(text())
+                                .authorName("Staff Name" + random.nextInt(50))
+                                .authorUserId(String.valueOf(random.nextInt(50)))
+                                .creationDateTime(dateTime())
+                                .build())
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    private LocalDateTime dateTime() {
+        return now.minusMinutes(random.nextInt(5 * 365 * 24 * 60));
+    }
+
+    /**
+     * Most notes are a sentence or two, but some run to several paragraphs
+     */
+    private String text() {
+        final var length = random.nextInt(10) == 0 ? 1000 + random.nextInt(3000) : 50 + random.nextInt(400);
+        final var text = new StringBuilder(length);
+        while (text.length() < length) {
+            final var start = random.nextInt(WORDS.length() - 20);
+            text.append(WORDS, start, start + 20).append(' ');
+        }
+        return text.substring(0, length);
+    }
+
+    private int amendments() {
+        final var chance = random.nextInt(10);
+        return chance < 8 ? 0 : chance - 7;
+    }
+}
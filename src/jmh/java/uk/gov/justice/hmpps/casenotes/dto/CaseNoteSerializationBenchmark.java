@@ -0,0 +1,67 @@
+package uk.gov.justice.hmpps.casenotes.dto;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import uk.gov.justice.hmpps.casenotes.CaseNotePayloads;
+
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Writing a page of case notes as json, with the object mapper set up as the application's is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CaseNoteSerializationBenchmark {
+
+    @Param({"20", "500"})
+    public int caseNotes;
+
+    private ObjectMapper objectMapper;
+    private List<CaseNote> page;
+
+    @Setup
+    public void setUp() {
+        // matches spring.jackson in application.yml
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .dateFormat(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"))
+                .build();
+        page = new CaseNotePayloads(42).nomisCaseNotes("A1234AA", caseNotes)
+                .stream()
+                .map(cn -> CaseNote.builder()
+                        .caseNoteId(cn.getCaseNoteId().toString())
+                        .eventId(cn.getCaseNoteId())
+                        .offenderIdentifier(cn.getOffenderIdentifier())
+                        .occurrenceDateTime(cn.getOccurrenceDateTime())
+                        .authorName(cn.getAuthorName())
+                        .authorUserId(String.valueOf(cn.getStaffId()))
+                        .type(cn.getType())
+                        .typeDescription(cn.getTypeDescription())
+                        .subType(cn.getSubType())
+                        .subTypeDescription(cn.getSubTypeDescription())
+                        .source(cn.getSource())
+                        .text(cn.getOriginalNoteText())
+                        .creationDateTime(cn.getCreationDateTime())
+                        .amendments(cn.getAmendments())
+                        .locationId(cn.getAgencyId())
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
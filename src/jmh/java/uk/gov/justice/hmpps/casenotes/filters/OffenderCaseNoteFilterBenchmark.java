@@ -0,0 +1,80 @@
+package uk.gov.justice.hmpps.casenotes.filters;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNote;
+import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNoteAmendment;
+import uk.gov.justice.hmpps.casenotes.model.ParentNoteType;
+import uk.gov.justice.hmpps.casenotes.model.SensitiveCaseNoteType;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Predicate;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the criteria query for sensitive case notes, with just the prisoner as most requests have and with every
+ * filter set.  Hibernate is started with only the case note entities and without a database, as no sql is run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OffenderCaseNoteFilterBenchmark {
+
+    @Param({"offender", "all"})
+    public String filterBy;
+
+    private SessionFactory sessionFactory;
+    private CriteriaBuilder criteriaBuilder;
+    private OffenderCaseNoteFilter filter;
+
+    @Setup
+    public void setUp() {
+        final var registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.DIALECT, "org.hibernate.dialect.H2Dialect")
+                .applySetting("hibernate.temp.use_jdbc_metadata_defaults", false)
+                .applySetting(AvailableSettings.USE_SECOND_LEVEL_CACHE, false)
+                .build();
+        sessionFactory = new MetadataSources(registry)
+                .addAnnotatedClass(OffenderCaseNote.class)
+                .addAnnotatedClass(OffenderCaseNoteAmendment.class)
+                .addAnnotatedClass(SensitiveCaseNoteType.class)
+                .addAnnotatedClass(ParentNoteType.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        criteriaBuilder = sessionFactory.getCriteriaBuilder();
+
+        final var builder = OffenderCaseNoteFilter.builder().offenderIdentifier("A1234AA");
+        if ("all".equals(filterBy)) {
+            builder.locationId("MDI")
+                    .authorUsername("USER1")
+                    .type("POM")
+                    .subType("GEN")
+                    .startDate(LocalDateTime.of(2021, 1, 1, 0, 0))
+                    .endDate(LocalDateTime.of(2021, 4, 1, 0, 0));
+        }
+        filter = builder.build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public Predicate toPredicate() {
+        final var query = criteriaBuilder.createQuery(OffenderCaseNote.class);
+        return filter.toPredicate(query.from(OffenderCaseNote.class), query, criteriaBuilder);
+    }
+}
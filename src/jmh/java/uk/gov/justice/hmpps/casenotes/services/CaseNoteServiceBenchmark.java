@@ -0,0 +1,64 @@
+package uk.gov.justice.hmpps.casenotes.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.domain.Sort;
+import uk.gov.justice.hmpps.casenotes.CaseNotePayloads;
+import uk.gov.justice.hmpps.casenotes.dto.CaseNote;
+import uk.gov.justice.hmpps.casenotes.dto.NomisCaseNote;
+import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNote;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Mapping each source of case notes to the api model, and sorting the merged notes when a prisoner has notes both in
+ * NOMIS and held locally.  The sizes are a typical prisoner and one with a long history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CaseNoteServiceBenchmark {
+
+    private static final String OFFENDER_IDENTIFIER = "A1234AA";
+
+    @Param({"50", "1000"})
+    public int caseNotes;
+
+    private List<OffenderCaseNote> offenderCaseNotes;
+    private List<NomisCaseNote> nomisCaseNotes;
+    private List<CaseNote> merged;
+
+    @Setup
+    public void setUp() {
+        final var payloads = new CaseNotePayloads(42);
+        // sensitive notes are a small fraction of a prisoner's notes
+        offenderCaseNotes = payloads.offenderCaseNotes(OFFENDER_IDENTIFIER, Math.max(1, caseNotes / 10));
+        nomisCaseNotes = payloads.nomisCaseNotes(OFFENDER_IDENTIFIER, caseNotes);
+        merged = new ArrayList<>(mapNomisCaseNotes());
+        merged.addAll(mapOffenderCaseNotes());
+    }
+
+    @Benchmark
+    public List<CaseNote> mapOffenderCaseNotes() {
+        return offenderCaseNotes.stream().map(CaseNoteService::mapper).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<CaseNote> mapNomisCaseNotes() {
+        return nomisCaseNotes.stream().map(cn -> CaseNoteService.mapper(cn, OFFENDER_IDENTIFIER)).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<CaseNote> mergedSort() {
+        return CaseNoteService.sortByFieldName(merged, "occurrenceDateTime", Sort.Direction.DESC);
+    }
+}
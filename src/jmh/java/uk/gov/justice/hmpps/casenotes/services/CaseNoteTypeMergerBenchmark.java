@@ -0,0 +1,103 @@
+package uk.gov.justice.hmpps.casenotes.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Compares merging the NOMIS and sensitive case note types with the single pass merge, with looking up the shared
+ * result of an earlier merge of an equal (but not the same) NOMIS list, and with the recursive map based merge that
+ * was used before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CaseNoteTypeMergerBenchmark {
+
+    @Param({"20", "80"})
+    public int nomisTypes;
+
+    private final CaseNoteTypeMerger merger = new CaseNoteTypeMerger(10);
+    private List<CaseNoteType> nomis;
+    private List<CaseNoteType> nomisCopy;
+    private List<CaseNoteType> sensitive;
+
+    @Setup
+    public void setUp() {
+        nomis = types("N", nomisTypes, 8);
+        nomisCopy = types("N", nomisTypes, 8);
+        // a few of the sensitive types add sub types to NOMIS types, the rest are only held locally
+        sensitive = Stream.concat(types("N", 3, 4).stream(), types("S", 5, 6).stream()).collect(Collectors.toList());
+        merger.mergeAndSortList(nomis, sensitive);
+    }
+
+    @Benchmark
+    public List<CaseNoteType> singlePass() {
+        return CaseNoteTypeMerger.merge(nomis, sensitive, false);
+    }
+
+    @Benchmark
+    public List<CaseNoteType> shared() {
+        return merger.mergeAndSortList(nomisCopy, sensitive);
+    }
+
+    @Benchmark
+    public List<CaseNoteType> recursiveMaps() {
+        return merge(nomis, sensitive)
+                .stream()
+                .map(t -> CaseNoteType.builder()
+                        .code(t.getCode())
+                        .description(t.getDescription())
+                        .activeFlag(t.getActiveFlag())
+                        .source(t.getSource())
+                        .subCodes(t.getSubCodes().stream().sorted().collect(Collectors.toList()))
+                        .build())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static List<CaseNoteType> merge(final List<CaseNoteType> list1, final List<CaseNoteType> list2) {
+        final var map1 = list1.stream().collect(Collectors.toMap(CaseNoteType::getCode, cn -> cn));
+        final var map2 = list2.stream().collect(Collectors.toMap(CaseNoteType::getCode, cn -> cn));
+        final Map<String, CaseNoteType> mergedMap = Stream.of(map1, map2)
+                .flatMap(map -> map.entrySet().stream())
+                .collect(Collectors.toMap(
+                        Map.Entry::getKey,
+                        Map.Entry::getValue,
+                        (v1, v2) -> CaseNoteType.builder()
+                                .code(v1.getCode())
+                                .description(v2.getDescription())
+                                .activeFlag(v2.getActiveFlag())
+                                .subCodes(merge(v1.getSubCodes(), v2.getSubCodes()))
+                                .build(),
+                        HashMap::new));
+        return new ArrayList<>(mergedMap.values());
+    }
+
+    private static List<CaseNoteType> types(final String prefix, final int count, final int subTypes) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> CaseNoteType.builder()
+                        .code(prefix + i)
+                        .description("Type " + prefix + (count - i))
+                        .subCodes(IntStream.range(0, subTypes)
+                                .mapToObj(j -> CaseNoteType.builder().code(prefix + "SUB" + j).description("Sub type " + (subTypes - j)).build())
+                                .collect(Collectors.toList()))
+                        .build())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,62 @@
+package uk.gov.justice.hmpps.casenotes.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming event parser with parsing the SNS envelope and then the inner message into trees with Gson,
+ * which is what the listener used to do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OffenderEventParserBenchmark {
+
+    private static final String NOTIFICATION = "{\"Type\":\"Notification\",\"MessageId\":\"5f2a7d4e-3c8b-4c55-9d7f-2b0f3a5e9c11\"," +
+            "\"TopicArn\":\"arn:aws:sns:eu-west-2:000000000000:offender_events\",\"Message\":\"%s\",\"Timestamp\":\"2021-04-01T10:11:12.123Z\"," +
+            "\"SignatureVersion\":\"1\",\"Signature\":\"%s\",\"SigningCertURL\":\"https://sns.eu-west-2.amazonaws.com/SimpleNotificationService.pem\"," +
+            "\"UnsubscribeURL\":\"https://sns.eu-west-2.amazonaws.com/?Action=Unsubscribe\"," +
+            "\"MessageAttributes\":{\"eventType\":{\"Type\":\"String\",\"Value\":\"%s\"},\"contentType\":{\"Type\":\"String\",\"Value\":\"text/plain;charset=UTF-8\"}}}";
+
+    @Param({"DATA_COMPLIANCE_DELETE-OFFENDER", "BOOKING_NUMBER-CHANGED", "OFFENDER_MOVEMENT-RECEPTION"})
+    public String eventType;
+
+    private final OffenderEventParser parser = new OffenderEventParser();
+    private final Gson gson = new Gson();
+    private String notification;
+
+    @Setup
+    public void setUp() {
+        final var message = "{\\\"eventType\\\":\\\"" + eventType + "\\\",\\\"eventDatetime\\\":\\\"2021-04-01T10:11:12.123456\\\"," +
+                "\\\"offenderIdDisplay\\\":\\\"A1234AA\\\",\\\"bookingId\\\":1234567,\\\"movementSeq\\\":3,\\\"nomisEventType\\\":\\\"OFF_RECEP_OASYS\\\"}";
+        notification = String.format(NOTIFICATION, message, "a".repeat(344), eventType);
+    }
+
+    @Benchmark
+    public OffenderEvent streaming() {
+        return parser.parse(notification);
+    }
+
+    @Benchmark
+    public OffenderEvent gsonTwoPass() {
+        final var envelope = gson.fromJson(notification, JsonObject.class);
+        final var type = envelope.getAsJsonObject("MessageAttributes").getAsJsonObject("eventType").get("Value").getAsString();
+        final var message = gson.fromJson(envelope.get("Message").getAsString(), JsonObject.class);
+        return new OffenderEvent(type,
+                message.has("offenderIdDisplay") ? message.get("offenderIdDisplay").getAsString() : null,
+                message.has("bookingId") ? message.get("bookingId").getAsLong() : null,
+                Instant.parse(envelope.get("Timestamp").getAsString()),
+                envelope.get("MessageId").getAsString());
+    }
+}
@@ -3,9 +3,11 @@ package uk.gov.justice.hmpps.casenotes
 import org.springframework.boot.autoconfigure.SpringBootApplication
 import org.springframework.boot.runApplication
 import org.springframework.scheduling.annotation.EnableAsync
+import org.springframework.scheduling.annotation.EnableScheduling
 
 @SpringBootApplication
 @EnableAsync
+@EnableScheduling
 class OffenderCaseNotesApplication
 
 fun main(args: Array<String>) {
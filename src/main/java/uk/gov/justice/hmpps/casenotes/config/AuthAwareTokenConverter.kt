@@ -21,8 +21,23 @@ class AuthAwareTokenConverter : Converter<Jwt, AbstractAuthenticationToken> {
       .map(::SimpleGrantedAuthority).toSet()
 }
 
+/**
+ * The authentication for a request, holding the claims of its token that are needed later on so that the token is only
+ * parsed once.
+ */
 class AuthAwareAuthenticationToken(jwt: Jwt, userId: String, authorities: Collection<GrantedAuthority>) :
   JwtAuthenticationToken(jwt, authorities) {
 
   val userIdUser: UserIdUser = UserIdUser(jwt.subject, userId)
+
+  /**
+   * The user's roles without their ROLE_ prefix
+   */
+  val roles: Set<String> = authorities.map { it.authority.removePrefix("ROLE_") }.toSet()
+
+  val userName: String? = jwt.getClaimAsString("user_name")
+
+  val clientId: String? = jwt.getClaimAsString("client_id")
+
+  fun hasAnyRole(roles: Collection<String>): Boolean = roles.any { it in this.roles }
 }
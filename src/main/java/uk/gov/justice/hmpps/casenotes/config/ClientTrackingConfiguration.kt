@@ -1,18 +1,13 @@
 package uk.gov.justice.hmpps.casenotes.config
 
 import com.microsoft.applicationinsights.web.internal.ThreadContext
-import com.nimbusds.jwt.JWTClaimsSet
-import com.nimbusds.jwt.SignedJWT
-import org.apache.commons.lang3.StringUtils
 import org.slf4j.LoggerFactory
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression
 import org.springframework.context.annotation.Configuration
-import org.springframework.http.HttpHeaders
+import org.springframework.security.core.context.SecurityContextHolder
 import org.springframework.web.servlet.HandlerInterceptor
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer
-import java.text.ParseException
-import java.util.Optional
 import javax.servlet.http.HttpServletRequest
 import javax.servlet.http.HttpServletResponse
 
@@ -29,30 +24,19 @@ class ClientTrackingConfiguration(private val clientTrackingInterceptor: ClientT
   }
 }
 
+/**
+ * Adds the user and client of the request to its telemetry, taken from the claims held by the authentication rather
+ * than parsing the token again.
+ */
 @Configuration
 class ClientTrackingInterceptor : HandlerInterceptor {
   override fun preHandle(request: HttpServletRequest, response: HttpServletResponse, handler: Any): Boolean {
-    val token = request.getHeader(HttpHeaders.AUTHORIZATION)
-    val bearer = "Bearer "
-    if (StringUtils.startsWithIgnoreCase(token, bearer)) {
-      try {
-        val jwtBody = getClaimsFromJWT(token)
-        val properties = ThreadContext.getRequestTelemetryContext().httpRequestTelemetry.properties
-        val user = Optional.ofNullable(jwtBody.getClaim("user_name"))
-        user.map { it.toString() }.ifPresent { properties["username"] = it }
-        properties["clientId"] = jwtBody.getClaim("client_id").toString()
-      } catch (e: ParseException) {
-        log.warn("problem decoding jwt public key for application insights", e)
-      }
+    val authentication = SecurityContextHolder.getContext().authentication
+    if (authentication is AuthAwareAuthenticationToken) {
+      val properties = ThreadContext.getRequestTelemetryContext().httpRequestTelemetry.properties
+      authentication.userName?.let { properties["username"] = it }
+      authentication.clientId?.let { properties["clientId"] = it }
     }
     return true
   }
-
-  @Throws(ParseException::class)
-  private fun getClaimsFromJWT(token: String): JWTClaimsSet =
-    SignedJWT.parse(token.replace("Bearer ", "")).jwtClaimsSet
-
-  companion object {
-    private val log = LoggerFactory.getLogger(ClientTrackingInterceptor::class.java)
-  }
 }
@@ -31,11 +31,18 @@ open class JmsConfig {
 
   @Bean
   @Suppress("SpringJavaInjectionPointsAutowiringInspection")
-  open fun jmsListenerContainerFactory(awsSqsClient: AmazonSQS?): DefaultJmsListenerContainerFactory {
+  open fun jmsListenerContainerFactory(
+    awsSqsClient: AmazonSQS?,
+    @Value("\${sqs.listener.concurrency:1-4}") concurrency: String,
+    @Value("\${sqs.listener.mode:jms}") listenerMode: String
+  ): DefaultJmsListenerContainerFactory {
     val factory = DefaultJmsListenerContainerFactory()
     factory.setConnectionFactory(SQSConnectionFactory(ProviderConfiguration(), awsSqsClient))
     factory.setDestinationResolver(DynamicDestinationResolver())
-    factory.setConcurrency("1")
+    // per prisoner ordering is preserved by EventListener partitioning the work, not by limiting the consumers
+    factory.setConcurrency(concurrency)
+    // in batch mode the queue is consumed by EventBatchListener instead
+    factory.setAutoStartup(listenerMode != "batch")
     factory.setSessionAcknowledgeMode(Session.CLIENT_ACKNOWLEDGE)
     factory.setErrorHandler { t: Throwable? -> log.error("Error caught in jms listener", t) }
     return factory
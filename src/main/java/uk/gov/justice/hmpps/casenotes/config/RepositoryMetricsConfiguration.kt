@@ -0,0 +1,45 @@
+package uk.gov.justice.hmpps.casenotes.config
+
+import io.micrometer.core.instrument.Tags
+import org.aopalliance.intercept.MethodInterceptor
+import org.springframework.beans.factory.ObjectProvider
+import org.springframework.beans.factory.config.BeanPostProcessor
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport
+import uk.gov.justice.hmpps.casenotes.health.CallMetrics
+import java.util.function.Supplier
+
+/**
+ * Times every call to a repository, tagged by the repository and method, by adding an interceptor to each repository
+ * proxy as it is created.
+ */
+@Configuration
+class RepositoryMetricsConfiguration {
+  companion object {
+    // static, as post processors are created before the rest of the configuration
+    @Bean
+    @JvmStatic
+    fun repositoryMetricsPostProcessor(callMetricsProvider: ObjectProvider<CallMetrics>): BeanPostProcessor = object : BeanPostProcessor {
+      private val callMetrics by lazy { callMetricsProvider.getObject() }
+
+      override fun postProcessBeforeInitialization(bean: Any, beanName: String): Any {
+        if (bean is RepositoryFactoryBeanSupport<*, *, *>) {
+          bean.addRepositoryProxyPostProcessor { factory, repositoryInformation ->
+            val repository = repositoryInformation.repositoryInterface.simpleName
+            factory.addAdvice(
+              MethodInterceptor { invocation ->
+                callMetrics.record(
+                  "case_notes.repository",
+                  Tags.of("repository", repository, "method", invocation.method.name),
+                  Supplier { invocation.proceed() }
+                )
+              }
+            )
+          }
+        }
+        return bean
+      }
+    }
+  }
+}
@@ -46,6 +46,8 @@ class ResourceServerConfiguration(private val tokenVerifyingAuthManager: TokenVe
       .and().csrf().disable()
       .authorizeRequests { auth ->
         auth
+          // the metrics name internal classes, methods and downstream errors, so are only for the scraper
+          .antMatchers("/prometheus").hasRole("CASE_NOTES_METRICS")
           .antMatchers(
             "/webjars/**",
             "/favicon.ico",
@@ -2,9 +2,7 @@ package uk.gov.justice.hmpps.casenotes.config
 
 import lombok.Data
 import lombok.extern.slf4j.Slf4j
-import org.apache.commons.lang3.RegExUtils
 import org.springframework.security.core.Authentication
-import org.springframework.security.core.GrantedAuthority
 import org.springframework.security.core.context.SecurityContextHolder
 import org.springframework.stereotype.Component
 import java.util.Optional
@@ -29,11 +27,12 @@ class SecurityUserContext {
   class UserIdUser(val username: String, val userId: String)
 
   companion object {
-    private fun hasMatchingRole(roles: List<String>, authentication: Authentication?): Boolean {
-      return authentication != null &&
-        authentication.authorities.stream()
-          .anyMatch { a: GrantedAuthority? -> roles.contains(RegExUtils.replaceFirst(a!!.authority, "ROLE_", "")) }
-    }
+    private fun hasMatchingRole(roles: List<String>, authentication: Authentication?): Boolean =
+      when (authentication) {
+        null -> false
+        is AuthAwareAuthenticationToken -> authentication.hasAnyRole(roles)
+        else -> authentication.authorities.any { roles.contains(it.authority.removePrefix("ROLE_")) }
+      }
 
     fun getOptionalCurrentUser(securityUserContext: SecurityUserContext): Optional<UserIdUser> {
       val authentication = securityUserContext.getAuthentication()
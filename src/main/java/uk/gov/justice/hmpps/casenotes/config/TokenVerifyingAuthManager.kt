@@ -2,51 +2,109 @@ package uk.gov.justice.hmpps.casenotes.config
 
 import com.fasterxml.jackson.annotation.JsonInclude
 import com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL
+import io.micrometer.core.instrument.MeterRegistry
 import org.springframework.beans.factory.annotation.Value
 import org.springframework.http.HttpHeaders
 import org.springframework.security.authentication.AuthenticationManager
 import org.springframework.security.core.Authentication
+import org.springframework.security.oauth2.jwt.Jwt
 import org.springframework.security.oauth2.jwt.JwtDecoder
 import org.springframework.security.oauth2.server.resource.BearerTokenAuthenticationToken
 import org.springframework.security.oauth2.server.resource.InvalidBearerTokenException
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationProvider
 import org.springframework.stereotype.Component
 import org.springframework.web.reactive.function.client.WebClient
+import reactor.core.publisher.Mono
+import java.security.MessageDigest
+import java.time.Duration
+import java.time.Instant
+import java.util.Base64
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
 
+/**
+ * Checks that bearer tokens are still active with the token verification service, when enabled, as well as decoding
+ * them.  So that each request doesn't need a call to the service the results are cached by a hash of the token, for
+ * no longer than the token is valid, and concurrent requests with the same token share a single call.
+ *
+ * Nothing tells this service when a token is revoked, so a revoked token whose result is cached is still accepted until
+ * the entry expires - tokenverification.cache.ttl is the longest that can be.
+ */
 @Suppress("SpringJavaInjectionPointsAutowiringInspection")
 @Component
 class TokenVerifyingAuthManager(
   jwtDecoder: JwtDecoder,
   private val tokenVerificationApiWebClient: WebClient,
-  @Value("\${tokenverification.enabled:false}") private val tokenVerificationEnabled: Boolean
+  private val meterRegistry: MeterRegistry,
+  @Value("\${tokenverification.enabled:false}") private val tokenVerificationEnabled: Boolean,
+  @Value("\${tokenverification.cache.ttl:PT1M}") private val cacheTtl: Duration,
+  @Value("\${tokenverification.cache.max-size:10000}") private val cacheMaxSize: Int
 ) :
   AuthenticationManager {
 
   private val jwtAuthenticationProvider = JwtAuthenticationProvider(jwtDecoder)
 
+  private val verified: MutableMap<String, Verification> = Collections.synchronizedMap(
+    object : LinkedHashMap<String, Verification>(16, 0.75f, true) {
+      override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Verification>) = size > cacheMaxSize
+    }
+  )
+  private val inFlight = ConcurrentHashMap<String, Mono<Boolean>>()
+
   init {
     jwtAuthenticationProvider.setJwtAuthenticationConverter(AuthAwareTokenConverter())
   }
 
   override fun authenticate(authentication: Authentication): Authentication {
+    // decoding first rejects badly signed and expired tokens without a call, and gives the expiry for the cache
+    val result = jwtAuthenticationProvider.authenticate(authentication)
 
     if (tokenVerificationEnabled) {
       val bearer = authentication as BearerTokenAuthenticationToken
 
-      // firstly check the jwt is still valid
-      val tokenDto = tokenVerificationApiWebClient.post().uri("/token/verify")
-        .header(HttpHeaders.AUTHORIZATION, "Bearer ${bearer.token}")
-        .retrieve()
-        .bodyToMono(TokenDto::class.java)
-        .blockOptional()
-      val tokenActive = tokenDto.map { it.active }.orElse(false)
-
       // can't proceed if the token is then not active
-      if (!tokenActive) throw InvalidBearerTokenException("Token verification failed")
+      if (!isActive(bearer.token, result.principal as Jwt)) throw InvalidBearerTokenException("Token verification failed")
     }
 
-    return jwtAuthenticationProvider.authenticate(authentication)
+    return result
   }
+
+  private fun isActive(token: String, jwt: Jwt): Boolean {
+    val key = hash(token)
+    verified[key]?.takeIf { it.expiresAt.isAfter(Instant.now()) }?.let {
+      meterRegistry.counter("case_notes.token_verification", "result", "cache").increment()
+      return it.active
+    }
+
+    var caller = false
+    val verification = inFlight.computeIfAbsent(key) {
+      caller = true
+      verify(token)
+        .doOnNext { active -> verified[key] = Verification(active, expiry(jwt)) }
+        .doFinally { inFlight.remove(key) }
+        .cache()
+    }
+    meterRegistry.counter("case_notes.token_verification", "result", if (caller) "verified" else "coalesced").increment()
+    return verification.block() ?: false
+  }
+
+  private fun verify(token: String): Mono<Boolean> =
+    tokenVerificationApiWebClient.post().uri("/token/verify")
+      .header(HttpHeaders.AUTHORIZATION, "Bearer $token")
+      .retrieve()
+      .bodyToMono(TokenDto::class.java)
+      .map { it.active }
+      .defaultIfEmpty(false)
+
+  private fun expiry(jwt: Jwt): Instant {
+    val ttlExpiry = Instant.now().plus(cacheTtl)
+    return jwt.expiresAt?.takeIf { it.isBefore(ttlExpiry) } ?: ttlExpiry
+  }
+
+  private fun hash(token: String): String =
+    Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(token.toByteArray()))
+
+  private data class Verification(val active: Boolean, val expiresAt: Instant)
 }
 
 @JsonInclude(NON_NULL)
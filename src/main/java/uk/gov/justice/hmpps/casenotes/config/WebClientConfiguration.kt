@@ -4,7 +4,6 @@ import io.netty.channel.ChannelOption
 import io.netty.handler.timeout.ReadTimeoutHandler
 import io.netty.handler.timeout.WriteTimeoutHandler
 import org.hibernate.validator.constraints.URL
-import org.slf4j.LoggerFactory
 import org.springframework.beans.factory.annotation.Qualifier
 import org.springframework.beans.factory.annotation.Value
 import org.springframework.context.annotation.Bean
@@ -34,7 +33,8 @@ class WebClientConfiguration(
   @Value("\${oauth.api.base.url}") private val oauthApiBaseUrl: @URL String,
   /** OAUTH2 API Rest URL endpoint ("http://localhost:8100") */
   @Value("\${tokenverification.api.base.url}") private val tokenVerificationApiBaseUrl: @URL String,
-  @Value("\${api.health-timeout:1s}") private val healthTimeout: Duration
+  @Value("\${api.health-timeout:1s}") private val healthTimeout: Duration,
+  private val webClientWarmup: WebClientWarmup
 ) {
 
   @Bean
@@ -52,7 +52,7 @@ class WebClientConfiguration(
   @Bean
   fun tokenVerificationApiWebClient(builder: Builder): WebClient = builder.baseUrl(tokenVerificationApiBaseUrl)
     .clientConnector(
-      ReactorClientHttpConnector(HttpClient.create().warmupWithHealthPing(tokenVerificationApiBaseUrl))
+      ReactorClientHttpConnector(webClientWarmup.add(HttpClient.create(), tokenVerificationApiBaseUrl))
     )
     .build()
 
@@ -63,19 +63,18 @@ class WebClientConfiguration(
   private fun createForwardAuthWebClient(builder: Builder, url: @URL String): WebClient = builder.baseUrl(url)
     .filter(addAuthHeaderFilterFunction())
     .clientConnector(
-      ReactorClientHttpConnector(HttpClient.create().warmupWithHealthPing(tokenVerificationApiBaseUrl))
+      ReactorClientHttpConnector(webClientWarmup.add(HttpClient.create(), url))
     )
     .build()
 
   private fun createHealthClient(builder: Builder, url: @URL String): WebClient {
     val httpClient = HttpClient.create()
-      .warmupWithHealthPing(url)
       .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, healthTimeout.toMillis().toInt())
       .doOnConnected { connection ->
         connection.addHandlerLast(ReadTimeoutHandler(healthTimeout.toSeconds().toInt()))
           .addHandlerLast(WriteTimeoutHandler(healthTimeout.toSeconds().toInt()))
       }
-    return builder.clientConnector(ReactorClientHttpConnector(httpClient)).baseUrl(url).build()
+    return builder.clientConnector(ReactorClientHttpConnector(webClientWarmup.add(httpClient, url))).baseUrl(url).build()
   }
 
   private fun addAuthHeaderFilterFunction(): ExchangeFilterFunction =
@@ -117,21 +116,4 @@ class WebClientConfiguration(
       .apply(oauth2Client.oauth2Configuration())
       .build()
   }
-
-  companion object {
-    private val log = LoggerFactory.getLogger(this::class.java)
-  }
-
-  private fun HttpClient.warmupWithHealthPing(baseUrl: String): HttpClient {
-    log.info("Warming up web client for {}", baseUrl)
-    warmup().block()
-    log.info("Warming up web client for {} halfway through, now calling health ping", baseUrl)
-    try {
-      baseUrl("$baseUrl/health/ping").get().response().block(Duration.ofSeconds(30))
-    } catch (e: RuntimeException) {
-      log.error("Caught exception during warm up, carrying on regardless", e)
-    }
-    log.info("Warming up web client completed for {}", baseUrl)
-    return this
-  }
 }
@@ -0,0 +1,64 @@
+package uk.gov.justice.hmpps.casenotes.config
+
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.context.event.ApplicationStartedEvent
+import org.springframework.context.event.EventListener
+import org.springframework.stereotype.Component
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import reactor.netty.http.client.HttpClient
+import uk.gov.justice.hmpps.casenotes.health.ReadinessGate
+import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Warms up the http clients behind the web clients, and pings the health of the service each calls, so that the
+ * first real requests don't pay for it.  All clients are warmed up together once the application has started, rather
+ * than one at a time while the beans are created, and the application isn't ready until they have all finished or
+ * timed out.
+ */
+@Component
+class WebClientWarmup(
+  private val readinessGate: ReadinessGate,
+  @Value("\${api.warmup.enabled:true}") private val enabled: Boolean,
+  @Value("\${api.warmup.timeout:PT30S}") private val timeout: Duration
+) {
+  companion object {
+    private val log = LoggerFactory.getLogger(this::class.java)
+    private const val WORK = "web client warm up"
+  }
+
+  private val clients = CopyOnWriteArrayList<Client>()
+
+  fun add(httpClient: HttpClient, baseUrl: String): HttpClient {
+    clients += Client(httpClient, baseUrl)
+    return httpClient
+  }
+
+  @EventListener(ApplicationStartedEvent::class)
+  fun warmup() {
+    if (!enabled || clients.isEmpty()) return
+
+    readinessGate.hold(WORK)
+    val start = System.currentTimeMillis()
+    Flux.fromIterable(clients)
+      .flatMap { warmup(it) }
+      .doFinally {
+        log.info("Warming up {} web clients completed in {}ms", clients.size, System.currentTimeMillis() - start)
+        readinessGate.release(WORK)
+      }
+      .subscribe()
+  }
+
+  private fun warmup(client: Client): Mono<Void> =
+    client.httpClient.warmup()
+      .then(client.httpClient.get().uri("${client.baseUrl}/health/ping").response())
+      .timeout(timeout)
+      .doOnNext { log.info("Warmed up web client for {}, health ping returned {}", client.baseUrl, it.status()) }
+      .doOnError { log.warn("Unable to warm up web client for {}, carrying on regardless", client.baseUrl, it) }
+      .onErrorResume { Mono.empty() }
+      .then()
+
+  private class Client(val httpClient: HttpClient, val baseUrl: String)
+}
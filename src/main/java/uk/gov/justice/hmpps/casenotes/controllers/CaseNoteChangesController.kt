@@ -0,0 +1,84 @@
+package uk.gov.justice.hmpps.casenotes.controllers
+
+import io.swagger.annotations.Api
+import io.swagger.annotations.ApiOperation
+import io.swagger.annotations.ApiParam
+import io.swagger.annotations.ApiResponse
+import io.swagger.annotations.ApiResponses
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.format.annotation.DateTimeFormat
+import org.springframework.format.annotation.DateTimeFormat.ISO
+import org.springframework.http.MediaType.APPLICATION_JSON_VALUE
+import org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE
+import org.springframework.validation.annotation.Validated
+import org.springframework.web.bind.annotation.GetMapping
+import org.springframework.web.bind.annotation.RequestHeader
+import org.springframework.web.bind.annotation.RequestMapping
+import org.springframework.web.bind.annotation.RequestParam
+import org.springframework.web.bind.annotation.RestController
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteChangeEvent
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteChanges
+import uk.gov.justice.hmpps.casenotes.dto.ErrorResponse
+import uk.gov.justice.hmpps.casenotes.services.CaseNoteChangeBroadcaster
+import uk.gov.justice.hmpps.casenotes.services.CaseNoteService
+import java.time.Duration
+import java.time.LocalDateTime
+import javax.validation.constraints.Max
+import javax.validation.constraints.Min
+
+@Api(tags = ["case-note-changes"])
+@RestController
+@Validated
+@RequestMapping(value = ["case-note-changes"], produces = [APPLICATION_JSON_VALUE])
+class CaseNoteChangesController(
+  private val caseNoteService: CaseNoteService,
+  private val caseNoteChangeBroadcaster: CaseNoteChangeBroadcaster,
+  @Value("\${case-note-changes.safety-lag:PT30S}") private val safetyLag: Duration
+) {
+
+  @GetMapping
+  @ApiOperation(
+    value = "Sensitive case notes changed since a cursor", nickname = "case note changes",
+    notes = "Returns sensitive case notes for all offenders in the order they were created or amended.  Request the next page with the returned cursor.  " +
+      "Changes made in the last 30 seconds, by default, are left for a later request, so that changes still being saved aren't missed."
+  )
+  @ApiResponses(
+    ApiResponse(code = 200, message = "OK", response = CaseNoteChanges::class),
+    ApiResponse(code = 400, message = "Invalid cursor", response = ErrorResponse::class)
+  )
+  fun getCaseNoteChanges(
+    @ApiParam(value = "Cursor returned by the previous request.  Omit to start from fromDateTime")
+    @RequestParam("cursor", required = false) cursor: String?,
+    @ApiParam(value = "Earliest change required when no cursor is supplied", example = "2021-04-01T00:00:00")
+    @RequestParam("fromDateTime", required = false) @DateTimeFormat(iso = ISO.DATE_TIME) fromDateTime: LocalDateTime?,
+    @ApiParam(value = "Only return case notes with these types", example = "OMIC")
+    @RequestParam("type", required = false) types: Set<String>?,
+    @ApiParam(value = "Maximum number of changes to return", defaultValue = "100")
+    @RequestParam("size", required = false, defaultValue = "100") @Min(1) @Max(1000) size: Int
+  ): CaseNoteChanges =
+    caseNoteService.getCaseNoteChanges(
+      types, cursor, fromDateTime ?: LocalDateTime.parse("2019-01-01T00:00:00"), LocalDateTime.now().minus(safetyLag), size
+    )
+
+  @GetMapping(value = ["/stream"], produces = [TEXT_EVENT_STREAM_VALUE])
+  @ApiOperation(
+    value = "Stream of sensitive case note changes", nickname = "case note change stream",
+    notes = "Server sent events for sensitive case notes created, amended or deleted on this instance.  Each event id is the id of the change, " +
+      "and ids increase in the order changes are made.  Reconnect with Last-Event-ID to replay every change made since then, with the case note as it now is.  " +
+      "If more were made than can be replayed, the stream ends with a resync event holding a cursor to catch up from with this change feed.  " +
+      "Subscribers that fall too far behind are disconnected."
+  )
+  @ApiResponses(
+    ApiResponse(code = 200, message = "OK", response = CaseNoteChangeEvent::class)
+  )
+  fun streamCaseNoteChanges(
+    @ApiParam(value = "Only send changes to case notes made at this location", example = "MDI")
+    @RequestParam("locationId", required = false) locationId: String?,
+    @ApiParam(value = "Only send changes to case notes with these types", example = "OMIC")
+    @RequestParam("type", required = false) types: Set<String>?,
+    @ApiParam(value = "Event id of the last change received")
+    @RequestHeader("Last-Event-ID", required = false) lastEventId: Long?
+  ): SseEmitter =
+    caseNoteChangeBroadcaster.subscribe(locationId, types ?: setOf(), lastEventId)
+}
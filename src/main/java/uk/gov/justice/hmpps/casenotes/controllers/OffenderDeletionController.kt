@@ -0,0 +1,59 @@
+package uk.gov.justice.hmpps.casenotes.controllers
+
+import io.swagger.annotations.Api
+import io.swagger.annotations.ApiOperation
+import io.swagger.annotations.ApiParam
+import io.swagger.annotations.ApiResponse
+import io.swagger.annotations.ApiResponses
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import org.springframework.http.MediaType.APPLICATION_JSON_VALUE
+import org.springframework.validation.annotation.Validated
+import org.springframework.web.bind.annotation.GetMapping
+import org.springframework.web.bind.annotation.PathVariable
+import org.springframework.web.bind.annotation.PostMapping
+import org.springframework.web.bind.annotation.RequestBody
+import org.springframework.web.bind.annotation.RequestMapping
+import org.springframework.web.bind.annotation.RestController
+import uk.gov.justice.hmpps.casenotes.dto.ErrorResponse
+import uk.gov.justice.hmpps.casenotes.dto.OffenderDeletionStatus
+import uk.gov.justice.hmpps.casenotes.services.OffenderDeletionService
+import javax.validation.constraints.Size
+
+@Api(tags = ["offender-deletions"])
+@RestController
+@Validated
+@RequestMapping(value = ["offender-deletions"], produces = [APPLICATION_JSON_VALUE])
+class OffenderDeletionController(private val offenderDeletionService: OffenderDeletionService) {
+  companion object {
+    val log: Logger = LoggerFactory.getLogger(this::class.java)
+  }
+
+  @PostMapping
+  @ApiOperation(
+    value = "Delete all case notes for a list of offenders", nickname = "delete offender case notes",
+    notes = "Starts deleting the case notes of each offender, one offender at a time.  An unfinished deletion for an offender is resumed rather than started again, and offenders whose deletion is still running elsewhere are left out of the response."
+  )
+  @ApiResponses(
+    ApiResponse(code = 200, message = "Deletions requested", response = OffenderDeletionStatus::class, responseContainer = "List"),
+    ApiResponse(code = 400, message = "No offenders, or too many, requested", response = ErrorResponse::class)
+  )
+  fun deleteOffenders(
+    @ApiParam(value = "Offender identifiers", required = true, example = "[\"A1234AA\"]")
+    @RequestBody @Size(min = 1, max = 1000) offenderIdentifiers: List<String>
+  ): List<OffenderDeletionStatus> {
+    val runs = offenderIdentifiers.distinct().mapNotNull { offenderDeletionService.requestDeletion(it) }
+    log.info("Deleting case notes for {} offenders", runs.size)
+    offenderDeletionService.runDeletions(runs)
+    return runs.map { offenderDeletionService.getDeletion(it.id) }
+  }
+
+  @GetMapping("/{deletionId}")
+  @ApiOperation(value = "Progress of deleting an offender's case notes", nickname = "offender deletion status")
+  @ApiResponses(
+    ApiResponse(code = 200, message = "OK", response = OffenderDeletionStatus::class),
+    ApiResponse(code = 404, message = "Deletion not found", response = ErrorResponse::class)
+  )
+  fun getDeletion(@ApiParam(value = "Deletion id", required = true, example = "12") @PathVariable("deletionId") deletionId: Long): OffenderDeletionStatus =
+    offenderDeletionService.getDeletion(deletionId)
+}
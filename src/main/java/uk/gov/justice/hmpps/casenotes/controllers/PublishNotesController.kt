@@ -9,12 +9,17 @@ import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import org.springframework.format.annotation.DateTimeFormat
 import org.springframework.format.annotation.DateTimeFormat.ISO
+import org.springframework.http.HttpHeaders
 import org.springframework.http.MediaType.APPLICATION_JSON_VALUE
+import org.springframework.http.ResponseEntity
+import org.springframework.web.bind.annotation.GetMapping
+import org.springframework.web.bind.annotation.PathVariable
 import org.springframework.web.bind.annotation.PostMapping
 import org.springframework.web.bind.annotation.RequestMapping
 import org.springframework.web.bind.annotation.RequestParam
 import org.springframework.web.bind.annotation.RestController
-import uk.gov.justice.hmpps.casenotes.dto.CaseNote
+import uk.gov.justice.hmpps.casenotes.dto.ErrorResponse
+import uk.gov.justice.hmpps.casenotes.dto.PublishNotesJobStatus
 import uk.gov.justice.hmpps.casenotes.services.PublishNoteService
 import java.time.LocalDateTime
 import javax.validation.constraints.NotNull
@@ -28,23 +33,53 @@ class PublishNotesController(private val publishNoteService: PublishNoteService)
   }
 
   @PostMapping
-  @ApiOperation(value = "Publish sensitive case notes", nickname = "publish sensitive case notes")
-  @ApiResponses(ApiResponse(code = 200, message = "Number of notes to be published (asynchronously)"))
+  @ApiOperation(
+    value = "Publish sensitive case notes", nickname = "publish sensitive case notes",
+    notes = "Starts a publish notes job in the background.  The Location header points at the job's progress, which can be polled until the job has finished."
+  )
+  @ApiResponses(
+    ApiResponse(code = 202, message = "Number of notes to be published")
+  )
   fun publishCaseNotes(
     @ApiParam(value = "A timestamp that indicates the earliest record required")
     @RequestParam("fromDateTime", required = false) @DateTimeFormat(iso = ISO.DATE_TIME) fromDateTime: LocalDateTime?,
     @ApiParam(value = "A timestamp that indicates the latest record required", required = true)
     @NotNull @RequestParam("toDateTime") @DateTimeFormat(iso = ISO.DATE_TIME) toDateTime: LocalDateTime
-  ): Int {
+  ): ResponseEntity<Long> {
 
-    val caseNotes: List<CaseNote> = publishNoteService.findCaseNotes(
-      fromDateTime
-        ?: LocalDateTime.parse("2019-01-01T00:00:00"),
-      toDateTime
-    )
-    log.info("Found {} notes to publish", caseNotes.size)
-    publishNoteService.pushCaseNotes(caseNotes)
+    val from = fromDateTime ?: LocalDateTime.parse("2019-01-01T00:00:00")
+    val count = publishNoteService.countCaseNotes(from, toDateTime)
+    val job = publishNoteService.createJob(from, toDateTime, count)
+    log.info("Found {} notes to publish in job {}", count, job.id)
+    publishNoteService.runJob(job.id, job.runId)
 
-    return caseNotes.size
+    return ResponseEntity.accepted()
+      .header(HttpHeaders.LOCATION, "/publish-notes/jobs/${job.id}")
+      .body(count)
+  }
+
+  @GetMapping("/jobs/{jobId}")
+  @ApiOperation(value = "Progress of a publish notes job", nickname = "publish notes job status")
+  @ApiResponses(
+    ApiResponse(code = 200, message = "OK", response = PublishNotesJobStatus::class),
+    ApiResponse(code = 404, message = "Job not found", response = ErrorResponse::class)
+  )
+  fun getJob(@ApiParam(value = "Job id", required = true, example = "12") @PathVariable("jobId") jobId: Long): PublishNotesJobStatus =
+    publishNoteService.getJob(jobId)
+
+  @PostMapping("/jobs/{jobId}/resume")
+  @ApiOperation(
+    value = "Resume a publish notes job", nickname = "resume publish notes job",
+    notes = "Restarts a failed job, or one that has stopped recording progress, from its last checkpoint"
+  )
+  @ApiResponses(
+    ApiResponse(code = 200, message = "Job resumed", response = PublishNotesJobStatus::class),
+    ApiResponse(code = 400, message = "Job is completed or still running", response = ErrorResponse::class),
+    ApiResponse(code = 404, message = "Job not found", response = ErrorResponse::class)
+  )
+  fun resumeJob(@ApiParam(value = "Job id", required = true, example = "12") @PathVariable("jobId") jobId: Long): PublishNotesJobStatus {
+    val runId = publishNoteService.resumeJob(jobId)
+    publishNoteService.runJob(jobId, runId)
+    return publishNoteService.getJob(jobId)
   }
 }
@@ -0,0 +1,43 @@
+package uk.gov.justice.hmpps.casenotes.controllers
+
+import io.swagger.annotations.Api
+import io.swagger.annotations.ApiOperation
+import io.swagger.annotations.ApiParam
+import io.swagger.annotations.ApiResponse
+import io.swagger.annotations.ApiResponses
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.http.MediaType.APPLICATION_JSON_VALUE
+import org.springframework.validation.annotation.Validated
+import org.springframework.web.bind.annotation.PutMapping
+import org.springframework.web.bind.annotation.RequestMapping
+import org.springframework.web.bind.annotation.RequestParam
+import org.springframework.web.bind.annotation.RestController
+import uk.gov.justice.hmpps.casenotes.dto.DlqRedriveResult
+import uk.gov.justice.hmpps.casenotes.dto.ErrorResponse
+import uk.gov.justice.hmpps.casenotes.services.DlqRedriveService
+import javax.validation.constraints.Max
+import javax.validation.constraints.Min
+
+@Api(tags = ["queue-admin"])
+@RestController
+@Validated
+@ConditionalOnProperty("sqs.provider")
+@RequestMapping(value = ["queue-admin"], produces = [APPLICATION_JSON_VALUE])
+class QueueAdminController(private val dlqRedriveService: DlqRedriveService) {
+
+  @PutMapping("/retry-dlq")
+  @ApiOperation(
+    value = "Move messages from the dead letter queue back to the event queue", nickname = "retry dlq",
+    notes = "Moves messages in batches, at no more than the requested rate, until maxMessages have been moved or the dead letter queue is empty.  Each call is limited to a minute's work, so maxMessages can be at most 60 times messagesPerSecond; call again to move more."
+  )
+  @ApiResponses(
+    ApiResponse(code = 200, message = "OK", response = DlqRedriveResult::class),
+    ApiResponse(code = 400, message = "Invalid limits, more than a minute's work, or a redrive is already running", response = ErrorResponse::class)
+  )
+  fun retryDlq(
+    @ApiParam(value = "Maximum number of messages to move", defaultValue = "1000")
+    @RequestParam("maxMessages", required = false, defaultValue = "1000") @Min(1) @Max(60000) maxMessages: Int,
+    @ApiParam(value = "Maximum number of messages to move each second", defaultValue = "50")
+    @RequestParam("messagesPerSecond", required = false, defaultValue = "50") @Min(1) @Max(1000) messagesPerSecond: Int
+  ): DlqRedriveResult = dlqRedriveService.redrive(maxMessages, messagesPerSecond)
+}
@@ -0,0 +1,32 @@
+package uk.gov.justice.hmpps.casenotes.dto
+
+import java.nio.charset.StandardCharsets.UTF_8
+import java.time.LocalDateTime
+import java.util.Base64
+import java.util.UUID
+import javax.validation.ValidationException
+
+/**
+ * Position in the case note change feed, i.e. the (modifyDateTime, id) of the last change returned.  Handed to clients
+ * as an opaque url safe string.
+ */
+data class CaseNoteChangeCursor(val modifyDateTime: LocalDateTime, val id: UUID) {
+  fun encode(): String = Base64.getUrlEncoder().withoutPadding().encodeToString("$modifyDateTime|$id".toByteArray(UTF_8))
+
+  companion object {
+    @JvmStatic
+    fun decode(cursor: String): CaseNoteChangeCursor =
+      try {
+        val (modifyDateTime, id) = String(Base64.getUrlDecoder().decode(cursor), UTF_8).split('|', limit = 2)
+        CaseNoteChangeCursor(LocalDateTime.parse(modifyDateTime), UUID.fromString(id))
+      } catch (e: RuntimeException) {
+        throw ValidationException("Invalid change feed cursor $cursor")
+      }
+
+    /**
+     * Cursor that sits just before every change made at or after the given time
+     */
+    @JvmStatic
+    fun startingAt(fromDateTime: LocalDateTime): CaseNoteChangeCursor = CaseNoteChangeCursor(fromDateTime.minusNanos(1), UUID(0, 0))
+  }
+}
@@ -0,0 +1,42 @@
+package uk.gov.justice.hmpps.casenotes.dto
+
+import io.swagger.annotations.ApiModel
+import io.swagger.annotations.ApiModelProperty
+import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNote
+import java.time.LocalDateTime
+
+@ApiModel(description = "Notification that a sensitive case note has changed")
+data class CaseNoteChangeEvent(
+  @ApiModelProperty(value = "Id of this change, also sent as the server sent event id.  Ids increase in the order the changes were made", example = "123")
+  val changeId: Long,
+  @ApiModelProperty(value = "What happened to the case note", example = "CREATED")
+  val changeType: ChangeType,
+  @ApiModelProperty(value = "Case note id", example = "b56ec1d0-6256-4f3a-94e3-9a94840b05d3")
+  val caseNoteId: String,
+  @ApiModelProperty(value = "Case note event id", example = "-123")
+  val eventId: Int,
+  @ApiModelProperty(value = "Offender identifier", example = "A1234AA")
+  val offenderIdentifier: String,
+  @ApiModelProperty(value = "Case note type", example = "POM")
+  val type: String,
+  @ApiModelProperty(value = "Case note sub type", example = "GEN")
+  val subType: String,
+  @ApiModelProperty(value = "Location where the case note was made", example = "MDI")
+  val locationId: String?,
+  @ApiModelProperty(value = "When the change was made", example = "2021-04-01T10:11:12")
+  val changeDateTime: LocalDateTime
+) {
+  constructor(changeId: Long, changeType: ChangeType, cn: OffenderCaseNote) : this(
+    changeId = changeId,
+    changeType = changeType,
+    caseNoteId = cn.id.toString(),
+    eventId = cn.eventId,
+    offenderIdentifier = cn.offenderIdentifier,
+    type = cn.sensitiveCaseNoteType.parentType.type,
+    subType = cn.sensitiveCaseNoteType.type,
+    locationId = cn.locationId,
+    changeDateTime = LocalDateTime.now()
+  )
+
+  enum class ChangeType { CREATED, AMENDED, DELETED }
+}
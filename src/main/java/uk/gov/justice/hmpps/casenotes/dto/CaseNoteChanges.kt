@@ -0,0 +1,15 @@
+package uk.gov.justice.hmpps.casenotes.dto
+
+import io.swagger.annotations.ApiModel
+import io.swagger.annotations.ApiModelProperty
+
+@ApiModel(description = "A page of the sensitive case note change feed")
+data class CaseNoteChanges(
+  @ApiModelProperty(value = "Case notes created or amended after the requested cursor, oldest change first")
+  val changes: List<CaseNote>,
+  @ApiModelProperty(
+    value = "Cursor to request the next page with.  Returned even when there are no changes so that it can be polled",
+    example = "MjAyMS0wNC0wMVQxMDoxMToxMi4xMjM0NTZ8YjU2ZWMxZDAtNjI1Ni00ZjNhLTk0ZTMtOWE5NDg0MGIwNWQz"
+  )
+  val nextCursor: String
+)
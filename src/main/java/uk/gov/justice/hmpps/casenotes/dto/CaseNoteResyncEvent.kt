@@ -0,0 +1,13 @@
+package uk.gov.justice.hmpps.casenotes.dto
+
+import io.swagger.annotations.ApiModel
+import io.swagger.annotations.ApiModelProperty
+
+@ApiModel(description = "Last event on a change stream that missed more changes than can be replayed")
+data class CaseNoteResyncEvent(
+  @ApiModelProperty(
+    value = "Cursor to catch up from with the change feed at /case-note-changes, before subscribing again without a last event id",
+    example = "MjAyMS0wNC0wMVQxMDoxMToxMi4xMjM0NTZ8YjU2ZWMxZDAtNjI1Ni00ZjNhLTk0ZTMtOWE5NDg0MGIwNWQz"
+  )
+  val cursor: String
+)
@@ -0,0 +1,14 @@
+package uk.gov.justice.hmpps.casenotes.dto
+
+import io.swagger.annotations.ApiModel
+import io.swagger.annotations.ApiModelProperty
+
+@ApiModel(description = "Outcome of moving messages from the dead letter queue back to the event queue")
+data class DlqRedriveResult(
+  @ApiModelProperty(value = "Number of messages moved back to the event queue", example = "120")
+  val messagesMoved: Int,
+  @ApiModelProperty(value = "Number of messages that could not be sent to the event queue and were left on the dead letter queue", example = "0")
+  val messagesFailed: Int,
+  @ApiModelProperty(value = "How long the redrive took in milliseconds", example = "2400")
+  val elapsedMillis: Long
+)
@@ -0,0 +1,42 @@
+package uk.gov.justice.hmpps.casenotes.dto
+
+import com.fasterxml.jackson.annotation.JsonInclude
+import io.swagger.annotations.ApiModel
+import io.swagger.annotations.ApiModelProperty
+import uk.gov.justice.hmpps.casenotes.model.OffenderDeletion
+import java.time.LocalDateTime
+
+@ApiModel(description = "Progress of deleting the case notes of an offender")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+data class OffenderDeletionStatus(
+  @ApiModelProperty(value = "Deletion id", example = "12")
+  val id: Long,
+  @ApiModelProperty(value = "Offender identifier", example = "A1234AA")
+  val offenderIdentifier: String,
+  @ApiModelProperty(value = "Deletion status", example = "RUNNING", allowableValues = "RUNNING,COMPLETED,FAILED")
+  val status: OffenderDeletion.Status,
+  @ApiModelProperty(value = "Number of case notes deleted so far", example = "4000")
+  val caseNotesDeleted: Long,
+  @ApiModelProperty(value = "Number of case note amendments deleted so far", example = "120")
+  val amendmentsDeleted: Long,
+  @ApiModelProperty(value = "Number of chunks committed so far", example = "8")
+  val chunks: Int,
+  @ApiModelProperty(value = "When the deletion (or its latest resumption) started", example = "2021-04-01T10:00:00")
+  val startedDateTime: LocalDateTime?,
+  @ApiModelProperty(value = "When the deletion last committed a chunk", example = "2021-04-01T10:00:34")
+  val heartbeatDateTime: LocalDateTime?,
+  @ApiModelProperty(value = "When the deletion finished", example = "2021-04-01T10:01:11")
+  val completedDateTime: LocalDateTime?
+) {
+  constructor(deletion: OffenderDeletion) : this(
+    id = deletion.id,
+    offenderIdentifier = deletion.offenderIdentifier,
+    status = deletion.status,
+    caseNotesDeleted = deletion.caseNotesDeleted,
+    amendmentsDeleted = deletion.amendmentsDeleted,
+    chunks = deletion.chunks,
+    startedDateTime = deletion.startedDateTime,
+    heartbeatDateTime = deletion.heartbeatDateTime,
+    completedDateTime = deletion.completedDateTime
+  )
+}
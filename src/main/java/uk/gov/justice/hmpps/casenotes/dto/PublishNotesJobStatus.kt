@@ -0,0 +1,63 @@
+package uk.gov.justice.hmpps.casenotes.dto
+
+import com.fasterxml.jackson.annotation.JsonInclude
+import io.swagger.annotations.ApiModel
+import io.swagger.annotations.ApiModelProperty
+import uk.gov.justice.hmpps.casenotes.model.PublishNotesJob
+import java.time.Duration
+import java.time.LocalDateTime
+
+@ApiModel(description = "Progress of a publish notes job")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+data class PublishNotesJobStatus(
+  @ApiModelProperty(value = "Job id", example = "12")
+  val id: Long,
+  @ApiModelProperty(value = "Earliest modification time of notes published by the job", example = "2019-01-01T00:00:00")
+  val fromDateTime: LocalDateTime,
+  @ApiModelProperty(value = "Latest modification time of notes published by the job", example = "2021-04-01T00:00:00")
+  val toDateTime: LocalDateTime,
+  @ApiModelProperty(value = "Job status", example = "RUNNING", allowableValues = "RUNNING,COMPLETED,FAILED")
+  val status: PublishNotesJob.Status,
+  @ApiModelProperty(value = "Number of notes found in the window when the job was started", example = "25000")
+  val totalRows: Long,
+  @ApiModelProperty(value = "Number of notes read so far", example = "12000")
+  val rowsScanned: Long,
+  @ApiModelProperty(value = "Number of notes accepted by the topic so far", example = "11998")
+  val published: Long,
+  @ApiModelProperty(value = "Number of notes that could not be published", example = "2")
+  val failed: Long,
+  @ApiModelProperty(value = "Notes read per second by the job's latest run", example = "350.5")
+  val rowsPerSecond: Double,
+  @ApiModelProperty(value = "Modification time of the last note checkpointed", example = "2020-03-04T10:11:12")
+  val checkpointModifyDateTime: LocalDateTime?,
+  @ApiModelProperty(value = "When the job (or its latest resumption) started", example = "2021-04-01T10:00:00")
+  val startedDateTime: LocalDateTime?,
+  @ApiModelProperty(value = "When the job last recorded progress", example = "2021-04-01T10:00:34")
+  val heartbeatDateTime: LocalDateTime?,
+  @ApiModelProperty(value = "When the job finished", example = "2021-04-01T10:01:11")
+  val completedDateTime: LocalDateTime?
+) {
+  constructor(job: PublishNotesJob) : this(
+    id = job.id,
+    fromDateTime = job.fromDateTime,
+    toDateTime = job.toDateTime,
+    status = job.status,
+    totalRows = job.totalRows,
+    rowsScanned = job.rowsScanned,
+    published = job.published,
+    failed = job.failed,
+    rowsPerSecond = rowsPerSecond(job),
+    checkpointModifyDateTime = job.checkpointModifyDateTime,
+    startedDateTime = job.startedDateTime,
+    heartbeatDateTime = job.heartbeatDateTime,
+    completedDateTime = job.completedDateTime
+  )
+
+  private companion object {
+    fun rowsPerSecond(job: PublishNotesJob): Double {
+      val started = job.startedDateTime ?: return 0.0
+      val millis = Duration.between(started, job.completedDateTime ?: job.heartbeatDateTime ?: started).toMillis()
+      return if (millis > 0) job.runRowsScanned * 1000.0 / millis else 0.0
+    }
+  }
+}
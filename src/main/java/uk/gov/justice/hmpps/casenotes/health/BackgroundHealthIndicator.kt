@@ -0,0 +1,83 @@
+package uk.gov.justice.hmpps.casenotes.health
+
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.actuate.health.Health
+import org.springframework.boot.actuate.health.HealthIndicator
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * A health indicator whose check calls out to another service.  Checks are run in the background by
+ * [HealthRefresher], and requests for health are given the latest result along with how old it is, so that however
+ * often the health is polled the other services are only called once per refresh.  If the latest result is older than
+ * the maximum age, for example because refreshing has stopped, the check is run there and then instead.  That check is
+ * given at most the check timeout, and the health is UNKNOWN if it gives no result in that time.
+ */
+abstract class BackgroundHealthIndicator(
+  private val maxAge: Duration,
+  private val checkTimeout: Duration = Duration.ofSeconds(10)
+) : HealthIndicator {
+  private val latest = AtomicReference<CheckedHealth?>()
+
+  protected abstract fun check(): Mono<Health>
+
+  /**
+   * Details that change independently of the check, so are added to the latest result each time it is requested
+   */
+  protected open fun currentDetails(): Map<String, Any?> = emptyMap()
+
+  fun refresh(): Mono<Health> =
+    check()
+      .onErrorResume { Mono.just(Health.down(it).build()) }
+      .doOnNext { latest.set(CheckedHealth(it, Instant.now())) }
+
+  override fun health(): Health {
+    val checked = latest.get()?.takeIf { it.age < maxAge } ?: CheckedHealth(checkNow() ?: Health.unknown().build(), Instant.now())
+    return Health.status(checked.health.status)
+      .withDetails(checked.health.details)
+      .withDetails(currentDetails())
+      .withDetail("SnapshotAgeMillis", checked.age.toMillis())
+      .build()
+  }
+
+  private fun checkNow(): Health? =
+    try {
+      refresh().block(checkTimeout)
+    } catch (e: IllegalStateException) {
+      // thrown by block when the timeout is reached
+      null
+    }
+
+  private class CheckedHealth(val health: Health, private val checkedAt: Instant) {
+    val age: Duration
+      get() = Duration.between(checkedAt, Instant.now())
+  }
+}
+
+/**
+ * Refreshes all the background health indicators together, on a schedule.
+ */
+@Component
+class HealthRefresher(
+  private val indicators: List<BackgroundHealthIndicator>,
+  @Value("\${health.refresh-timeout:PT10S}") private val timeout: Duration
+) {
+  companion object {
+    private val log = LoggerFactory.getLogger(this::class.java)
+  }
+
+  @Scheduled(fixedDelayString = "\${health.refresh-interval-ms:10000}")
+  fun refresh() {
+    try {
+      Flux.fromIterable(indicators).flatMap { it.refresh() }.then().block(timeout)
+    } catch (e: Exception) {
+      log.warn("Unable to refresh health within {}", timeout, e)
+    }
+  }
+}
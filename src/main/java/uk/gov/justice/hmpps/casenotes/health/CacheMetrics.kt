@@ -0,0 +1,26 @@
+package uk.gov.justice.hmpps.casenotes.health
+
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import org.hibernate.SessionFactory
+import org.springframework.stereotype.Component
+import javax.persistence.EntityManagerFactory
+
+/**
+ * Publishes the hit ratio of each second level cache region as a gauge.  The hit and miss counts behind them are also
+ * published by Spring Boot as hibernate.second.level.cache.requests.
+ */
+@Component
+class CacheMetrics(entityManagerFactory: EntityManagerFactory, meterRegistry: MeterRegistry) {
+  init {
+    val statistics = entityManagerFactory.unwrap(SessionFactory::class.java).statistics
+    statistics.secondLevelCacheRegionNames.forEach { region ->
+      Gauge.builder("case_notes.cache.hit_ratio", statistics) { s -> s.getCacheRegionStatistics(region)?.let { hitRatio(it.hitCount, it.missCount) } ?: Double.NaN }
+        .description("Proportion of second level cache lookups that found the entry")
+        .tag("region", region)
+        .register(meterRegistry)
+    }
+  }
+
+  private fun hitRatio(hits: Long, misses: Long): Double = if (hits + misses == 0L) Double.NaN else hits.toDouble() / (hits + misses)
+}
@@ -0,0 +1,50 @@
+package uk.gov.justice.hmpps.casenotes.health
+
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Tags
+import io.micrometer.core.instrument.Timer
+import org.springframework.stereotype.Component
+import reactor.core.publisher.Mono
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.function.Supplier
+
+/**
+ * Times calls to other services and the database, tagged with whether they succeeded, and counts the failures by
+ * error in a separate counter with the same name suffixed by .errors.
+ */
+@Component
+class CallMetrics(private val meterRegistry: MeterRegistry) {
+
+  fun <T> record(name: String, tags: Tags, call: Supplier<T>): T {
+    val sample = Timer.start(meterRegistry)
+    try {
+      return call.get().also { succeeded(sample, name, tags) }
+    } catch (e: Exception) {
+      failed(sample, name, tags, e)
+      throw e
+    }
+  }
+
+  fun <T> record(name: String, tags: Tags, call: Mono<T>): Mono<T> = Mono.defer {
+    val sample = Timer.start(meterRegistry)
+    call.doOnSuccess { succeeded(sample, name, tags) }
+      .doOnError { failed(sample, name, tags, it) }
+  }
+
+  fun <T> record(name: String, tags: Tags, call: CompletableFuture<T>): CompletableFuture<T> {
+    val sample = Timer.start(meterRegistry)
+    return call.whenComplete { _, e -> if (e == null) succeeded(sample, name, tags) else failed(sample, name, tags, e) }
+  }
+
+  private fun succeeded(sample: Timer.Sample, name: String, tags: Tags) {
+    sample.stop(meterRegistry.timer(name, tags.and("outcome", "success")))
+  }
+
+  private fun failed(sample: Timer.Sample, name: String, tags: Tags, e: Throwable) {
+    sample.stop(meterRegistry.timer(name, tags.and("outcome", "error")))
+    // the cause is what went wrong when a future completes exceptionally
+    val error = if (e is CompletionException) e.cause ?: e else e
+    meterRegistry.counter("$name.errors", tags.and("error", error.javaClass.simpleName)).increment()
+  }
+}
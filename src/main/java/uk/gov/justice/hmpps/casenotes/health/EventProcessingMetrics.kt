@@ -0,0 +1,79 @@
+package uk.gov.justice.hmpps.casenotes.health
+
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import org.springframework.stereotype.Component
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Measures the processing of offender events: how long each takes by event type, how long after it was sent to the
+ * queue it completed, how many are being processed right now and how many have failed.  The totals are also reported in
+ * the queue's health details.
+ */
+@Component
+class EventProcessingMetrics(private val meterRegistry: MeterRegistry) {
+  private val inFlight = AtomicInteger()
+  private val processed = AtomicLong()
+  private val errors = AtomicLong()
+  private val lastLagMillis = AtomicLong(-1)
+
+  init {
+    Gauge.builder("case_notes.events.in_flight", inFlight) { it.toDouble() }
+      .description("Number of events currently being processed")
+      .register(meterRegistry)
+  }
+
+  /**
+   * Run the processing of an event, timing it and recording the lag from when it was sent once it completes
+   *
+   * @param sentAt when the event was sent to the queue, or null if not known
+   */
+  fun <T> record(eventType: String, sentAt: Instant?, processing: () -> T): T {
+    inFlight.incrementAndGet()
+    val started = System.nanoTime()
+    var outcome = "success"
+    try {
+      return processing()
+    } catch (e: Exception) {
+      outcome = "error"
+      errors.incrementAndGet()
+      meterRegistry.counter("case_notes.events.errors", "eventType", eventType).increment()
+      throw e
+    } finally {
+      inFlight.decrementAndGet()
+      Timer.builder("case_notes.events.processing")
+        .description("Time taken to process an event")
+        .tags("eventType", eventType, "outcome", outcome)
+        .publishPercentileHistogram()
+        .register(meterRegistry)
+        .record(System.nanoTime() - started, TimeUnit.NANOSECONDS)
+      if (outcome == "success") {
+        processed.incrementAndGet()
+        sentAt?.let { recordLag(eventType, Duration.between(it, Instant.now())) }
+      }
+    }
+  }
+
+  private fun recordLag(eventType: String, lag: Duration) {
+    lastLagMillis.set(lag.toMillis())
+    Timer.builder("case_notes.events.end_to_end_lag")
+      .description("Time from an event being sent to the queue to its processing completing")
+      .tags("eventType", eventType)
+      .publishPercentileHistogram()
+      .register(meterRegistry)
+      .record(lag)
+  }
+
+  val healthDetails: Map<String, Any?>
+    get() = mapOf(
+      "EventsInFlight" to inFlight.get(),
+      "EventsProcessed" to processed.get(),
+      "EventErrors" to errors.get(),
+      "LastEventLagMillis" to lastLagMillis.get().takeIf { it >= 0 }
+    )
+}
@@ -3,14 +3,14 @@ package uk.gov.justice.hmpps.casenotes.health
 import org.springframework.beans.factory.annotation.Qualifier
 import org.springframework.beans.factory.annotation.Value
 import org.springframework.boot.actuate.health.Health
-import org.springframework.boot.actuate.health.HealthIndicator
 import org.springframework.stereotype.Component
 import org.springframework.web.reactive.function.client.WebClient
 import org.springframework.web.reactive.function.client.WebClientResponseException
 import reactor.core.publisher.Mono
+import java.time.Duration
 
-abstract class HealthCheck(private val webClient: WebClient) : HealthIndicator {
-  override fun health(): Health? =
+abstract class HealthCheck(private val webClient: WebClient, maxAge: Duration) : BackgroundHealthIndicator(maxAge) {
+  override fun check(): Mono<Health> =
     webClient.get()
       .uri("/health/ping")
       .retrieve()
@@ -18,27 +18,32 @@ abstract class HealthCheck(private val webClient: WebClient) : HealthIndicator {
       .flatMap { Mono.just(Health.up().withDetail("HttpStatus", it?.statusCode).build()) }
       .onErrorResume(WebClientResponseException::class.java) { Mono.just(Health.down(it).withDetail("body", it.responseBodyAsString).withDetail("HttpStatus", it.statusCode).build()) }
       .onErrorResume(Exception::class.java) { Mono.just(Health.down(it).build()) }
-      .block()
 }
 
 @Component
 class Elite2ApiHealth
-constructor(@Qualifier("elite2ApiHealthWebClient") webClient: WebClient) : HealthCheck(webClient)
+constructor(
+  @Qualifier("elite2ApiHealthWebClient") webClient: WebClient,
+  @Value("\${health.max-age:PT30S}") maxAge: Duration
+) : HealthCheck(webClient, maxAge)
 
 @Component
 class OAuthApiHealth
-constructor(@Qualifier("oauthApiHealthWebClient") webClient: WebClient) : HealthCheck(webClient)
+constructor(
+  @Qualifier("oauthApiHealthWebClient") webClient: WebClient,
+  @Value("\${health.max-age:PT30S}") maxAge: Duration
+) : HealthCheck(webClient, maxAge)
 
 @Component
 class TokenVerificationApiHealth
 constructor(
   @Qualifier("tokenVerificationApiHealthWebClient") webClient: WebClient,
-  @Value("\${tokenverification.enabled:false}") private val tokenVerificationEnabled: Boolean
-) : HealthCheck(webClient) {
-  override fun health(): Health? =
-    if (tokenVerificationEnabled) {
-      super.health()
-    } else {
-      Health.up().withDetail("TokenVerification", "Disabled").build()
-    }
+  @Value("\${tokenverification.enabled:false}") private val tokenVerificationEnabled: Boolean,
+  @Value("\${health.max-age:PT30S}") maxAge: Duration
+) : HealthCheck(webClient, maxAge) {
+  override fun check(): Mono<Health> = if (tokenVerificationEnabled) super.check() else Mono.just(disabled())
+
+  override fun health(): Health = if (tokenVerificationEnabled) super.health() else disabled()
+
+  private fun disabled() = Health.up().withDetail("TokenVerification", "Disabled").build()
 }
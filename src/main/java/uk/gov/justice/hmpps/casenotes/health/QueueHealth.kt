@@ -3,7 +3,6 @@ package uk.gov.justice.hmpps.casenotes.health
 import com.amazonaws.services.sqs.AmazonSQS
 import com.amazonaws.services.sqs.model.GetQueueAttributesRequest
 import com.amazonaws.services.sqs.model.GetQueueAttributesResult
-import com.amazonaws.services.sqs.model.GetQueueUrlResult
 import com.amazonaws.services.sqs.model.QueueAttributeName
 import com.amazonaws.services.sqs.model.QueueAttributeName.ApproximateNumberOfMessages
 import com.amazonaws.services.sqs.model.QueueAttributeName.ApproximateNumberOfMessagesNotVisible
@@ -13,12 +12,15 @@ import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.beans.factory.annotation.Qualifier
 import org.springframework.beans.factory.annotation.Value
 import org.springframework.boot.actuate.health.Health
-import org.springframework.boot.actuate.health.HealthIndicator
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
 import org.springframework.stereotype.Component
+import reactor.core.publisher.Mono
+import reactor.core.scheduler.Schedulers
 import uk.gov.justice.hmpps.casenotes.health.QueueAttributes.MESSAGES_IN_FLIGHT
 import uk.gov.justice.hmpps.casenotes.health.QueueAttributes.MESSAGES_ON_DLQ
 import uk.gov.justice.hmpps.casenotes.health.QueueAttributes.MESSAGES_ON_QUEUE
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
 
 enum class DlqStatus(val description: String) {
   UP("UP"),
@@ -39,17 +41,25 @@ class QueueHealth(
   @Autowired @Qualifier("awsSqsClient") private val awsSqsClient: AmazonSQS,
   @Autowired @Qualifier("awsSqsDlqClient") private val awsSqsDlqClient: AmazonSQS,
   @Value("\${sqs.queue.name}") private val queueName: String,
-  @Value("\${sqs.dlq.name}") private val dlqName: String
-) : HealthIndicator {
+  @Value("\${sqs.dlq.name}") private val dlqName: String,
+  private val eventProcessingMetrics: EventProcessingMetrics,
+  @Value("\${health.max-age:PT30S}") maxAge: Duration
+) : BackgroundHealthIndicator(maxAge) {
 
   companion object {
     private val log = LoggerFactory.getLogger(this::class.java)
   }
 
-  override fun health(): Health {
+  // queue urls don't change, so are only looked up once for each queue name
+  private val queueUrls = ConcurrentHashMap<String, String>()
+
+  override fun check(): Mono<Health> = Mono.fromCallable { queueHealth() }.subscribeOn(Schedulers.boundedElastic())
+
+  override fun currentDetails(): Map<String, Any?> = eventProcessingMetrics.healthDetails
+
+  private fun queueHealth(): Health {
     val queueAttributes = try {
-      val url = awsSqsClient.getQueueUrl(queueName)
-      awsSqsClient.getQueueAttributes(getQueueAttributesRequest(url))
+      awsSqsClient.getQueueAttributes(getQueueAttributesRequest(queueUrl(awsSqsClient, queueName)))
     } catch (e: Exception) {
       log.error("Unable to retrieve queue attributes for queue '{}' due to exception:", queueName, e)
       return Health.Builder().down().withException(e).build()
@@ -69,8 +79,7 @@ class QueueHealth(
     }
 
     val dlqAttributes = try {
-      val url = awsSqsDlqClient.getQueueUrl(dlqName)
-      awsSqsDlqClient.getQueueAttributes(getQueueAttributesRequest(url))
+      awsSqsDlqClient.getQueueAttributes(getQueueAttributesRequest(queueUrl(awsSqsDlqClient, dlqName)))
     } catch (e: QueueDoesNotExistException) {
       log.error("Unable to retrieve dead letter queue URL for queue '{}' due to exception:", queueName, e)
       return down(e).withDetail("dlqStatus", DlqStatus.NOT_FOUND.description)
@@ -83,6 +92,8 @@ class QueueHealth(
       .withDetail(MESSAGES_ON_DLQ.healthName, dlqAttributes.attributes[MESSAGES_ON_DLQ.awsName]?.toInt())
   }
 
-  private fun getQueueAttributesRequest(url: GetQueueUrlResult) =
-    GetQueueAttributesRequest(url.queueUrl).withAttributeNames(QueueAttributeName.All)
+  private fun queueUrl(client: AmazonSQS, name: String): String = queueUrls.getOrPut(name) { client.getQueueUrl(name).queueUrl }
+
+  private fun getQueueAttributesRequest(url: String) =
+    GetQueueAttributesRequest(url).withAttributeNames(QueueAttributeName.All)
 }
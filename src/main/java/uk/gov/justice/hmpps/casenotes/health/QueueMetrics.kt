@@ -0,0 +1,57 @@
+package uk.gov.justice.hmpps.casenotes.health
+
+import com.amazonaws.services.sqs.AmazonSQS
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import uk.gov.justice.hmpps.casenotes.health.QueueAttributes.MESSAGES_IN_FLIGHT
+import uk.gov.justice.hmpps.casenotes.health.QueueAttributes.MESSAGES_ON_QUEUE
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Publishes the depth of the event queue as gauges.  The queue is polled on a schedule rather than when the gauges are
+ * read so that scraping metrics never makes a call to SQS.
+ */
+@Component
+@ConditionalOnProperty("sqs.provider")
+class QueueMetrics(
+  @Qualifier("awsSqsClient") private val awsSqsClient: AmazonSQS,
+  @Value("\${sqs.queue.name}") private val queueName: String,
+  meterRegistry: MeterRegistry
+) {
+  companion object {
+    private val log = LoggerFactory.getLogger(this::class.java)
+  }
+
+  private val messagesOnQueue = AtomicLong()
+  private val messagesInFlight = AtomicLong()
+  private val queueUrl by lazy { awsSqsClient.getQueueUrl(queueName).queueUrl }
+
+  init {
+    Gauge.builder("case_notes.events.queue.depth", messagesOnQueue) { it.toDouble() }
+      .description("Approximate number of event messages waiting on the queue")
+      .register(meterRegistry)
+    Gauge.builder("case_notes.events.queue.in_flight", messagesInFlight) { it.toDouble() }
+      .description("Approximate number of event messages received but not yet acknowledged")
+      .register(meterRegistry)
+  }
+
+  @Scheduled(fixedDelayString = "\${sqs.metrics.interval-ms:30000}")
+  fun refresh() {
+    try {
+      val attributes = awsSqsClient.getQueueAttributes(
+        GetQueueAttributesRequest(queueUrl).withAttributeNames(MESSAGES_ON_QUEUE.awsName, MESSAGES_IN_FLIGHT.awsName)
+      ).attributes
+      attributes[MESSAGES_ON_QUEUE.awsName]?.let { messagesOnQueue.set(it.toLong()) }
+      attributes[MESSAGES_IN_FLIGHT.awsName]?.let { messagesInFlight.set(it.toLong()) }
+    } catch (e: Exception) {
+      log.warn("Unable to retrieve queue attributes for queue '{}'", queueName, e)
+    }
+  }
+}
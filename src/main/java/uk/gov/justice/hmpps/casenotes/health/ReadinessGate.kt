@@ -0,0 +1,46 @@
+package uk.gov.justice.hmpps.casenotes.health
+
+import org.slf4j.LoggerFactory
+import org.springframework.boot.availability.ApplicationAvailabilityBean
+import org.springframework.boot.availability.AvailabilityState
+import org.springframework.boot.availability.ReadinessState
+import org.springframework.stereotype.Component
+
+/**
+ * Keeps the readiness probe down while startup work, such as warming up, is still running.  Work holds the gate
+ * before the application is ready and releases it when finished, and until everything has been released the
+ * application reports that it is refusing traffic, whatever readiness state was last published.
+ *
+ * This replaces Boot's own ApplicationAvailabilityBean rather than listening for the application becoming ready and
+ * publishing a change back, as the nested change would be recorded first and then overwritten by the original one.
+ */
+@Component
+class ReadinessGate : ApplicationAvailabilityBean() {
+  companion object {
+    private val log = LoggerFactory.getLogger(this::class.java)
+  }
+
+  private val pending = mutableSetOf<String>()
+
+  @Synchronized
+  fun hold(work: String) {
+    pending += work
+  }
+
+  @Synchronized
+  fun release(work: String) {
+    pending -= work
+    if (pending.isEmpty()) log.info("Startup work finished")
+  }
+
+  override fun <S : AvailabilityState> getState(stateType: Class<S>, defaultState: S?): S? =
+    gated(stateType, super.getState(stateType, defaultState))
+
+  override fun <S : AvailabilityState> getState(stateType: Class<S>): S? = gated(stateType, super.getState(stateType))
+
+  @Synchronized
+  private fun <S : AvailabilityState> gated(stateType: Class<S>, state: S?): S? =
+    if (stateType == ReadinessState::class.java && state == ReadinessState.ACCEPTING_TRAFFIC && pending.isNotEmpty()) {
+      stateType.cast(ReadinessState.REFUSING_TRAFFIC)
+    } else state
+}
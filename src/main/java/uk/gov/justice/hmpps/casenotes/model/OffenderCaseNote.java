@@ -5,6 +5,11 @@ import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
+import org.hibernate.annotations.Generated;
+import org.hibernate.annotations.GenerationTime;
 import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.ResultCheckStyle;
 import org.hibernate.annotations.SQLDelete;
@@ -74,7 +79,9 @@ public class OffenderCaseNote {
     @Column(nullable = false)
     private String authorName;
 
+    // selected separately rather than joined so that the type comes from the second level cache
     @ManyToOne
+    @Fetch(FetchMode.SELECT)
     @JoinColumn(name = "CASE_NOTE_TYPE_ID", nullable = false)
     private SensitiveCaseNoteType sensitiveCaseNoteType;
 
@@ -85,6 +92,7 @@ public class OffenderCaseNote {
     // cascade All not used as we don't want the soft delete to cascade to the case note amendments in case we need to
     // restore the case note with previously soft deleted amendment
     @OneToMany(cascade = {PERSIST, MERGE, REFRESH, DETACH}, mappedBy = "caseNote")
+    @BatchSize(size = 100)
     private final SortedSet<OffenderCaseNoteAmendment> amendments = new TreeSet<>(new AmendmentComparator());
 
     @CreatedDate
@@ -102,6 +110,7 @@ public class OffenderCaseNote {
     private String modifyUserId;
 
     @Column(columnDefinition = "serial", insertable = false, updatable = false)
+    @Generated(GenerationTime.INSERT)
     private Integer eventId;
 
     @Builder.Default
@@ -184,6 +193,10 @@ public class OffenderCaseNote {
         return this.eventId;
     }
 
+    public boolean isSoftDeleted() {
+        return this.softDeleted;
+    }
+
     public static class AmendmentComparator implements Comparator<OffenderCaseNoteAmendment> {
         @Override
         public int compare(final OffenderCaseNoteAmendment a1, final OffenderCaseNoteAmendment a2) {
@@ -0,0 +1,55 @@
+package uk.gov.justice.hmpps.casenotes.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteChangeEvent.ChangeType;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A creation, amendment or deletion of a sensitive case note.  The id is allocated in the order the changes are made
+ * and is sent as the server sent event id, so that a reconnecting subscriber can be sent every change it missed.
+ */
+@Entity
+@Table(name = "CASE_NOTE_CHANGE")
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@EntityListeners(AuditingEntityListener.class)
+@Builder
+@EqualsAndHashCode(of = {"id"})
+@ToString
+public class OffenderCaseNoteChange {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "CASE_NOTE_CHANGE_ID", nullable = false)
+    private Long id;
+
+    @Column(name = "OFFENDER_CASE_NOTE_ID", nullable = false)
+    private UUID caseNoteId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ChangeType changeType;
+
+    @CreatedDate
+    @Column(nullable = false)
+    private LocalDateTime changeDateTime;
+}
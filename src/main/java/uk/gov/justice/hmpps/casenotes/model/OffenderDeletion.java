@@ -0,0 +1,76 @@
+package uk.gov.justice.hmpps.casenotes.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Deletion of all case notes for an offender.  Notes are deleted in chunks, each in its own transaction, and the counts
+ * are moved on as each chunk commits so that a deletion interrupted part way through can be resumed.
+ */
+@Entity
+@Table(name = "OFFENDER_DELETION")
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@EntityListeners(AuditingEntityListener.class)
+@Builder(toBuilder = true)
+@EqualsAndHashCode(of = {"id"})
+@ToString(of = {"id", "offenderIdentifier", "status"})
+public class OffenderDeletion {
+
+    public enum Status {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "OFFENDER_DELETION_ID", nullable = false)
+    private Long id;
+
+    @Column(nullable = false)
+    private String offenderIdentifier;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    @Builder.Default
+    private Status status = Status.RUNNING;
+
+    private UUID runId;
+
+    @Builder.Default
+    private long caseNotesDeleted = 0;
+
+    @Builder.Default
+    private long amendmentsDeleted = 0;
+
+    @Builder.Default
+    private int chunks = 0;
+
+    private LocalDateTime startedDateTime;
+
+    private LocalDateTime heartbeatDateTime;
+
+    private LocalDateTime completedDateTime;
+
+    @CreatedDate
+    @Column(nullable = false)
+    private LocalDateTime createDateTime;
+}
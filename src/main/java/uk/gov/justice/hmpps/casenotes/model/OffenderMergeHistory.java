@@ -0,0 +1,58 @@
+package uk.gov.justice.hmpps.casenotes.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * Case notes moved onto an offender identifier as a result of a booking number change.
+ */
+@Entity
+@Table(name = "OFFENDER_MERGE_HISTORY")
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@EntityListeners(AuditingEntityListener.class)
+@Builder
+@EqualsAndHashCode(of = {"id"})
+@ToString
+public class OffenderMergeHistory {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "OFFENDER_MERGE_HISTORY_ID", nullable = false)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long bookingId;
+
+    @Column(nullable = false)
+    private String offenderIdentifier;
+
+    /**
+     * Comma separated identifiers that the case notes were moved from
+     */
+    @Column(nullable = false)
+    private String mergedIdentifiers;
+
+    @Column(nullable = false)
+    private int rowsMerged;
+
+    @CreatedDate
+    @Column(nullable = false)
+    private LocalDateTime createDateTime;
+}
@@ -0,0 +1,36 @@
+package uk.gov.justice.hmpps.casenotes.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * An offender event message that has been processed, keyed by its SNS message id.
+ */
+@Entity
+@Table(name = "PROCESSED_EVENT")
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode(of = {"messageId"})
+@ToString
+public class ProcessedEvent {
+
+    @Id
+    @Column(nullable = false)
+    private String messageId;
+
+    @Column(nullable = false)
+    private String eventType;
+
+    @Column(nullable = false)
+    private LocalDateTime processedDateTime;
+}
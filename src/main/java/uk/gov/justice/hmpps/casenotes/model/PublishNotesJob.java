@@ -0,0 +1,97 @@
+package uk.gov.justice.hmpps.casenotes.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.springframework.data.annotation.CreatedBy;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A run of the publish notes job.  The checkpoint is the (modifyDateTime, id) of the last case note in the last chunk
+ * that was published, so that a run can be picked up from where it left off if the pod running it goes away.
+ */
+@Entity
+@Table(name = "PUBLISH_NOTES_JOB")
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@EntityListeners(AuditingEntityListener.class)
+@Builder(toBuilder = true)
+@EqualsAndHashCode(of = {"id"})
+@ToString(of = {"id", "fromDateTime", "toDateTime", "status"})
+public class PublishNotesJob {
+
+    public enum Status {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "PUBLISH_NOTES_JOB_ID", nullable = false)
+    private Long id;
+
+    @Column(nullable = false)
+    private LocalDateTime fromDateTime;
+
+    @Column(nullable = false)
+    private LocalDateTime toDateTime;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    @Builder.Default
+    private Status status = Status.RUNNING;
+
+    private UUID runId;
+
+    @Builder.Default
+    private long totalRows = 0;
+
+    @Builder.Default
+    private long rowsScanned = 0;
+
+    /**
+     * Rows scanned since the latest run started, so that its rate doesn't count the rows or time of earlier runs
+     */
+    @Builder.Default
+    private long runRowsScanned = 0;
+
+    @Builder.Default
+    private long published = 0;
+
+    @Builder.Default
+    private long failed = 0;
+
+    private LocalDateTime checkpointModifyDateTime;
+
+    private UUID checkpointCaseNoteId;
+
+    private LocalDateTime startedDateTime;
+
+    private LocalDateTime heartbeatDateTime;
+
+    private LocalDateTime completedDateTime;
+
+    @CreatedDate
+    @Column(nullable = false)
+    private LocalDateTime createDateTime;
+
+    @CreatedBy
+    @Column(nullable = false)
+    private String createUserId;
+}
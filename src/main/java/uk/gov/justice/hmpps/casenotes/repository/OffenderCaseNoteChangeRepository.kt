@@ -0,0 +1,11 @@
+package uk.gov.justice.hmpps.casenotes.repository
+
+import org.springframework.data.domain.Pageable
+import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.stereotype.Repository
+import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNoteChange
+
+@Repository
+interface OffenderCaseNoteChangeRepository : JpaRepository<OffenderCaseNoteChange, Long> {
+  fun findByIdGreaterThanOrderById(id: Long, page: Pageable): List<OffenderCaseNoteChange>
+}
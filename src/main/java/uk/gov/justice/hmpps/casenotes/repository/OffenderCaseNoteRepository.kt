@@ -13,19 +13,68 @@ import java.util.UUID
 @Repository
 interface OffenderCaseNoteRepository : PagingAndSortingRepository<OffenderCaseNote, UUID>, JpaSpecificationExecutor<OffenderCaseNote> {
 
+  fun countByModifyDateTimeBetween(fromDateTime: LocalDateTime, toDateTime: LocalDateTime): Long
+
+  fun findByModifyDateTimeBetweenOrderByModifyDateTimeAscIdAsc(fromDateTime: LocalDateTime, toDateTime: LocalDateTime, page: Pageable): List<OffenderCaseNote>
+
+  @Query(
+    "SELECT cn FROM OffenderCaseNote cn WHERE cn.modifyDateTime <= ?3 AND (cn.modifyDateTime > ?1 OR (cn.modifyDateTime = ?1 AND cn.id > ?2)) " +
+      "ORDER BY cn.modifyDateTime, cn.id"
+  )
+  fun findByModifyDateTimeAndIdAfter(modifyDateTime: LocalDateTime, id: UUID, toDateTime: LocalDateTime, page: Pageable): List<OffenderCaseNote>
+
+  /**
+   * The modify date is set by the application before the change commits, so a change can commit after a later dated
+   * one has already been read and be skipped by a client paging past it.  Only changes up to toDateTime are returned,
+   * which the caller sets far enough in the past that anything still to commit will be after it.
+   */
+  @Query(
+    "SELECT cn FROM OffenderCaseNote cn WHERE cn.modifyDateTime <= ?3 AND (cn.modifyDateTime > ?1 OR (cn.modifyDateTime = ?1 AND cn.id > ?2)) " +
+      "ORDER BY cn.modifyDateTime, cn.id"
+  )
+  fun findChangesAfter(modifyDateTime: LocalDateTime, id: UUID, toDateTime: LocalDateTime, page: Pageable): List<OffenderCaseNote>
+
   fun findBySensitiveCaseNoteType_ParentType_TypeInAndModifyDateTimeAfterOrderByModifyDateTime(types: Set<String>?, createdDate: LocalDateTime?, page: Pageable?): List<OffenderCaseNote>
 
-  fun findByModifyDateTimeBetweenOrderByModifyDateTime(fromDateTime: LocalDateTime, toDateTime: LocalDateTime): List<OffenderCaseNote>
+  /**
+   * Reads OFFENDER_CASE_NOTE_IDX6 (modify date, id) from the cursor in order and filters on type, so a page stops as
+   * soon as it is full.  The parent types are resolved to sub type ids through the join, so an index led by the type
+   * id would give one range per sub type that still has to be merged and sorted before the page could be taken.  As
+   * with [findChangesAfter] only changes up to toDateTime are returned.
+   */
+  @Query(
+    "SELECT cn FROM OffenderCaseNote cn WHERE cn.sensitiveCaseNoteType.parentType.type IN ?1 AND cn.modifyDateTime <= ?4 " +
+      "AND (cn.modifyDateTime > ?2 OR (cn.modifyDateTime = ?2 AND cn.id > ?3)) ORDER BY cn.modifyDateTime, cn.id"
+  )
+  fun findChangesForTypesAfter(types: Set<String>, modifyDateTime: LocalDateTime, id: UUID, toDateTime: LocalDateTime, page: Pageable): List<OffenderCaseNote>
+
+  /**
+   * Soft deleted notes are included, so that their deletion can be replayed.
+   */
+  @Query(value = "SELECT * FROM offender_case_note WHERE offender_case_note_id IN (?1)", nativeQuery = true)
+  fun findAllByIdIncludingDeleted(ids: Collection<UUID>): List<OffenderCaseNote>
 
   @Modifying
-  @Query("UPDATE OFFENDER_CASE_NOTE ocn SET offender_identifier = ?2 WHERE ocn.offender_identifier = ?1", nativeQuery = true)
-  fun updateOffenderIdentifier(oldOffenderIdentifier: String, newOffenderIdentifier: String): Int
+  @Query("UPDATE OFFENDER_CASE_NOTE ocn SET offender_identifier = ?2 WHERE ocn.offender_identifier IN (?1)", nativeQuery = true)
+  fun updateOffenderIdentifiers(oldOffenderIdentifiers: Collection<String>, newOffenderIdentifier: String): Int
 
+  /**
+   * Deletes the amendments of the first (by id) chunk of the offender's case notes, soft deleted or not, so that
+   * [deleteOffenderCaseNoteChunk] can then remove the same notes in the same transaction.
+   */
   @Modifying
-  @Query(value = "DELETE FROM OFFENDER_CASE_NOTE ocn WHERE ocn.offender_identifier = ?1", nativeQuery = true)
-  fun deleteOffenderCaseNoteByOffenderIdentifier(offenderIdentifier: String): Int
+  @Query(
+    value = "DELETE FROM offender_case_note_amendment WHERE offender_case_note_id IN " +
+      "(SELECT offender_case_note_id FROM offender_case_note WHERE offender_identifier = ?1 ORDER BY offender_case_note_id LIMIT ?2)",
+    nativeQuery = true
+  )
+  fun deleteOffenderCaseNoteAmendmentChunk(offenderIdentifier: String, chunkSize: Int): Int
 
   @Modifying
-  @Query(value = "DELETE FROM offender_case_note_amendment ocna where offender_case_note_id in (select offender_case_note_id from offender_case_note where offender_identifier = ?1)", nativeQuery = true)
-  fun deleteOffenderCaseNoteAmendmentsByOffenderIdentifier(offenderIdentifier: String): Int
+  @Query(
+    value = "DELETE FROM offender_case_note WHERE offender_case_note_id IN " +
+      "(SELECT offender_case_note_id FROM offender_case_note WHERE offender_identifier = ?1 ORDER BY offender_case_note_id LIMIT ?2)",
+    nativeQuery = true
+  )
+  fun deleteOffenderCaseNoteChunk(offenderIdentifier: String, chunkSize: Int): Int
 }
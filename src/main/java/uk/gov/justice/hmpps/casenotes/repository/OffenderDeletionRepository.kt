@@ -0,0 +1,40 @@
+package uk.gov.justice.hmpps.casenotes.repository
+
+import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.data.jpa.repository.Modifying
+import org.springframework.data.jpa.repository.Query
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+import uk.gov.justice.hmpps.casenotes.model.OffenderDeletion
+import uk.gov.justice.hmpps.casenotes.model.OffenderDeletion.Status
+import java.time.LocalDateTime
+import java.util.UUID
+
+@Repository
+interface OffenderDeletionRepository : JpaRepository<OffenderDeletion, Long> {
+
+  fun findFirstByOffenderIdentifierAndStatusNotOrderByCreateDateTimeDesc(offenderIdentifier: String, status: Status): OffenderDeletion?
+
+  fun findByStatusAndHeartbeatDateTimeBefore(status: Status, heartbeatDateTime: LocalDateTime): List<OffenderDeletion>
+
+  @Transactional
+  @Modifying(clearAutomatically = true)
+  @Query(
+    "UPDATE OffenderDeletion d SET d.status = ?2, d.runId = ?4, d.startedDateTime = ?5, d.heartbeatDateTime = ?5, d.completedDateTime = NULL " +
+      "WHERE d.id = ?1 AND (d.status = ?3 OR (d.status = ?2 AND d.heartbeatDateTime < ?6))"
+  )
+  fun claim(id: Long, running: Status, failed: Status, runId: UUID, now: LocalDateTime, staleBefore: LocalDateTime): Int
+
+  @Transactional
+  @Modifying
+  @Query(
+    "UPDATE OffenderDeletion d SET d.caseNotesDeleted = d.caseNotesDeleted + ?3, d.amendmentsDeleted = d.amendmentsDeleted + ?4, " +
+      "d.chunks = d.chunks + 1, d.heartbeatDateTime = ?5 WHERE d.id = ?1 AND d.runId = ?2"
+  )
+  fun checkpoint(id: Long, runId: UUID, caseNotesDeleted: Long, amendmentsDeleted: Long, now: LocalDateTime): Int
+
+  @Transactional
+  @Modifying
+  @Query("UPDATE OffenderDeletion d SET d.status = ?3, d.completedDateTime = ?4, d.heartbeatDateTime = ?4 WHERE d.id = ?1 AND d.runId = ?2")
+  fun finish(id: Long, runId: UUID, status: Status, now: LocalDateTime): Int
+}
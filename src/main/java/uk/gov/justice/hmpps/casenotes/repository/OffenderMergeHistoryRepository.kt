@@ -0,0 +1,10 @@
+package uk.gov.justice.hmpps.casenotes.repository
+
+import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.stereotype.Repository
+import uk.gov.justice.hmpps.casenotes.model.OffenderMergeHistory
+
+@Repository
+interface OffenderMergeHistoryRepository : JpaRepository<OffenderMergeHistory, Long> {
+  fun findByOffenderIdentifierOrderByCreateDateTime(offenderIdentifier: String): List<OffenderMergeHistory>
+}
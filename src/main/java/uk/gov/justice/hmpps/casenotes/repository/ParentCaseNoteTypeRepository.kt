@@ -1,8 +1,20 @@
 package uk.gov.justice.hmpps.casenotes.repository
 
+import org.hibernate.jpa.QueryHints.HINT_CACHE_MODE
 import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.data.jpa.repository.Query
+import org.springframework.data.jpa.repository.QueryHints
 import org.springframework.stereotype.Repository
 import uk.gov.justice.hmpps.casenotes.model.ParentNoteType
+import javax.persistence.QueryHint
 
 @Repository
-interface ParentCaseNoteTypeRepository : JpaRepository<ParentNoteType?, String?>
+interface ParentCaseNoteTypeRepository : JpaRepository<ParentNoteType?, String?> {
+  /**
+   * Always read from the database, refreshing the second level cache with what it finds so that changes made on other
+   * instances replace the cached types.
+   */
+  @Query("select distinct p from ParentNoteType p left join fetch p.subTypes")
+  @QueryHints(QueryHint(name = HINT_CACHE_MODE, value = "REFRESH"))
+  fun findAllWithSubTypes(): List<ParentNoteType>
+}
@@ -0,0 +1,18 @@
+package uk.gov.justice.hmpps.casenotes.repository
+
+import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.data.jpa.repository.Modifying
+import org.springframework.data.jpa.repository.Query
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+import uk.gov.justice.hmpps.casenotes.model.ProcessedEvent
+import java.time.LocalDateTime
+
+@Repository
+interface ProcessedEventRepository : JpaRepository<ProcessedEvent, String> {
+
+  @Transactional
+  @Modifying
+  @Query("DELETE FROM ProcessedEvent e WHERE e.processedDateTime < ?1")
+  fun deleteProcessedBefore(processedDateTime: LocalDateTime): Int
+}
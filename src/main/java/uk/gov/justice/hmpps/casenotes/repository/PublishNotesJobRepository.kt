@@ -0,0 +1,43 @@
+package uk.gov.justice.hmpps.casenotes.repository
+
+import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.data.jpa.repository.Modifying
+import org.springframework.data.jpa.repository.Query
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+import uk.gov.justice.hmpps.casenotes.model.PublishNotesJob
+import uk.gov.justice.hmpps.casenotes.model.PublishNotesJob.Status
+import java.time.LocalDateTime
+import java.util.UUID
+
+@Repository
+interface PublishNotesJobRepository : JpaRepository<PublishNotesJob, Long> {
+
+  fun findByStatusAndHeartbeatDateTimeBefore(status: Status, heartbeatDateTime: LocalDateTime): List<PublishNotesJob>
+
+  @Transactional
+  @Modifying
+  @Query(
+    "UPDATE PublishNotesJob j SET j.status = ?2, j.runId = ?4, j.startedDateTime = ?5, j.heartbeatDateTime = ?5, j.runRowsScanned = 0, j.completedDateTime = NULL " +
+      "WHERE j.id = ?1 AND (j.status = ?3 OR (j.status = ?2 AND j.heartbeatDateTime < ?6))"
+  )
+  fun claim(id: Long, running: Status, failed: Status, runId: UUID, now: LocalDateTime, staleBefore: LocalDateTime): Int
+
+  @Transactional
+  @Modifying
+  @Query(
+    "UPDATE PublishNotesJob j SET j.checkpointModifyDateTime = ?3, j.checkpointCaseNoteId = ?4, j.rowsScanned = j.rowsScanned + ?5, j.runRowsScanned = j.runRowsScanned + ?5, " +
+      "j.published = j.published + ?6, j.failed = j.failed + ?7, j.heartbeatDateTime = ?8 WHERE j.id = ?1 AND j.runId = ?2"
+  )
+  fun checkpoint(id: Long, runId: UUID, modifyDateTime: LocalDateTime, caseNoteId: UUID, scanned: Long, published: Long, failed: Long, now: LocalDateTime): Int
+
+  @Transactional
+  @Modifying
+  @Query("UPDATE PublishNotesJob j SET j.heartbeatDateTime = ?3 WHERE j.id = ?1 AND j.runId = ?2 AND j.status = ?4")
+  fun heartbeat(id: Long, runId: UUID, now: LocalDateTime, running: Status): Int
+
+  @Transactional
+  @Modifying
+  @Query("UPDATE PublishNotesJob j SET j.status = ?3, j.completedDateTime = ?4, j.heartbeatDateTime = ?4 WHERE j.id = ?1 AND j.runId = ?2")
+  fun finish(id: Long, runId: UUID, status: Status, now: LocalDateTime): Int
+}
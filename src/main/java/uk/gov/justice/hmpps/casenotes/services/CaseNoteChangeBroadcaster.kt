@@ -0,0 +1,177 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.data.domain.PageRequest
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory
+import org.springframework.security.access.prepost.PreAuthorize
+import org.springframework.stereotype.Component
+import org.springframework.transaction.annotation.Transactional
+import org.springframework.transaction.event.TransactionalEventListener
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteChangeCursor
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteChangeEvent
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteChangeEvent.ChangeType
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteResyncEvent
+import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNote
+import uk.gov.justice.hmpps.casenotes.repository.OffenderCaseNoteChangeRepository
+import uk.gov.justice.hmpps.casenotes.repository.OffenderCaseNoteRepository
+import java.io.IOException
+import java.time.Duration
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+import javax.annotation.PreDestroy
+
+/**
+ * Published by [CaseNoteService] whenever a sensitive case note is written, with the id of the change recorded
+ * alongside it, and relayed to stream subscribers once the transaction has committed.
+ */
+data class CaseNoteChange(val changeId: Long, val changeType: ChangeType, val caseNote: OffenderCaseNote)
+
+/**
+ * Fans case note changes made on this instance out to server sent event subscribers.  Each subscriber has its own
+ * bounded buffer drained by a small shared pool, so a slow connection never holds up the request that made the change.
+ * A subscriber whose buffer fills is disconnected, and can catch up by reconnecting with the last event id it saw.
+ */
+@Suppress("SpringJavaInjectionPointsAutowiringInspection")
+@Component
+class CaseNoteChangeBroadcaster(
+  private val repository: OffenderCaseNoteRepository,
+  private val changeRepository: OffenderCaseNoteChangeRepository,
+  @Value("\${case-note-stream.buffer-size:100}") private val bufferSize: Int,
+  @Value("\${case-note-stream.replay-limit:500}") private val replayLimit: Int,
+  @Value("\${case-note-stream.timeout:PT30M}") private val timeout: Duration,
+  @Value("\${case-note-stream.sender-threads:4}") senderThreads: Int
+) {
+  companion object {
+    val log: Logger = LoggerFactory.getLogger(this::class.java)
+  }
+
+  private val subscribers = CopyOnWriteArrayList<Subscriber>()
+  private val senders: ExecutorService = Executors.newFixedThreadPool(senderThreads, CustomizableThreadFactory("case-note-stream-").apply { isDaemon = true })
+
+  /**
+   * Subscribe to changes, optionally restricted to a location and / or set of types.  If a last event id is supplied
+   * then every change made since that event is replayed, with the case note as it now is, before live changes are
+   * sent.  If more changes have been made since than the replay limit, the replay stops there and a final resync event
+   * gives the cursor to catch up from with the change feed, and the stream is closed.
+   */
+  @PreAuthorize("hasAnyRole('VIEW_SENSITIVE_CASE_NOTES')")
+  @Transactional(readOnly = true)
+  fun subscribe(locationId: String?, types: Set<String>, lastEventId: Long?): SseEmitter {
+    val subscriber = Subscriber(SseEmitter(timeout.toMillis()), locationId, types)
+    subscriber.emitter.onCompletion { subscribers.remove(subscriber) }
+    subscriber.emitter.onTimeout { subscribers.remove(subscriber) }
+    subscriber.emitter.onError { subscribers.remove(subscriber) }
+
+    // hold back live changes until the replay has been sent so that the client sees them in order
+    subscriber.draining.set(true)
+    subscribers.add(subscriber)
+    val resync = try {
+      lastEventId?.let { replay(subscriber, it) }
+    } finally {
+      subscriber.draining.set(false)
+    }
+    if (resync != null) {
+      log.info("Case note stream subscriber missed more than {} notes, sending resync from {}", replayLimit, resync.cursor)
+      subscribers.remove(subscriber)
+      subscriber.buffer.clear()
+      sendResync(subscriber, resync)
+      subscriber.emitter.complete()
+      return subscriber.emitter
+    }
+    drain(subscriber)
+    log.debug("Added case note stream subscriber, now {} subscribers", subscribers.size)
+    return subscriber.emitter
+  }
+
+  /**
+   * Sends the changes made since the last event, returning the resync to send if there were too many to replay.
+   * Change ids are allocated when the change is written rather than when it commits, so a change still committing
+   * while a subscriber disconnects could be passed over.
+   */
+  private fun replay(subscriber: Subscriber, lastEventId: Long): CaseNoteResyncEvent? {
+    val missed = changeRepository.findByIdGreaterThanOrderById(lastEventId, PageRequest.of(0, replayLimit + 1))
+    val caseNotes = repository.findAllByIdIncludingDeleted(missed.map { it.caseNoteId }.toSet()).associateBy { it.id }
+    missed.take(replayLimit)
+      .mapNotNull { change -> caseNotes[change.caseNoteId]?.let { CaseNoteChangeEvent(change.id, change.changeType, it) } }
+      .filter { subscriber.matches(it) }
+      .forEach { send(subscriber, it) }
+    // the change feed from the first change not replayed includes that note and everything changed since.  A new
+    // note's modify date is set just before its change is recorded, so take whichever is earlier.
+    return missed.getOrNull(replayLimit)?.let { change ->
+      val from = listOfNotNull(change.changeDateTime, caseNotes[change.caseNoteId]?.modifyDateTime).minOrNull()!!
+      CaseNoteResyncEvent(CaseNoteChangeCursor.startingAt(from).encode())
+    }
+  }
+
+  @TransactionalEventListener
+  fun onChange(change: CaseNoteChange) {
+    val event = CaseNoteChangeEvent(change.changeId, change.changeType, change.caseNote)
+    subscribers.filter { it.matches(event) }.forEach { subscriber ->
+      if (subscriber.buffer.offer(event)) {
+        drain(subscriber)
+      } else {
+        log.info("Disconnecting slow case note stream subscriber after {} buffered changes", bufferSize)
+        subscribers.remove(subscriber)
+        subscriber.emitter.complete()
+      }
+    }
+  }
+
+  @PreDestroy
+  fun shutdown() {
+    senders.shutdownNow()
+  }
+
+  private fun drain(subscriber: Subscriber) {
+    if (subscriber.buffer.isEmpty() || !subscriber.draining.compareAndSet(false, true)) return
+    senders.execute {
+      try {
+        generateSequence { subscriber.buffer.poll() }.forEach { send(subscriber, it) }
+      } finally {
+        subscriber.draining.set(false)
+      }
+      // pick up anything that was offered after the last poll but before the flag was cleared
+      drain(subscriber)
+    }
+  }
+
+  private fun send(subscriber: Subscriber, event: CaseNoteChangeEvent) {
+    try {
+      subscriber.emitter.send(
+        SseEmitter.event().id(event.changeId.toString()).name(event.changeType.name.toLowerCase()).data(event)
+      )
+    } catch (e: IOException) {
+      log.debug("Case note stream subscriber went away", e)
+      subscribers.remove(subscriber)
+      subscriber.buffer.clear()
+    } catch (e: IllegalStateException) {
+      // emitter already completed
+      subscribers.remove(subscriber)
+      subscriber.buffer.clear()
+    }
+  }
+
+  private fun sendResync(subscriber: Subscriber, resync: CaseNoteResyncEvent) {
+    try {
+      subscriber.emitter.send(SseEmitter.event().name("resync").data(resync))
+    } catch (e: IOException) {
+      log.debug("Case note stream subscriber went away", e)
+    } catch (e: IllegalStateException) {
+      // emitter already completed
+    }
+  }
+
+  private inner class Subscriber(val emitter: SseEmitter, private val locationId: String?, private val types: Set<String>) {
+    val buffer = ArrayBlockingQueue<CaseNoteChangeEvent>(bufferSize)
+    val draining = AtomicBoolean()
+
+    fun matches(event: CaseNoteChangeEvent) =
+      (locationId == null || locationId == event.locationId) && (types.isEmpty() || event.type in types)
+  }
+}
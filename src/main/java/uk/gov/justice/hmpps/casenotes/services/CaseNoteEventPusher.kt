@@ -1,6 +1,7 @@
 package uk.gov.justice.hmpps.casenotes.services
 
 import com.fasterxml.jackson.databind.ObjectMapper
+import io.micrometer.core.instrument.Tags
 import org.apache.commons.lang3.math.NumberUtils
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
@@ -9,13 +10,25 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
 import org.springframework.stereotype.Component
 import software.amazon.awssdk.services.sns.SnsAsyncClient
 import software.amazon.awssdk.services.sns.model.MessageAttributeValue
+import software.amazon.awssdk.services.sns.model.PublishBatchRequest
+import software.amazon.awssdk.services.sns.model.PublishBatchRequestEntry
 import software.amazon.awssdk.services.sns.model.PublishRequest
 import uk.gov.justice.hmpps.casenotes.dto.CaseNote
+import uk.gov.justice.hmpps.casenotes.health.CallMetrics
 import java.time.LocalDateTime
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
 
 interface CaseNoteEventPusher {
   fun sendEvent(caseNote: CaseNote)
 
+  /**
+   * Publish the sensitive case notes in the list, blocking until every publish has either succeeded or run out of
+   * retries.
+   */
+  fun sendEvents(caseNotes: List<CaseNote>): PublishResult
+
   fun isSensitiveCaseNote(caseNoteIdentifier: String): Boolean {
     return !NumberUtils.isDigits(caseNoteIdentifier)
   }
@@ -27,33 +40,92 @@ interface CaseNoteEventPusher {
 open class CaseNoteAwsEventPusher(
   private val snsClient: SnsAsyncClient,
   @Value("\${sns.topic.arn}") private val topicArn: String,
-  private val objectMapper: ObjectMapper
+  private val objectMapper: ObjectMapper,
+  private val callMetrics: CallMetrics,
+  @Value("\${sns.publish.max-in-flight:4}") maxInFlight: Int,
+  @Value("\${sns.publish.max-attempts:3}") private val maxAttempts: Int,
+  @Value("\${sns.publish.retry-backoff-ms:200}") private val retryBackoffMs: Long
 ) : CaseNoteEventPusher {
   companion object {
     val log: Logger = LoggerFactory.getLogger(this::class.java)
+
+    // maximum number of entries SNS accepts in a single PublishBatch call
+    const val BATCH_SIZE = 10
   }
 
+  private val inFlight = Semaphore(maxInFlight)
+
   override fun sendEvent(caseNote: CaseNote) {
     if (isSensitiveCaseNote(caseNote.caseNoteId)) {
       val cne = CaseNoteEvent(caseNote)
       log.info("Pushing case note {} to event topic with event type of {}", cne.caseNoteId, cne.eventType)
       val publishRequest = PublishRequest.builder()
         .topicArn(topicArn)
-        .messageAttributes(
-          mapOf(
-            "eventType" to MessageAttributeValue.builder().dataType("String").stringValue(cne.eventType).build(),
-            "contentType" to MessageAttributeValue.builder().dataType("String").stringValue("text/plain;charset=UTF-8").build()
-          )
-        )
+        .messageAttributes(messageAttributes(cne))
         .message(objectMapper.writeValueAsString(cne))
         .build()
-      snsClient.publish(publishRequest)
+      callMetrics.record("case_notes.sns.publish", Tags.of("operation", "publish"), snsClient.publish(publishRequest))
         .whenComplete { publishResponse, throwable ->
           publishResponse?.run { log.debug("Sent case note with message id {}", publishResponse.messageId()) }
           throwable?.run { log.error("Failed to send case note", throwable) }
         }
     }
   }
+
+  override fun sendEvents(caseNotes: List<CaseNote>): PublishResult {
+    val batches = caseNotes
+      .filter { isSensitiveCaseNote(it.caseNoteId) }
+      .map { toBatchEntry(CaseNoteEvent(it)) }
+      .chunked(BATCH_SIZE)
+      .map { entries ->
+        // blocks the caller once maxInFlight batches are outstanding so we never flood the client connection pool
+        inFlight.acquire()
+        publishBatch(entries, 1).whenComplete { _, _ -> inFlight.release() }
+      }
+    return batches.map { it.join() }.fold(PublishResult()) { total, result -> total + result }
+  }
+
+  private fun publishBatch(entries: List<PublishBatchRequestEntry>, attempt: Int): CompletableFuture<PublishResult> =
+    callMetrics.record(
+      "case_notes.sns.publish",
+      Tags.of("operation", "publishBatch"),
+      snsClient.publishBatch(PublishBatchRequest.builder().topicArn(topicArn).publishBatchRequestEntries(entries).build())
+    )
+      .thenApply { response ->
+        response.failed().forEach { log.warn("Failed to send case note {} on attempt {}: {} {}", it.id(), attempt, it.code(), it.message()) }
+        response.failed().filterNot { it.senderFault() }.map { it.id() }.toSet() to response.failed().count { it.senderFault() }
+      }
+      .exceptionally { e ->
+        log.warn("Failed to send batch of {} case notes on attempt {}", entries.size, attempt, e)
+        entries.map { it.id() }.toSet() to 0
+      }
+      .thenCompose { (retryableIds, rejected) ->
+        val published = PublishResult(published = entries.size - retryableIds.size - rejected, failed = rejected)
+        when {
+          retryableIds.isEmpty() -> CompletableFuture.completedFuture(published)
+          attempt >= maxAttempts -> {
+            log.error("Giving up sending case notes {} after {} attempts", retryableIds, attempt)
+            CompletableFuture.completedFuture(published + PublishResult(failed = retryableIds.size))
+          }
+          else ->
+            CompletableFuture.supplyAsync({ entries.filter { it.id() in retryableIds } }, CompletableFuture.delayedExecutor(retryBackoffMs * attempt, TimeUnit.MILLISECONDS))
+              .thenCompose { publishBatch(it, attempt + 1) }
+              .thenApply { published + it }
+        }
+      }
+
+  private fun toBatchEntry(cne: CaseNoteEvent): PublishBatchRequestEntry =
+    PublishBatchRequestEntry.builder()
+      .id(cne.caseNoteId)
+      .messageAttributes(messageAttributes(cne))
+      .message(objectMapper.writeValueAsString(cne))
+      .build()
+
+  private fun messageAttributes(cne: CaseNoteEvent): Map<String, MessageAttributeValue> =
+    mapOf(
+      "eventType" to MessageAttributeValue.builder().dataType("String").stringValue(cne.eventType).build(),
+      "contentType" to MessageAttributeValue.builder().dataType("String").stringValue("text/plain;charset=UTF-8").build()
+    )
 }
 
 @Component
@@ -69,6 +141,15 @@ open class CaseNoteNoOpEventPusher : CaseNoteEventPusher {
       log.debug("Case note not sent was {}", CaseNoteEvent(caseNote))
     }
   }
+
+  override fun sendEvents(caseNotes: List<CaseNote>): PublishResult {
+    caseNotes.forEach { sendEvent(it) }
+    return PublishResult(published = caseNotes.count { isSensitiveCaseNote(it.caseNoteId) })
+  }
+}
+
+data class PublishResult(val published: Int = 0, val failed: Int = 0) {
+  operator fun plus(other: PublishResult) = PublishResult(published + other.published, failed + other.failed)
 }
 
 data class CaseNoteEvent(
@@ -1,11 +1,15 @@
 package uk.gov.justice.hmpps.casenotes.services;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.microsoft.applicationinsights.TelemetryClient;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.security.access.AccessDeniedException;
@@ -16,6 +20,9 @@ import org.springframework.validation.annotation.Validated;
 import uk.gov.justice.hmpps.casenotes.config.SecurityUserContext;
 import uk.gov.justice.hmpps.casenotes.dto.CaseNote;
 import uk.gov.justice.hmpps.casenotes.dto.CaseNoteAmendment;
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteChangeCursor;
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteChangeEvent.ChangeType;
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteChanges;
 import uk.gov.justice.hmpps.casenotes.dto.CaseNoteFilter;
 import uk.gov.justice.hmpps.casenotes.dto.CaseNoteType;
 import uk.gov.justice.hmpps.casenotes.dto.NewCaseNote;
@@ -25,10 +32,12 @@ import uk.gov.justice.hmpps.casenotes.dto.UpdateCaseNote;
 import uk.gov.justice.hmpps.casenotes.dto.UpdateCaseNoteType;
 import uk.gov.justice.hmpps.casenotes.filters.OffenderCaseNoteFilter;
 import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNote;
+import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNoteChange;
 import uk.gov.justice.hmpps.casenotes.model.ParentNoteType;
 import uk.gov.justice.hmpps.casenotes.model.SensitiveCaseNoteType;
 import uk.gov.justice.hmpps.casenotes.repository.CaseNoteTypeRepository;
 import uk.gov.justice.hmpps.casenotes.repository.OffenderCaseNoteAmendmentRepository;
+import uk.gov.justice.hmpps.casenotes.repository.OffenderCaseNoteChangeRepository;
 import uk.gov.justice.hmpps.casenotes.repository.OffenderCaseNoteRepository;
 import uk.gov.justice.hmpps.casenotes.repository.ParentCaseNoteTypeRepository;
 
@@ -39,6 +48,7 @@ import javax.validation.constraints.NotNull;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -53,7 +63,7 @@ import static org.springframework.data.domain.Sort.Direction.ASC;
 @Slf4j
 public class CaseNoteService {
 
-    private static final String SERVICE_NAME = "OCNS";
+    static final String SERVICE_NAME = "OCNS";
     private final OffenderCaseNoteRepository repository;
     private final OffenderCaseNoteAmendmentRepository amendmentRepository;
     private final CaseNoteTypeRepository caseNoteTypeRepository;
@@ -62,6 +72,10 @@ public class CaseNoteService {
     private final ExternalApiService externalApiService;
     private final CaseNoteTypeMerger caseNoteTypeMerger;
     private final TelemetryClient telemetryClient;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SensitiveCaseNoteTypeIndex caseNoteTypeIndex;
+    private final MeterRegistry meterRegistry;
+    private final OffenderCaseNoteChangeRepository changeRepository;
 
     public Page<CaseNote> getCaseNotes(final String offenderIdentifier, final CaseNoteFilter caseNoteFilter, final Pageable pageable) {
 
@@ -81,7 +95,7 @@ public class CaseNoteService {
 
             sensitiveCaseNotes = repository.findAll(filter)
                     .stream()
-                    .map(this::mapper)
+                    .map(CaseNoteService::mapper)
                     .collect(Collectors.toList());
         } else {
             sensitiveCaseNotes = List.of();
@@ -104,6 +118,7 @@ public class CaseNoteService {
             final var pagedNotes = externalApiService.getOffenderCaseNotes(offenderIdentifier, caseNoteFilter, 10000, 0, "caseNoteId", ASC);
 
             final var dtoNotes = translateToDto(pagedNotes, offenderIdentifier);
+            recordMergeSizes(dtoNotes.size(), sensitiveCaseNotes.size());
 
             dtoNotes.addAll(sensitiveCaseNotes);
 
@@ -118,6 +133,12 @@ public class CaseNoteService {
 
     }
 
+    // only recorded when the two sources are merged, as a page straight from NOMIS is bounded by the page size
+    private void recordMergeSizes(final int nomisRows, final int sensitiveRows) {
+        meterRegistry.summary("case_notes.merge.nomis_rows").record(nomisRows);
+        meterRegistry.summary("case_notes.merge.sensitive_rows").record(sensitiveRows);
+    }
+
     private List<CaseNote> translateToDto(final Page<NomisCaseNote> pagedNotes, final String offenderIdentifier) {
         return pagedNotes.getContent()
                 .stream()
@@ -125,8 +146,11 @@ public class CaseNoteService {
                 .collect(Collectors.toList());
     }
 
+    // this and the mappers are package-private rather than private only so that JitWarmup and the benchmarks can
+    // exercise them without a service and its collaborators
+    @VisibleForTesting
     @SuppressWarnings("unchecked")
-    private static List<CaseNote> sortByFieldName(final List<CaseNote> list, final String fieldName, final Sort.Direction direction) {
+    static List<CaseNote> sortByFieldName(final List<CaseNote> list, final String fieldName, final Sort.Direction direction) {
         try {
             final var field = CaseNote.class.getDeclaredField(fieldName);
             field.setAccessible(true);
@@ -146,7 +170,8 @@ public class CaseNoteService {
         }
     }
 
-    private CaseNote mapper(final OffenderCaseNote cn) {
+    @VisibleForTesting
+    static CaseNote mapper(final OffenderCaseNote cn) {
         final var parentType = cn.getSensitiveCaseNoteType().getParentType();
         return CaseNote.builder()
                 .caseNoteId(cn.getId().toString())
@@ -176,7 +201,8 @@ public class CaseNoteService {
                 .build();
     }
 
-    private CaseNote mapper(final NomisCaseNote cn, final String offenderIdentifier) {
+    @VisibleForTesting
+    static CaseNote mapper(final NomisCaseNote cn, final String offenderIdentifier) {
         return CaseNote.builder()
                 .caseNoteId(cn.getCaseNoteId().toString())
                 .eventId(cn.getCaseNoteId())
@@ -205,7 +231,7 @@ public class CaseNoteService {
 
     @Transactional
     public CaseNote createCaseNote(@NotNull final String offenderIdentifier, @NotNull @Valid final NewCaseNote newCaseNote) {
-        final var type = caseNoteTypeRepository.findSensitiveCaseNoteTypeByParentType_TypeAndType(newCaseNote.getType(), newCaseNote.getSubType());
+        final var type = caseNoteTypeIndex.findSubType(newCaseNote.getType(), newCaseNote.getSubType());
 
         // If we don't have the type locally then won't be secure, so delegate to elite2
         if (type == null) {
@@ -218,8 +244,8 @@ public class CaseNoteService {
         }
 
         // ensure that the case note type is active
-        if (!type.getParentType().isActive() || !type.isActive()) {
-            throw new ValidationException(format("Case Note Type %s/%s is not active", type.getParentType().getType(), type.getType()));
+        if (!type.isParentActive() || !type.isActive()) {
+            throw new ValidationException(format("Case Note Type %s/%s is not active", type.getParentType(), type.getType()));
         }
 
         final var author = securityUserContext.getCurrentUser();
@@ -233,12 +259,14 @@ public class CaseNoteService {
                 .authorUserId(author.getUserId())
                 .authorName(staffName)
                 .occurrenceDateTime(newCaseNote.getOccurrenceDateTime() == null ? LocalDateTime.now() : newCaseNote.getOccurrenceDateTime())
-                .sensitiveCaseNoteType(type)
+                .sensitiveCaseNoteType(caseNoteTypeRepository.getOne(type.getId()))
                 .offenderIdentifier(offenderIdentifier)
                 .locationId(locationId)
                 .build();
 
-        return mapper(repository.save(caseNote));
+        final var savedCaseNote = repository.save(caseNote);
+        publishChange(ChangeType.CREATED, savedCaseNote);
+        return mapper(savedCaseNote);
     }
 
     @Transactional
@@ -260,6 +288,7 @@ public class CaseNoteService {
 
         offenderCaseNote.addAmendment(amendCaseNote.getText(), author.getUsername(), authorFullName, author.getUserId());
         repository.save(offenderCaseNote);
+        publishChange(ChangeType.AMENDED, offenderCaseNote);
         return mapper(offenderCaseNote);
     }
 
@@ -283,13 +312,11 @@ public class CaseNoteService {
 
 
     private List<CaseNoteType> getSensitiveCaseNoteTypes(final boolean allTypes) {
-        return parentCaseNoteTypeRepository.findAll().stream()
-                .filter(t -> allTypes || t.isActive())
-                .map(st -> transform(st, allTypes))
-                .collect(Collectors.toList());
+        return caseNoteTypeIndex.getCaseNoteTypes(allTypes);
     }
 
-    private CaseNoteType transform(final ParentNoteType parentNoteType, final boolean allTypes) {
+    // also used by SensitiveCaseNoteTypeIndex to build its snapshot of the types
+    static CaseNoteType transform(final ParentNoteType parentNoteType, final boolean allTypes) {
         return CaseNoteType.builder()
                 .code(parentNoteType.getType())
                 .description(parentNoteType.getDescription())
@@ -317,6 +344,24 @@ public class CaseNoteService {
         return mapper(repository.findById(UUID.fromString(caseNoteIdentifier)).orElseThrow(() -> EntityNotFoundException.withId(caseNoteIdentifier)));
     }
 
+    /**
+     * Page through sensitive case notes in the order they were last changed.  Keyset paging on (modifyDateTime, id)
+     * means each page is a single index range scan however far through the feed the client has got.  Changes after
+     * toDateTime are left for a later page, so that changes still committing aren't paged past.
+     */
+    @PreAuthorize("hasAnyRole('VIEW_SENSITIVE_CASE_NOTES')")
+    public CaseNoteChanges getCaseNoteChanges(final Set<String> types, final String cursor, final LocalDateTime fromDateTime, final LocalDateTime toDateTime, final int size) {
+        final var after = cursor != null ? CaseNoteChangeCursor.decode(cursor) : CaseNoteChangeCursor.startingAt(fromDateTime);
+        final var page = PageRequest.of(0, size);
+
+        final var notes = types == null || types.isEmpty()
+                ? repository.findChangesAfter(after.getModifyDateTime(), after.getId(), toDateTime, page)
+                : repository.findChangesForTypesAfter(types, after.getModifyDateTime(), after.getId(), toDateTime, page);
+
+        final var next = notes.isEmpty() ? after : new CaseNoteChangeCursor(notes.get(notes.size() - 1).getModifyDateTime(), notes.get(notes.size() - 1).getId());
+        return new CaseNoteChanges(notes.stream().map(CaseNoteService::mapper).collect(Collectors.toList()), next.encode());
+    }
+
     private boolean isNotSensitiveCaseNote(final String caseNoteIdentifier) {
         return NumberUtils.isDigits(caseNoteIdentifier);
     }
@@ -337,6 +382,7 @@ public class CaseNoteService {
                 .active(newCaseNoteType.isActive())
                 .build());
 
+        eventPublisher.publishEvent(new CaseNoteTypesChanged(parentNoteType.getType()));
         return transform(parentNoteType, true);
     }
 
@@ -357,6 +403,7 @@ public class CaseNoteService {
                         .build()
         );
 
+        eventPublisher.publishEvent(new CaseNoteTypesChanged(parentType));
         return transform(parentNoteType, true);
     }
 
@@ -365,6 +412,7 @@ public class CaseNoteService {
     public CaseNoteType updateCaseNoteType(final String parentType, @NotNull @Valid final UpdateCaseNoteType body) {
         final var parentNoteType = parentCaseNoteTypeRepository.findById(parentType).orElseThrow(EntityNotFoundException.withId(parentType));
         parentNoteType.update(body.getDescription(), body.isActive());
+        eventPublisher.publishEvent(new CaseNoteTypesChanged(parentType));
         return transform(parentNoteType, true);
     }
 
@@ -375,18 +423,10 @@ public class CaseNoteService {
         final var parentNoteType = parentCaseNoteTypeRepository.findById(parentType).orElseThrow(EntityNotFoundException.withId(parentType));
         final var existingSubType = parentNoteType.getSubType(subType).orElseThrow(EntityNotFoundException.withId(parentType + " " + subType));
         existingSubType.update(body.getDescription(), body.isActive());
+        eventPublisher.publishEvent(new CaseNoteTypesChanged(parentType));
         return transform(parentNoteType, true);
     }
 
-    @Transactional
-    public int deleteCaseNotesForOffender(final String offenderIdentifier) {
-        repository.deleteOffenderCaseNoteAmendmentsByOffenderIdentifier(offenderIdentifier);
-        final var deletedCaseNotesCount = repository.deleteOffenderCaseNoteByOffenderIdentifier(offenderIdentifier);
-        log.info("Deleted {} case notes for offender identifier {}", deletedCaseNotesCount, offenderIdentifier);
-        telemetryClient.trackEvent("OffenderDelete", Map.of("offenderNo", offenderIdentifier, "count", valueOf(deletedCaseNotesCount)), null);
-        return deletedCaseNotesCount;
-    }
-
     @Transactional
     @PreAuthorize("hasRole('DELETE_SENSITIVE_CASE_NOTES')")
     public void softDeleteCaseNote(final String offenderIdentifier, final String caseNoteId) {
@@ -398,6 +438,7 @@ public class CaseNoteService {
             throw new ValidationException("case note id not connected with offenderIdentifier");
         }
         repository.deleteById(UUID.fromString(caseNoteId));
+        publishChange(ChangeType.DELETED, caseNote);
         telemetryClient.trackEvent("SecureCaseNoteSoftDelete",
                 Map.of("userName", securityUserContext.getCurrentUser().getUsername(),
                         "offenderId", offenderIdentifier,
@@ -414,6 +455,7 @@ public class CaseNoteService {
             throw new ValidationException("case note amendment id not connected with offenderIdentifier");
         }
         amendmentRepository.deleteById(caseNoteAmendmentId);
+        publishChange(ChangeType.AMENDED, caseNoteAmendment.getCaseNote());
 
         telemetryClient.trackEvent("SecureCaseNoteAmendmentSoftDelete",
                 Map.of("userName", securityUserContext.getCurrentUser().getUsername(),
@@ -421,4 +463,13 @@ public class CaseNoteService {
                         "case note amendment id", valueOf(caseNoteAmendmentId)),
                 null);
     }
+
+    /**
+     * Records the change in the same transaction as the case note, so that it gets the next change id, and publishes it
+     * to the stream once committed.
+     */
+    private void publishChange(final ChangeType changeType, final OffenderCaseNote caseNote) {
+        final var change = changeRepository.save(OffenderCaseNoteChange.builder().caseNoteId(caseNote.getId()).changeType(changeType).build());
+        eventPublisher.publishEvent(new CaseNoteChange(change.getId(), changeType, caseNote));
+    }
 }
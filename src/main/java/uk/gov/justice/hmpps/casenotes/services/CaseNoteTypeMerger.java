@@ -1,55 +1,154 @@
 package uk.gov.justice.hmpps.casenotes.services;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import uk.gov.justice.hmpps.casenotes.dto.CaseNoteType;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Merges the case note types from NOMIS with the sensitive case note types held locally.  The inputs are the same for
+ * most requests - the NOMIS reference data and one of two views of the local types - so each distinct merged result is
+ * kept and handed to every caller that asks for the same merge.  The merged types can't be changed, neither the lists
+ * nor the types in them, so sharing them is safe.
+ *
+ * The NOMIS types are fetched afresh for each request, so they are compared by value and the cache keeps its own copy
+ * of them.  The local types are the same list until they are reloaded, see [SensitiveCaseNoteTypeIndex], so they are
+ * compared by identity and a reload simply stops the old results from being found.
+ */
 @Component
 public class CaseNoteTypeMerger {
 
+    private final Map<MergeKey, List<CaseNoteType>> merged = new ConcurrentHashMap<>();
+    private final int cacheSize;
+
+    public CaseNoteTypeMerger(@Value("${case-note-types.merge-cache-size:50}") final int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Merge the two lists of types by code, with the second taking precedence, and sort them and their sub types by
+     * description.  Neither list is changed.
+     */
     public List<CaseNoteType> mergeAndSortList(final List<CaseNoteType> list1, final List<CaseNoteType> list2) {
-        return merge(list1, list2)
-                .stream()
-                .map(t -> CaseNoteType.builder()
-                            .code(t.getCode())
-                            .description(t.getDescription())
-                            .activeFlag(t.getActiveFlag())
-                            .source(t.getSource())
-                            .subCodes(t.getSubCodes().stream().sorted().collect(Collectors.toList()))
-                            .build())
-                .sorted()
-                .collect(Collectors.toList());
-    }
-
-    private List<CaseNoteType> merge(final List<CaseNoteType> list1, final List<CaseNoteType> list2) {
-
-        final var map1 = list1 != null ? list1.stream().peek(cn -> {
-            if (cn.getActiveFlag().equals("N")) {
-                cn.getSubCodes().forEach(cns -> cns.setActiveFlag("N"));
+        final var key = new MergeKey(list1 != null ? list1 : List.of(), list2 != null ? list2 : List.of());
+        var result = merged.get(key);
+        if (result == null) {
+            // merged without holding any lock, so concurrent misses for the same inputs may both merge
+            result = merge(key.list1, key.list2, false);
+            // distinct inputs are rare, so when full start again rather than tracking which were least recently used
+            if (merged.size() >= cacheSize) merged.clear();
+            merged.putIfAbsent(new MergeKey(copyOf(key.list1), key.list2), result);
+        }
+        return result;
+    }
+
+    private static List<CaseNoteType> copyOf(final List<CaseNoteType> types) {
+        final var copies = new ArrayList<CaseNoteType>(types.size());
+        types.forEach(type -> copies.add(type.toBuilder().subCodes(type.getSubCodes() != null ? copyOf(type.getSubCodes()) : null).build()));
+        return copies;
+    }
+
+    /**
+     * Single pass over each list: the second list is indexed by code, then each type in the first list is either copied
+     * or combined with its match, which is removed from the index, and anything left in the index is copied.  Types
+     * from the first list that are inactive make all of their sub types inactive.
+     */
+    static List<CaseNoteType> merge(final List<CaseNoteType> list1, final List<CaseNoteType> list2, final boolean parentInactive) {
+        final var list2ByCode = new LinkedHashMap<String, CaseNoteType>(list2.size() * 2);
+        list2.forEach(t -> list2ByCode.put(t.getCode(), t));
+
+        final var result = new ArrayList<CaseNoteType>(list1.size() + list2.size());
+        for (final var type1 : list1) {
+            final var activeFlag = parentInactive ? "N" : type1.getActiveFlag();
+            final var type2 = list2ByCode.remove(type1.getCode());
+            if (type2 == null) {
+                result.add(copy(type1, activeFlag, type1.getSource(), merge(subCodes(type1), List.of(), "N".equals(activeFlag))));
+            } else {
+                result.add(new MergedCaseNoteType(type1.getCode(), type2.getDescription(), type2.getActiveFlag(), null,
+                        merge(subCodes(type1), subCodes(type2), "N".equals(activeFlag))));
             }
-        }).collect(Collectors.toMap(CaseNoteType::getCode, cn -> cn)) : new HashMap<String, CaseNoteType>();
-
-        final var map2 = list2 != null ? list2.stream().collect(Collectors.toMap(CaseNoteType::getCode, cn -> cn)) : new HashMap<String, CaseNoteType>();
-
-        final var mergedMap = Stream.of(map1, map2)
-                .flatMap(map -> map.entrySet().stream())
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (v1, v2) -> CaseNoteType.builder()
-                                .code(v1.getCode())
-                                .description(v2.getDescription())
-                                .activeFlag(v2.getActiveFlag())
-                                .subCodes(merge(v1.getSubCodes(), v2.getSubCodes()))
-                                .build())
-                );
-
-        return new ArrayList<>(mergedMap.values());
+        }
+        list2ByCode.values().forEach(type2 -> result.add(copy(type2, type2.getActiveFlag(), type2.getSource(), merge(List.of(), subCodes(type2), false))));
+
+        Collections.sort(result);
+        return Collections.unmodifiableList(result);
+    }
+
+    private static CaseNoteType copy(final CaseNoteType type, final String activeFlag, final String source, final List<CaseNoteType> subCodes) {
+        return new MergedCaseNoteType(type.getCode(), type.getDescription(), activeFlag, source, subCodes);
+    }
+
+    private static List<CaseNoteType> subCodes(final CaseNoteType type) {
+        return type.getSubCodes() != null ? type.getSubCodes() : List.of();
+    }
+
+    private static class MergeKey {
+        private final List<CaseNoteType> list1;
+        private final List<CaseNoteType> list2;
+        private final int hashCode;
+
+        private MergeKey(final List<CaseNoteType> list1, final List<CaseNoteType> list2) {
+            this.list1 = list1;
+            this.list2 = list2;
+            this.hashCode = 31 * list1.hashCode() + System.identityHashCode(list2);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof MergeKey)) return false;
+            final var other = (MergeKey) o;
+            return hashCode == other.hashCode && list2 == other.list2 && list1.equals(other.list1);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * A type in a merged result.  The sub types are already an unmodifiable list, and the setters refuse changes.
+     */
+    private static final class MergedCaseNoteType extends CaseNoteType {
+
+        private MergedCaseNoteType(final String code, final String description, final String activeFlag, final String source, final List<CaseNoteType> subCodes) {
+            super(code, description, activeFlag, source, subCodes);
+        }
+
+        @Override
+        public void setCode(final String code) {
+            throw unchangeable();
+        }
+
+        @Override
+        public void setDescription(final String description) {
+            throw unchangeable();
+        }
+
+        @Override
+        public void setActiveFlag(final String activeFlag) {
+            throw unchangeable();
+        }
+
+        @Override
+        public void setSource(final String source) {
+            throw unchangeable();
+        }
+
+        @Override
+        public void setSubCodes(final List<CaseNoteType> subCodes) {
+            throw unchangeable();
+        }
+
+        private static UnsupportedOperationException unchangeable() {
+            return new UnsupportedOperationException("Merged case note types are shared so can't be changed");
+        }
     }
 }
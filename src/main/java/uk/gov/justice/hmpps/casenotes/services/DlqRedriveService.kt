@@ -0,0 +1,115 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import com.amazonaws.services.sqs.AmazonSQS
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry
+import io.micrometer.core.instrument.MeterRegistry
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.security.access.prepost.PreAuthorize
+import org.springframework.stereotype.Service
+import uk.gov.justice.hmpps.casenotes.dto.DlqRedriveResult
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import javax.validation.ValidationException
+
+/**
+ * Moves messages from the dead letter queue back onto the event queue so that they are processed again.  Messages are
+ * moved in batches of up to ten and each batch is only deleted from the dead letter queue once it has been accepted by
+ * the event queue.  The rate is limited so that a large backlog doesn't swamp the listeners or the APIs they call.
+ *
+ * A redrive runs within the request that asked for it, so each one is limited to a minute's work at the requested rate,
+ * and a larger backlog is moved by calling again.
+ */
+@Service
+@ConditionalOnProperty("sqs.provider")
+class DlqRedriveService(
+  @Qualifier("awsSqsClient") private val awsSqsClient: AmazonSQS,
+  @Qualifier("awsSqsDlqClient") private val awsSqsDlqClient: AmazonSQS,
+  @Value("\${sqs.queue.name}") private val queueName: String,
+  @Value("\${sqs.dlq.name}") private val dlqName: String,
+  private val meterRegistry: MeterRegistry
+) {
+  companion object {
+    private val log = LoggerFactory.getLogger(this::class.java)
+    private const val BATCH_SIZE = 10
+    const val MAX_SECONDS = 60L
+  }
+
+  private val queueUrl by lazy { awsSqsClient.getQueueUrl(queueName).queueUrl }
+  private val dlqUrl by lazy { awsSqsDlqClient.getQueueUrl(dlqName).queueUrl }
+  private val running = AtomicBoolean()
+
+  /**
+   * Move up to maxMessages messages, at no more than messagesPerSecond.  Stops early once the dead letter queue has no
+   * more visible messages, or once [MAX_SECONDS] have passed if the queues are slow to respond.  Only one redrive can
+   * run at a time on each pod.
+   */
+  @PreAuthorize("hasRole('QUEUE_ADMIN')")
+  fun redrive(maxMessages: Int, messagesPerSecond: Int): DlqRedriveResult {
+    if (maxMessages > messagesPerSecond * MAX_SECONDS) {
+      throw ValidationException("Moving $maxMessages messages at $messagesPerSecond per second would take more than $MAX_SECONDS seconds, move fewer or raise the rate")
+    }
+    if (!running.compareAndSet(false, true)) throw ValidationException("A redrive of the dead letter queue is already running")
+    try {
+      return moveMessages(maxMessages, messagesPerSecond)
+    } finally {
+      running.set(false)
+    }
+  }
+
+  private fun moveMessages(maxMessages: Int, messagesPerSecond: Int): DlqRedriveResult {
+    val started = System.nanoTime()
+    var moved = 0
+    var failed = 0
+    log.info("Moving up to {} messages from {} to {} at {} per second", maxMessages, dlqName, queueName, messagesPerSecond)
+
+    val deadline = started + TimeUnit.SECONDS.toNanos(MAX_SECONDS)
+    while (moved + failed < maxMessages && System.nanoTime() < deadline) {
+      val messages = awsSqsDlqClient.receiveMessage(
+        ReceiveMessageRequest(dlqUrl)
+          .withMaxNumberOfMessages(minOf(BATCH_SIZE, maxMessages - moved - failed))
+          .withWaitTimeSeconds(1)
+          .withMessageAttributeNames("All")
+      ).messages
+      if (messages.isEmpty()) break
+
+      val sent = awsSqsClient.sendMessageBatch(
+        SendMessageBatchRequest(
+          queueUrl,
+          messages.mapIndexed { i, message -> SendMessageBatchRequestEntry(i.toString(), message.body).withMessageAttributes(message.messageAttributes) }
+        )
+      )
+      // failures are left on the dead letter queue, and stay invisible to this redrive until their visibility timeout
+      sent.failed.forEach { log.warn("Failed to move message {}: {} {}", messages[it.id.toInt()].messageId, it.code, it.message) }
+      val sentMessages = sent.successful.map { messages[it.id.toInt()] }
+      if (sentMessages.isNotEmpty()) {
+        awsSqsDlqClient.deleteMessageBatch(dlqUrl, sentMessages.mapIndexed { i, message -> DeleteMessageBatchRequestEntry(i.toString(), message.receiptHandle) })
+          .failed.forEach { log.warn("Moved message {} could not be deleted from {}: {}", sentMessages[it.id.toInt()].messageId, dlqName, it.code) }
+      }
+      moved += sentMessages.size
+      failed += sent.failed.size
+      meterRegistry.counter("case_notes.events.dlq.redriven", "result", "moved").increment(sentMessages.size.toDouble())
+      meterRegistry.counter("case_notes.events.dlq.redriven", "result", "failed").increment(sent.failed.size.toDouble())
+
+      throttle(started, moved + failed, messagesPerSecond)
+    }
+
+    val elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)
+    log.info("Moved {} messages from {} to {} in {}ms, {} failed", moved, dlqName, queueName, elapsedMillis, failed)
+    return DlqRedriveResult(moved, failed, elapsedMillis)
+  }
+
+  /**
+   * Sleeps until the number of messages handled so far is within the rate since the redrive started
+   */
+  private fun throttle(started: Long, handled: Int, messagesPerSecond: Int) {
+    val dueNanos = TimeUnit.SECONDS.toNanos(handled.toLong()) / messagesPerSecond
+    val aheadNanos = dueNanos - (System.nanoTime() - started)
+    if (aheadNanos > 0) TimeUnit.NANOSECONDS.sleep(aheadNanos)
+  }
+}
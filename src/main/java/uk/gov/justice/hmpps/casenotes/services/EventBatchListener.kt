@@ -0,0 +1,149 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import com.amazonaws.services.sqs.AmazonSQS
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry
+import com.amazonaws.services.sqs.model.Message
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest
+import io.micrometer.core.instrument.MeterRegistry
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression
+import org.springframework.context.SmartLifecycle
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory
+import org.springframework.stereotype.Component
+import java.time.Instant
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Alternative to the JMS listener that pulls batches of messages straight from SQS with long polling.  Each batch is
+ * grouped by partition, back to back compliance deletes for the same offender are collapsed into one, the groups are
+ * processed in parallel on their partitions and the successfully processed messages are then deleted from the queue in
+ * a single call.  Each group is processed in order and stops at the first event that fails, so that it and the rest of
+ * the group are left on the queue to be redelivered rather than being overtaken by later events.
+ *
+ * Enabled by setting sqs.listener.mode to batch, which also stops the JMS listener container from starting.
+ */
+@Component
+@ConditionalOnExpression("'\${sqs.provider:false}' != 'false' && '\${sqs.listener.mode:jms}' == 'batch'")
+class EventBatchListener(
+  @Qualifier("awsSqsClient") private val awsSqsClient: AmazonSQS,
+  @Value("\${sqs.queue.name}") private val queueName: String,
+  private val eventListener: EventListener,
+  private val partitionedExecutor: PartitionedExecutor,
+  private val meterRegistry: MeterRegistry,
+  @Value("\${sqs.listener.batch.pollers:1}") private val pollers: Int,
+  @Value("\${sqs.listener.batch.max-messages:10}") private val maxMessages: Int,
+  @Value("\${sqs.listener.batch.wait-seconds:20}") private val waitSeconds: Int
+) : SmartLifecycle {
+  companion object {
+    private val log = LoggerFactory.getLogger(this::class.java)
+    private const val SENT_TIMESTAMP = "SentTimestamp"
+  }
+
+  init {
+    // SQS rejects receives, and batch deletes, of more than 10 messages
+    require(maxMessages in 1..10) { "sqs.listener.batch.max-messages must be between 1 and 10 but was $maxMessages" }
+  }
+
+  private val queueUrl by lazy { awsSqsClient.getQueueUrl(queueName).queueUrl }
+
+  @Volatile
+  private var running = false
+  private var pollerThreads: ExecutorService? = null
+
+  override fun start() {
+    running = true
+    pollerThreads = Executors.newFixedThreadPool(pollers, CustomizableThreadFactory("event-batch-poller-")).apply {
+      repeat(pollers) { execute { poll() } }
+    }
+  }
+
+  override fun stop() {
+    running = false
+    pollerThreads?.run {
+      shutdown()
+      // let any batch in progress finish so that its messages are deleted
+      awaitTermination(waitSeconds + 30L, TimeUnit.SECONDS)
+    }
+  }
+
+  override fun isRunning() = running
+
+  private fun poll() {
+    while (running) {
+      try {
+        pollOnce()
+      } catch (e: Exception) {
+        log.error("Error caught polling for events", e)
+        Thread.sleep(1000)
+      }
+    }
+  }
+
+  /**
+   * Receive and process a single batch, returning the number of messages deleted from the queue.
+   */
+  fun pollOnce(): Int {
+    val messages = awsSqsClient.receiveMessage(
+      ReceiveMessageRequest(queueUrl).withMaxNumberOfMessages(maxMessages).withWaitTimeSeconds(waitSeconds).withAttributeNames(SENT_TIMESTAMP)
+    ).messages
+    meterRegistry.counter("case_notes.events.sqs.requests", "operation", "receive").increment()
+    if (messages.isEmpty()) return 0
+
+    val groups = messages
+      .mapNotNull { message ->
+        try {
+          message to eventListener.parse(message.body)
+        } catch (e: Exception) {
+          // left on the queue so that it ends up on the dead letter queue once its receive count is exhausted
+          log.error("Unable to parse event message {}", message.messageId, e)
+          null
+        }
+      }
+      .groupBy { (_, event) -> event.partitionKey }
+      .values
+      .map { group -> partitionedExecutor.submit(group.first().second.partitionKey) { processInOrder(group) } }
+
+    val processed = groups.flatMap { it.get() }
+    if (processed.isEmpty()) return 0
+
+    val response = awsSqsClient.deleteMessageBatch(
+      queueUrl,
+      processed.mapIndexed { i, message -> DeleteMessageBatchRequestEntry(i.toString(), message.receiptHandle) }
+    )
+    meterRegistry.counter("case_notes.events.sqs.requests", "operation", "delete").increment()
+    response.failed.forEach { log.warn("Failed to delete event message {}: {} {}", processed[it.id.toInt()].messageId, it.code, it.message) }
+    return response.successful.size
+  }
+
+  /**
+   * Process the events one at a time, returning the messages that were processed.  Processing stops at the first
+   * failure, leaving that message and the ones after it unprocessed.
+   */
+  private fun processInOrder(group: List<Pair<Message, OffenderEvent>>): List<Message> {
+    val processed = mutableListOf<Message>()
+    group.forEachIndexed { i, (message, event) ->
+      // a compliance delete removes everything for the offender so a repeat straight after it has nothing to do, but
+      // one after another event, such as a merge that moves notes onto the offender, may well have
+      val previous = group.getOrNull(i - 1)?.second
+      if (event.isDelete && previous != null && previous.isDelete && previous.offenderIdDisplay == event.offenderIdDisplay) {
+        meterRegistry.counter("case_notes.events.coalesced").increment()
+      } else {
+        try {
+          eventListener.process(event, message.sentAt)
+        } catch (e: Exception) {
+          log.error("Failed to process events {}, leaving them to be redelivered", group.drop(i).map { it.first.messageId }, e)
+          return processed
+        }
+      }
+      processed += message
+    }
+    return processed
+  }
+
+  private val Message.sentAt: Instant?
+    get() = attributes[SENT_TIMESTAMP]?.let { Instant.ofEpochMilli(it.toLong()) }
+}
@@ -1,36 +1,88 @@
 package uk.gov.justice.hmpps.casenotes.services
 
-import com.google.gson.Gson
+import io.micrometer.core.instrument.MeterRegistry
 import org.slf4j.LoggerFactory
 import org.springframework.jms.annotation.JmsListener
 import org.springframework.stereotype.Service
+import uk.gov.justice.hmpps.casenotes.health.EventProcessingMetrics
+import java.time.Instant
 
 @Service
 class EventListener(
-  private val caseNoteService: CaseNoteService,
+  private val offenderDeletionService: OffenderDeletionService,
   private val mergeOffenderService: MergeOffenderService,
-  private val gson: Gson
+  private val offenderEventParser: OffenderEventParser,
+  private val processedEventStore: ProcessedEventStore,
+  private val partitionedExecutor: PartitionedExecutor,
+  private val meterRegistry: MeterRegistry,
+  private val eventProcessingMetrics: EventProcessingMetrics
 ) {
   companion object {
     private val log = LoggerFactory.getLogger(this::class.java)
   }
 
+  /**
+   * Events are processed on the partition given by their [OffenderEvent.partitionKey], so that when several listener
+   * threads are consuming the queue each prisoner's events are still handled one at a time and in the order they were
+   * received.
+   * The listener thread waits for processing to finish so that the message is only acknowledged once it has succeeded.
+   * The SQS sent time isn't available through JMS, so end to end lag is measured from when the event was published to the
+   * topic.
+   */
   @JmsListener(destination = "\${sqs.queue.name}")
   fun handleEvents(requestJson: String?) {
-    val (Message, MessageAttributes) = gson.fromJson(requestJson, Message::class.java)
-    val (offenderIdDisplay, bookingId) = gson.fromJson(Message, EventMessage::class.java)
+    val event = parse(requestJson)
+    partitionedExecutor.execute(event.partitionKey) { process(event) }
+  }
+
+  fun parse(requestJson: String?): OffenderEvent =
+    offenderEventParser.parse(requestJson ?: throw IllegalArgumentException("Empty event message"))
 
-    val eventType = MessageAttributes.eventType.Value
-    log.info("Processing message of type {}", eventType)
+  /**
+   * Messages that have already been processed are skipped.  A message is only recorded as processed once it has
+   * succeeded, so one that fails part way through, or whose pod goes away before recording it, is processed again.
+   *
+   * @param sentAt when the message was sent to the queue, if known, otherwise the event's publish time is used
+   */
+  fun process(event: OffenderEvent, sentAt: Instant? = null) {
+    if (event.eventType !in OffenderEventParser.HANDLED_EVENT_TYPES) {
+      meterRegistry.counter("case_notes.events.skipped", "eventType", event.eventType).increment()
+      return
+    }
+    eventProcessingMetrics.record<Unit>(event.eventType, sentAt ?: event.timestamp) {
+      if (event.messageId != null && processedEventStore.isProcessed(event.messageId)) {
+        log.info("Skipping message {} of type {} as it has already been processed", event.messageId, event.eventType)
+        meterRegistry.counter("case_notes.events.duplicates", "eventType", event.eventType).increment()
+        return@record
+      }
+      log.info("Processing message of type {}", event.eventType)
 
-    when (eventType) {
-      "BOOKING_NUMBER-CHANGED" -> mergeOffenderService.checkAndMerge(bookingId)
-      "DATA_COMPLIANCE_DELETE-OFFENDER" -> caseNoteService.deleteCaseNotesForOffender(offenderIdDisplay)
+      when (event.eventType) {
+        "BOOKING_NUMBER-CHANGED" -> mergeOffenderService.checkAndMerge(event.bookingId, event.timestamp)
+        "DATA_COMPLIANCE_DELETE-OFFENDER" -> offenderDeletionService.deleteCaseNotesForOffender(event.offenderIdDisplay ?: throw IllegalArgumentException("Delete event has no offenderIdDisplay"))
+      }
+      event.messageId?.let { processedEventStore.markProcessed(it, event.eventType) }
     }
   }
 }
 
-data class Attribute(val Type: String, val Value: String)
-data class MessageAttributes(val eventType: Attribute)
-data class EventMessage(val offenderIdDisplay: String, val bookingId: Long)
-data class Message(val Message: String, val MessageAttributes: MessageAttributes)
+data class OffenderEvent(
+  val eventType: String,
+  val offenderIdDisplay: String?,
+  val bookingId: Long?,
+  val timestamp: Instant? = null,
+  val messageId: String? = null
+) {
+  companion object {
+    private const val HANDLED_EVENTS_PARTITION = "handled-events"
+  }
+
+  /**
+   * A merge event only has the booking id, and which prisoners it touches is only known once the merge has looked them
+   * up, so it can't be given the same key as the deletes of those prisoners.  All the handled events therefore share one
+   * partition and are processed one at a time in the order received, giving up parallelism between prisoners so that a
+   * merge and a delete of the same prisoner can never run at once.  Other events are only skipped, so go anywhere.
+   */
+  val partitionKey: Any? get() = if (eventType in OffenderEventParser.HANDLED_EVENT_TYPES) HANDLED_EVENTS_PARTITION else offenderIdDisplay ?: bookingId
+  val isDelete: Boolean get() = eventType == "DATA_COMPLIANCE_DELETE-OFFENDER"
+}
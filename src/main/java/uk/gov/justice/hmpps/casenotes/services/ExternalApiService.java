@@ -1,6 +1,7 @@
 package uk.gov.justice.hmpps.casenotes.services;
 
 import com.google.common.base.Joiner;
+import io.micrometer.core.instrument.Tags;
 import lombok.AllArgsConstructor;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.core.ParameterizedTypeReference;
@@ -11,6 +12,7 @@ import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 import uk.gov.justice.hmpps.casenotes.dto.BookingIdentifier;
 import uk.gov.justice.hmpps.casenotes.dto.CaseNoteFilter;
 import uk.gov.justice.hmpps.casenotes.dto.CaseNoteType;
@@ -18,6 +20,7 @@ import uk.gov.justice.hmpps.casenotes.dto.NewCaseNote;
 import uk.gov.justice.hmpps.casenotes.dto.NomisCaseNote;
 import uk.gov.justice.hmpps.casenotes.dto.OffenderBooking;
 import uk.gov.justice.hmpps.casenotes.dto.UpdateCaseNote;
+import uk.gov.justice.hmpps.casenotes.health.CallMetrics;
 
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -33,53 +36,52 @@ public class ExternalApiService {
     private final WebClient elite2ApiWebClient;
     private final WebClient oauthApiWebClient;
     private final WebClient elite2ClientCredentialsWebClient;
+    private final CallMetrics callMetrics;
 
     List<CaseNoteType> getCaseNoteTypes() {
-        return getCaseNoteTypes("/api/reference-domains/caseNoteTypes");
+        return getCaseNoteTypes("getCaseNoteTypes", "/api/reference-domains/caseNoteTypes");
     }
 
     List<CaseNoteType> getUserCaseNoteTypes() {
-        return getCaseNoteTypes("/api/users/me/caseNoteTypes");
+        return getCaseNoteTypes("getUserCaseNoteTypes", "/api/users/me/caseNoteTypes");
     }
 
-    private List<CaseNoteType> getCaseNoteTypes(final String url) {
-        return elite2ApiWebClient.get().uri(url)
+    private List<CaseNoteType> getCaseNoteTypes(final String operation, final String url) {
+        return timed(operation, elite2ApiWebClient.get().uri(url)
                 .retrieve()
                 .bodyToMono(
                         new ParameterizedTypeReference<List<CaseNoteType>>() {
-                        })
+                        }))
                 .block();
     }
 
-    List<BookingIdentifier> getMergedIdentifiersByBookingId(final Long bookingId) {
-        return elite2ClientCredentialsWebClient.get().uri("/api/bookings/{bookingId}/identifiers?type={type}", bookingId, "MERGED")
+    Mono<List<BookingIdentifier>> getMergedIdentifiersByBookingId(final Long bookingId) {
+        return timed("getMergedIdentifiersByBookingId", elite2ClientCredentialsWebClient.get().uri("/api/bookings/{bookingId}/identifiers?type={type}", bookingId, "MERGED")
                 .retrieve()
                 .bodyToMono(
                         new ParameterizedTypeReference<List<BookingIdentifier>>() {
-                        })
-                .block();
+                        }));
     }
 
-    OffenderBooking getBooking(final Long bookingId) {
-        return elite2ClientCredentialsWebClient.get().uri("/api/bookings/{bookingId}?basicInfo=true", bookingId)
+    Mono<OffenderBooking> getBooking(final Long bookingId) {
+        return timed("getBooking", elite2ClientCredentialsWebClient.get().uri("/api/bookings/{bookingId}?basicInfo=true", bookingId)
                 .retrieve()
-                .bodyToMono(OffenderBooking.class)
-                .block();
+                .bodyToMono(OffenderBooking.class));
     }
 
     String getUserFullName(final String currentUsername) {
-        return oauthApiWebClient.get().uri("/api/user/{username}", currentUsername)
+        return timed("getUserFullName", oauthApiWebClient.get().uri("/api/user/{username}", currentUsername)
                 .retrieve()
                 .bodyToMono(
                         new ParameterizedTypeReference<Map<String, String>>() {
-                        })
+                        }))
                 .blockOptional().map(u -> u.getOrDefault("name", currentUsername)).orElse(currentUsername);
     }
 
     String getOffenderLocation(final String offenderIdentifier) {
-        return elite2ApiWebClient.get().uri("/api/bookings/offenderNo/{offenderNo}", offenderIdentifier)
+        return timed("getOffenderLocation", elite2ApiWebClient.get().uri("/api/bookings/offenderNo/{offenderNo}", offenderIdentifier)
                 .retrieve()
-                .bodyToMono(OffenderBooking.class)
+                .bodyToMono(OffenderBooking.class))
                 .map(OffenderBooking::getAgencyId)
                 .block();
     }
@@ -95,7 +97,7 @@ public class ExternalApiService {
         final var queryFilter = getQueryFilter(filter);
         final var url = "/api/offenders/{offenderIdentifier}/case-notes" + (queryFilter != null ? "?" + queryFilter : "");
 
-        return elite2ApiWebClient.get().uri(url, offenderIdentifier)
+        return timed("getOffenderCaseNotes", elite2ApiWebClient.get().uri(url, offenderIdentifier)
                 .headers(
                         c -> {
                             c.add("Page-Limit", String.valueOf(pageLimit));
@@ -104,7 +106,7 @@ public class ExternalApiService {
                             c.add("Sort-Order", direction.name());
                         })
                 .retrieve()
-                .toEntityList(NomisCaseNote.class)
+                .toEntityList(NomisCaseNote.class))
                 .map(e -> new PageImpl<>(e.getBody(), PageRequest.of(pageNumber, pageLimit), getHeader(e.getHeaders())))
                 .block();
     }
@@ -146,26 +148,30 @@ public class ExternalApiService {
     }
 
     NomisCaseNote createCaseNote(final String offenderIdentifier, final NewCaseNote newCaseNote) {
-        return elite2ApiWebClient.post().uri("/api/offenders/{offenderNo}/case-notes", offenderIdentifier)
+        return timed("createCaseNote", elite2ApiWebClient.post().uri("/api/offenders/{offenderNo}/case-notes", offenderIdentifier)
                 .bodyValue(newCaseNote)
                 .retrieve()
-                .bodyToMono(NomisCaseNote.class)
+                .bodyToMono(NomisCaseNote.class))
                 .block();
     }
 
     NomisCaseNote getOffenderCaseNote(final String offenderIdentifier, final long caseNoteIdentifier) {
-        return elite2ApiWebClient.get().uri("/api/offenders/{offenderNo}/case-notes/{caseNoteIdentifier}", offenderIdentifier, caseNoteIdentifier)
+        return timed("getOffenderCaseNote", elite2ApiWebClient.get().uri("/api/offenders/{offenderNo}/case-notes/{caseNoteIdentifier}", offenderIdentifier, caseNoteIdentifier)
                 .retrieve()
-                .bodyToMono(NomisCaseNote.class)
+                .bodyToMono(NomisCaseNote.class))
                 .block();
     }
 
     NomisCaseNote amendOffenderCaseNote(final String offenderIdentifier, final long caseNoteIdentifier, final UpdateCaseNote caseNote) {
-        return elite2ApiWebClient.put().uri("/api/offenders/{offenderNo}/case-notes/{caseNoteIdentifier}", offenderIdentifier, caseNoteIdentifier)
+        return timed("amendOffenderCaseNote", elite2ApiWebClient.put().uri("/api/offenders/{offenderNo}/case-notes/{caseNoteIdentifier}", offenderIdentifier, caseNoteIdentifier)
                 .bodyValue(caseNote)
                 .retrieve()
-                .bodyToMono(NomisCaseNote.class)
+                .bodyToMono(NomisCaseNote.class))
                 .block();
     }
+
+    private <T> Mono<T> timed(final String operation, final Mono<T> call) {
+        return callMetrics.record("case_notes.external_api", Tags.of("operation", operation), call);
+    }
 }
 
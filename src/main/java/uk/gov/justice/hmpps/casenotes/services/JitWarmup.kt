@@ -0,0 +1,162 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.boot.context.event.ApplicationStartedEvent
+import org.springframework.context.event.EventListener
+import org.springframework.data.domain.Sort
+import org.springframework.stereotype.Component
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteAmendment
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteType
+import uk.gov.justice.hmpps.casenotes.dto.NomisCaseNote
+import uk.gov.justice.hmpps.casenotes.filters.OffenderCaseNoteFilter
+import uk.gov.justice.hmpps.casenotes.health.ReadinessGate
+import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNote
+import uk.gov.justice.hmpps.casenotes.model.ParentNoteType
+import uk.gov.justice.hmpps.casenotes.model.SensitiveCaseNoteType
+import java.lang.management.ManagementFactory
+import java.time.LocalDateTime
+import java.util.UUID
+import javax.persistence.EntityManagerFactory
+
+/**
+ * Runs the hot paths of reading case notes many times against synthetic data once the application has started, so
+ * that they have been compiled by the time real requests arrive, and holds readiness until it has finished.  Only the
+ * code is exercised - nothing is read from or written to the database or other services.  Enabled with
+ * jit-warmup.enabled.
+ */
+@Component
+@ConditionalOnProperty("jit-warmup.enabled")
+class JitWarmup(
+  private val readinessGate: ReadinessGate,
+  private val objectMapper: ObjectMapper,
+  private val entityManagerFactory: EntityManagerFactory,
+  @Value("\${jit-warmup.iterations:5000}") private val iterations: Int
+) {
+  companion object {
+    private val log = LoggerFactory.getLogger(this::class.java)
+    private const val WORK = "jit warm up"
+    private const val OFFENDER_IDENTIFIER = "A1234AA"
+  }
+
+  @EventListener(ApplicationStartedEvent::class)
+  fun start() {
+    readinessGate.hold(WORK)
+    Thread(
+      {
+        try {
+          warmup()
+        } catch (e: Exception) {
+          log.warn("JIT warm up failed, carrying on regardless", e)
+        } finally {
+          readinessGate.release(WORK)
+        }
+      },
+      "jit-warmup"
+    ).apply { isDaemon = true }.start()
+  }
+
+  fun warmup(): WarmupResult {
+    val offenderCaseNotes = (1..20).map { offenderCaseNote(it) }
+    val nomisCaseNotes = (1..20).map { nomisCaseNote(it) }
+    val nomisTypes = caseNoteTypes("N", 40)
+    val sensitiveTypes = caseNoteTypes("N", 3) + caseNoteTypes("S", 5)
+    val filter = OffenderCaseNoteFilter.builder()
+      .offenderIdentifier(OFFENDER_IDENTIFIER).locationId("MDI").authorUsername("USER1")
+      .type("N1").subType("NSUB1").startDate(LocalDateTime.now().minusDays(1)).endDate(LocalDateTime.now())
+      .build()
+    val criteriaBuilder = entityManagerFactory.criteriaBuilder
+
+    val compilation = ManagementFactory.getCompilationMXBean()
+    val compilationStart = if (compilation.isCompilationTimeMonitoringSupported) compilation.totalCompilationTime else 0
+    val batch = (iterations / 10).coerceAtLeast(1)
+    var firstBatchNanos = 0L
+    var lastBatchNanos = 0L
+    val start = System.nanoTime()
+
+    for (i in 0 until iterations) {
+      val iterationStart = System.nanoTime()
+
+      val caseNotes = offenderCaseNotes.map { CaseNoteService.mapper(it) } +
+        nomisCaseNotes.map { CaseNoteService.mapper(it, OFFENDER_IDENTIFIER) }
+      val sorted = CaseNoteService.sortByFieldName(caseNotes, "occurrenceDateTime", if (i % 2 == 0) Sort.Direction.ASC else Sort.Direction.DESC)
+      CaseNoteTypeMerger.merge(nomisTypes, sensitiveTypes, false)
+      val query = criteriaBuilder.createQuery(OffenderCaseNote::class.java)
+      query.where(filter.toPredicate(query.from(OffenderCaseNote::class.java), query, criteriaBuilder))
+      objectMapper.writeValueAsBytes(sorted)
+
+      val iterationNanos = System.nanoTime() - iterationStart
+      if (i < batch) firstBatchNanos += iterationNanos
+      if (i >= iterations - batch) lastBatchNanos += iterationNanos
+    }
+
+    val result = WarmupResult(
+      iterations = iterations,
+      elapsedMillis = (System.nanoTime() - start) / 1_000_000,
+      compilationMillis = if (compilation.isCompilationTimeMonitoringSupported) compilation.totalCompilationTime - compilationStart else null,
+      firstIterationsMicros = firstBatchNanos / batch / 1000,
+      lastIterationsMicros = lastBatchNanos / batch / 1000
+    )
+    log.info(
+      "JIT warm up of {} iterations took {}ms, with {}ms spent compiling, and each iteration went from {}us to {}us",
+      result.iterations, result.elapsedMillis, result.compilationMillis, result.firstIterationsMicros, result.lastIterationsMicros
+    )
+    return result
+  }
+
+  private fun offenderCaseNote(i: Int): OffenderCaseNote {
+    val parentType = ParentNoteType.builder().type("N${i % 5}").description("Type ${i % 5}").build()
+    val caseNote = OffenderCaseNote.builder()
+      .id(UUID.randomUUID())
+      .offenderIdentifier(OFFENDER_IDENTIFIER)
+      .occurrenceDateTime(LocalDateTime.now().minusHours(i.toLong()))
+      .createDateTime(LocalDateTime.now().minusHours(i.toLong()))
+      .locationId("MDI")
+      .authorUsername("USER$i")
+      .authorUserId("$i")
+      .authorName("Some User $i")
+      .eventId(-i)
+      .sensitiveCaseNoteType(SensitiveCaseNoteType.builder().parentType(parentType).type("NSUB$i").description("Sub type $i").build())
+      .noteText("Some synthetic case note text for case note $i")
+      .build()
+    if (i % 3 == 0) caseNote.addAmendment("Amended text $i", "USER$i", "Some User $i", "$i")
+    return caseNote
+  }
+
+  private fun nomisCaseNote(i: Int): NomisCaseNote = NomisCaseNote.builder()
+    .caseNoteId(i)
+    .offenderIdentifier(OFFENDER_IDENTIFIER)
+    .type("N${i % 5}")
+    .typeDescription("Type ${i % 5}")
+    .subType("NSUB$i")
+    .subTypeDescription("Sub type $i")
+    .source("INST")
+    .creationDateTime(LocalDateTime.now().minusHours(i.toLong()))
+    .occurrenceDateTime(LocalDateTime.now().minusHours(i.toLong()))
+    .staffId(i.toLong())
+    .authorName("Some Staff $i")
+    .text("Some synthetic case note text for case note $i")
+    .originalNoteText("Some synthetic case note text for case note $i")
+    .agencyId("MDI")
+    .amendments(if (i % 3 == 0) listOf(CaseNoteAmendment.builder().additionalNoteText("Amended text $i").authorName("Some Staff $i").creationDateTime(LocalDateTime.now()).build()) else listOf())
+    .build()
+
+  private fun caseNoteTypes(prefix: String, count: Int): List<CaseNoteType> = (0 until count).map { i ->
+    CaseNoteType.builder()
+      .code("$prefix$i")
+      .description("Type $prefix${count - i}")
+      .activeFlag("Y")
+      .subCodes((0 until 6).map { CaseNoteType.builder().code("${prefix}SUB$it").description("Sub type ${6 - it}").activeFlag("Y").build() })
+      .build()
+  }
+
+  data class WarmupResult(
+    val iterations: Int,
+    val elapsedMillis: Long,
+    val compilationMillis: Long?,
+    val firstIterationsMicros: Long,
+    val lastIterationsMicros: Long
+  )
+}
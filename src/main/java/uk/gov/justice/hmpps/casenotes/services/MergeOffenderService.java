@@ -1,12 +1,24 @@
 package uk.gov.justice.hmpps.casenotes.services;
 
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import reactor.core.publisher.Mono;
+import uk.gov.justice.hmpps.casenotes.dto.BookingIdentifier;
+import uk.gov.justice.hmpps.casenotes.model.OffenderMergeHistory;
 import uk.gov.justice.hmpps.casenotes.repository.OffenderCaseNoteRepository;
+import uk.gov.justice.hmpps.casenotes.repository.OffenderMergeHistoryRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
-@AllArgsConstructor
 @Service
 @Slf4j
 @Transactional
@@ -14,23 +26,85 @@ public class MergeOffenderService {
 
     private final ExternalApiService externalApiService;
     private final OffenderCaseNoteRepository repository;
+    private final OffenderMergeHistoryRepository mergeHistoryRepository;
+    private final Duration coalesceWindow;
+
+    // when the last merge of each booking started, kept for the coalesce window
+    private final Map<Long, Instant> recentMerges = new ConcurrentHashMap<>();
+
+    public MergeOffenderService(final ExternalApiService externalApiService,
+                                final OffenderCaseNoteRepository repository,
+                                final OffenderMergeHistoryRepository mergeHistoryRepository,
+                                @Value("${merge.coalesce-window:PT1M}") final Duration coalesceWindow) {
+        this.externalApiService = externalApiService;
+        this.repository = repository;
+        this.mergeHistoryRepository = mergeHistoryRepository;
+        this.coalesceWindow = coalesceWindow;
+    }
 
     public int checkAndMerge(final Long bookingId) {
+        return checkAndMerge(bookingId, null);
+    }
+
+    /**
+     * Move case notes from any identifiers merged into the booking's offender.  If a merge of the same booking has been
+     * started since the event was published then it will already have seen the change, so the event is skipped.
+     *
+     * @param eventTime when the booking number change was published, or null if not known
+     */
+    public int checkAndMerge(final Long bookingId, final Instant eventTime) {
+        final var started = Instant.now();
+        recentMerges.values().removeIf(time -> time.isBefore(started.minus(coalesceWindow)));
+        final var lastStarted = recentMerges.get(bookingId);
+        if (eventTime != null && lastStarted != null && lastStarted.isAfter(eventTime)) {
+            log.debug("Skipping merge for booking ID {} as it was merged at {} after the event at {}", bookingId, lastStarted, eventTime);
+            return 0;
+        }
+
         log.debug("Check for merged booking for ID {}", bookingId);
-        final var booking = externalApiService.getBooking(bookingId);
-        final var totalRows = externalApiService.getMergedIdentifiersByBookingId(bookingId).stream()
-                .mapToInt(id -> {
-                    final var rowsUpdated = repository.updateOffenderIdentifier(id.getValue(), booking.getOffenderNo());
-                    if (rowsUpdated > 0) {
-                        log.info("{} case notes were merged from offender identifier {} to {}", rowsUpdated, id.getValue(), booking.getOffenderNo());
-                    }
-                    return rowsUpdated;
-                }).sum();
-
-        if (totalRows == 0) {
+        final var lookups = Mono.zip(
+                externalApiService.getBooking(bookingId),
+                externalApiService.getMergedIdentifiersByBookingId(bookingId).defaultIfEmpty(List.of())
+        ).block();
+        if (lookups == null) {
+            log.warn("No booking found for booking ID {}", bookingId);
+            return 0;
+        }
+        final var offenderNo = lookups.getT1().getOffenderNo();
+        final var mergedIdentifiers = lookups.getT2().stream()
+                .map(BookingIdentifier::getValue)
+                .filter(id -> !id.equals(offenderNo))
+                .distinct()
+                .collect(Collectors.toList());
+
+        final var totalRows = mergedIdentifiers.isEmpty() ? 0 : repository.updateOffenderIdentifiers(mergedIdentifiers, offenderNo);
+        if (totalRows > 0) {
+            log.info("{} case notes were merged from offender identifiers {} to {}", totalRows, mergedIdentifiers, offenderNo);
+            mergeHistoryRepository.save(OffenderMergeHistory.builder()
+                    .bookingId(bookingId)
+                    .offenderIdentifier(offenderNo)
+                    .mergedIdentifiers(String.join(",", mergedIdentifiers))
+                    .rowsMerged(totalRows)
+                    .build());
+        } else {
             log.debug("No records to merge for booking ID {}", bookingId);
         }
+
+        rememberMerge(bookingId, started);
         return totalRows;
     }
 
+    private void rememberMerge(final Long bookingId, final Instant started) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            recentMerges.put(bookingId, started);
+            return;
+        }
+        // only once the merge has been committed can later events rely on it
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recentMerges.put(bookingId, started);
+            }
+        });
+    }
 }
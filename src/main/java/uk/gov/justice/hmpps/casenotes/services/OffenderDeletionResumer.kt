@@ -0,0 +1,30 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import org.slf4j.LoggerFactory
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+
+/**
+ * Picks up offender deletions that were left running by a pod that has since gone away.  Every pod polls, but only
+ * one will succeed in claiming each deletion.
+ */
+@Component
+class OffenderDeletionResumer(private val offenderDeletionService: OffenderDeletionService) {
+  companion object {
+    private val log = LoggerFactory.getLogger(this::class.java)
+  }
+
+  @Scheduled(fixedDelayString = "\${offender-deletion.resume-interval-ms:60000}", initialDelayString = "\${offender-deletion.resume-interval-ms:60000}")
+  fun resumeStaleDeletions() {
+    offenderDeletionService.findStaleDeletions().forEach { deletionId ->
+      offenderDeletionService.claimDeletion(deletionId)?.run {
+        log.info("Resuming stale offender deletion {} with run {}", deletionId, runId)
+        try {
+          offenderDeletionService.runDeletion(this)
+        } catch (e: RuntimeException) {
+          // already recorded as failed, and will be resumed when the event is redelivered or the deletion requested again
+        }
+      }
+    }
+  }
+}
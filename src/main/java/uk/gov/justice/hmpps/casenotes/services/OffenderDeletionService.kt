@@ -0,0 +1,173 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import com.microsoft.applicationinsights.TelemetryClient
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.dao.DataIntegrityViolationException
+import org.springframework.scheduling.annotation.Async
+import org.springframework.security.access.prepost.PreAuthorize
+import org.springframework.stereotype.Service
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.annotation.Propagation
+import org.springframework.transaction.annotation.Transactional
+import org.springframework.transaction.support.TransactionTemplate
+import uk.gov.justice.hmpps.casenotes.dto.OffenderDeletionStatus
+import uk.gov.justice.hmpps.casenotes.model.OffenderDeletion
+import uk.gov.justice.hmpps.casenotes.model.OffenderDeletion.Status.COMPLETED
+import uk.gov.justice.hmpps.casenotes.model.OffenderDeletion.Status.FAILED
+import uk.gov.justice.hmpps.casenotes.model.OffenderDeletion.Status.RUNNING
+import uk.gov.justice.hmpps.casenotes.repository.OffenderCaseNoteRepository
+import uk.gov.justice.hmpps.casenotes.repository.OffenderDeletionRepository
+import java.time.Duration
+import java.time.LocalDateTime
+import java.util.UUID
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Deletes all the case notes of an offender for data compliance.  Rather than removing everything in one transaction,
+ * which for prisoners with long histories holds locks for a long time, notes are deleted a chunk at a time with each
+ * chunk committed separately and the progress recorded against an [OffenderDeletion].
+ */
+@Service
+@Transactional(readOnly = true)
+open class OffenderDeletionService(
+  private val repository: OffenderCaseNoteRepository,
+  private val deletionRepository: OffenderDeletionRepository,
+  transactionManager: PlatformTransactionManager,
+  private val telemetryClient: TelemetryClient,
+  private val meterRegistry: MeterRegistry,
+  @Value("\${offender-deletion.chunk-size:500}") private val chunkSize: Int,
+  @Value("\${offender-deletion.stale-after:PT5M}") private val staleAfter: Duration
+) {
+  companion object {
+    val log: Logger = LoggerFactory.getLogger(this::class.java)
+  }
+
+  private val transactionTemplate = TransactionTemplate(transactionManager)
+
+  data class DeletionRun(val id: Long, val runId: UUID)
+
+  /**
+   * Delete the offender's case notes, returning the number deleted.  Used when handling the data compliance event, so
+   * a failure is rethrown to leave the event to be redelivered, which then resumes the deletion.
+   */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  open fun deleteCaseNotesForOffender(offenderIdentifier: String): Int {
+    val run = startDeletion(offenderIdentifier)
+    if (run == null) {
+      log.info("Deletion of case notes for offender identifier {} is already running", offenderIdentifier)
+      return 0
+    }
+    return runDeletion(run).caseNotesDeleted.toInt()
+  }
+
+  @PreAuthorize("hasAnyRole('DELETE_OFFENDER_CASE_NOTES')")
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  open fun requestDeletion(offenderIdentifier: String): DeletionRun? = startDeletion(offenderIdentifier)
+
+  @PreAuthorize("hasAnyRole('DELETE_OFFENDER_CASE_NOTES')")
+  open fun getDeletion(deletionId: Long): OffenderDeletionStatus =
+    OffenderDeletionStatus(deletionRepository.findById(deletionId).orElseThrow(EntityNotFoundException.withId(deletionId)))
+
+  /**
+   * Resumes an unfinished deletion for the offender if there is one, otherwise starts a new one.  Returns null if the
+   * unfinished deletion is still being actively run elsewhere.  There can only be one unfinished deletion for an
+   * offender, so if a concurrent request starts one first the insert is rejected and that deletion is claimed instead.
+   */
+  private fun startDeletion(offenderIdentifier: String): DeletionRun? {
+    val unfinished = deletionRepository.findFirstByOffenderIdentifierAndStatusNotOrderByCreateDateTimeDesc(offenderIdentifier, COMPLETED)
+    if (unfinished != null) return claimDeletion(unfinished.id)
+
+    val now = LocalDateTime.now()
+    val deletion = try {
+      deletionRepository.save(
+        OffenderDeletion.builder()
+          .offenderIdentifier(offenderIdentifier)
+          .runId(UUID.randomUUID())
+          .startedDateTime(now)
+          .heartbeatDateTime(now)
+          .build()
+      )
+    } catch (e: DataIntegrityViolationException) {
+      val started = deletionRepository.findFirstByOffenderIdentifierAndStatusNotOrderByCreateDateTimeDesc(offenderIdentifier, COMPLETED) ?: throw e
+      return claimDeletion(started.id)
+    }
+    return DeletionRun(deletion.id, deletion.runId)
+  }
+
+  /**
+   * Take over a deletion that has failed, or whose runner has stopped recording progress.
+   */
+  @Transactional
+  open fun claimDeletion(deletionId: Long): DeletionRun? {
+    val runId = UUID.randomUUID()
+    val now = LocalDateTime.now()
+    return if (deletionRepository.claim(deletionId, RUNNING, FAILED, runId, now, now.minus(staleAfter)) == 1) DeletionRun(deletionId, runId) else null
+  }
+
+  open fun findStaleDeletions(): List<Long> =
+    deletionRepository.findByStatusAndHeartbeatDateTimeBefore(RUNNING, LocalDateTime.now().minus(staleAfter)).map { it.id }
+
+  /**
+   * Runs each of the deletions in turn on a single thread, so that a bulk request doesn't swamp the database.
+   */
+  @Async
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  open fun runDeletions(runs: List<DeletionRun>): CompletableFuture<List<OffenderDeletionStatus>> =
+    CompletableFuture.completedFuture(
+      runs.map {
+        try {
+          runDeletion(it)
+        } catch (e: RuntimeException) {
+          getDeletionStatus(it.id)
+        }
+      }
+    )
+
+  /**
+   * Deletes the offender's notes one chunk at a time until a chunk comes back short.  The amendments and notes of each
+   * chunk are deleted and the progress moved on in a single transaction.  If another run has since claimed the deletion
+   * the progress update will not match and this run stops.
+   */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  open fun runDeletion(run: DeletionRun): OffenderDeletionStatus {
+    val deletion = deletionRepository.findById(run.id).orElseThrow(EntityNotFoundException.withId(run.id))
+    val offenderIdentifier = deletion.offenderIdentifier
+    log.info("Deleting case notes for offender identifier {} in deletion {}", offenderIdentifier, run.id)
+    val sample = Timer.start(meterRegistry)
+    try {
+      do {
+        val chunkSample = Timer.start(meterRegistry)
+        val (caseNotes, claimed) = transactionTemplate.execute {
+          val amendments = repository.deleteOffenderCaseNoteAmendmentChunk(offenderIdentifier, chunkSize)
+          val caseNotes = repository.deleteOffenderCaseNoteChunk(offenderIdentifier, chunkSize)
+          caseNotes to (deletionRepository.checkpoint(run.id, run.runId, caseNotes.toLong(), amendments.toLong(), LocalDateTime.now()) == 1)
+        }!!
+        chunkSample.stop(meterRegistry.timer("case_notes.offender_deletion.chunk"))
+        if (!claimed) {
+          log.warn("Deletion {} has been claimed by another run, stopping run {}", run.id, run.runId)
+          return getDeletionStatus(run.id)
+        }
+      } while (caseNotes == chunkSize)
+      deletionRepository.finish(run.id, run.runId, COMPLETED, LocalDateTime.now())
+    } catch (e: RuntimeException) {
+      log.error("Deletion {} of case notes for offender identifier {} failed", run.id, offenderIdentifier, e)
+      deletionRepository.finish(run.id, run.runId, FAILED, LocalDateTime.now())
+      sample.stop(meterRegistry.timer("case_notes.offender_deletion", "outcome", "failed"))
+      throw e
+    }
+    sample.stop(meterRegistry.timer("case_notes.offender_deletion", "outcome", "completed"))
+
+    val status = getDeletionStatus(run.id)
+    meterRegistry.summary("case_notes.offender_deletion.case_notes").record(status.caseNotesDeleted.toDouble())
+    log.info("Deleted {} case notes in {} chunks for offender identifier {}", status.caseNotesDeleted, status.chunks, offenderIdentifier)
+    telemetryClient.trackEvent("OffenderDelete", mapOf("offenderNo" to offenderIdentifier, "count" to status.caseNotesDeleted.toString()), null)
+    return status
+  }
+
+  private fun getDeletionStatus(deletionId: Long) =
+    OffenderDeletionStatus(deletionRepository.findById(deletionId).orElseThrow(EntityNotFoundException.withId(deletionId)))
+}
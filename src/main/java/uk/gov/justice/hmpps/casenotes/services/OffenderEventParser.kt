@@ -0,0 +1,90 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import com.fasterxml.jackson.core.JsonFactory
+import com.fasterxml.jackson.core.JsonParseException
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.core.JsonToken.FIELD_NAME
+import com.fasterxml.jackson.core.JsonToken.START_OBJECT
+import org.springframework.stereotype.Component
+import java.time.Instant
+
+/**
+ * Single pass streaming parser for offender events delivered to SQS wrapped in an SNS notification.  Only the fields
+ * that are needed are read, everything else is skipped without being decoded.  The inner message is kept as a string
+ * until the event type is known and only parsed if the event is one that we handle.
+ */
+@Component
+class OffenderEventParser {
+  companion object {
+    val HANDLED_EVENT_TYPES = setOf("BOOKING_NUMBER-CHANGED", "DATA_COMPLIANCE_DELETE-OFFENDER")
+  }
+
+  private val jsonFactory = JsonFactory()
+
+  fun parse(notification: String): OffenderEvent {
+    var message: String? = null
+    var eventType: String? = null
+    var timestamp: String? = null
+    var messageId: String? = null
+
+    jsonFactory.createParser(notification).use { parser ->
+      parser.expectObject()
+      while (parser.nextToken() == FIELD_NAME) {
+        val field = parser.currentName
+        parser.nextToken()
+        when (field) {
+          "Message" -> message = parser.text
+          "Timestamp" -> timestamp = parser.text
+          "MessageId" -> messageId = parser.text
+          "MessageAttributes" -> eventType = parser.readEventType()
+          else -> parser.skipChildren()
+        }
+      }
+    }
+
+    val type = eventType ?: throw IllegalArgumentException("Notification has no eventType message attribute")
+    val time = timestamp?.let { Instant.parse(it) }
+    if (type !in HANDLED_EVENT_TYPES) return OffenderEvent(type, null, null, time, messageId)
+
+    var offenderIdDisplay: String? = null
+    var bookingId: Long? = null
+    jsonFactory.createParser(message ?: throw IllegalArgumentException("Notification has no Message")).use { parser ->
+      parser.expectObject()
+      while (parser.nextToken() == FIELD_NAME) {
+        val field = parser.currentName
+        parser.nextToken()
+        when (field) {
+          "offenderIdDisplay" -> offenderIdDisplay = parser.valueAsString
+          "bookingId" -> bookingId = parser.valueAsLong
+          else -> parser.skipChildren()
+        }
+      }
+    }
+    return OffenderEvent(type, offenderIdDisplay, bookingId, time, messageId)
+  }
+
+  private fun JsonParser.expectObject() {
+    if (nextToken() != START_OBJECT) throw JsonParseException(this, "Expected a JSON object")
+  }
+
+  /**
+   * Reads the value of the eventType attribute from the MessageAttributes object, leaving the parser at its end
+   */
+  private fun JsonParser.readEventType(): String? {
+    var eventType: String? = null
+    while (nextToken() == FIELD_NAME) {
+      val attribute = currentName
+      nextToken()
+      if (attribute != "eventType") {
+        skipChildren()
+        continue
+      }
+      while (nextToken() == FIELD_NAME) {
+        val field = currentName
+        nextToken()
+        if (field == "Value") eventType = text else skipChildren()
+      }
+    }
+    return eventType
+  }
+}
@@ -0,0 +1,40 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory
+import org.springframework.stereotype.Component
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import javax.annotation.PreDestroy
+
+/**
+ * Runs work on one of a fixed number of single threaded partitions chosen by key, so that work for the same key is
+ * always done in the order it was submitted while work for different keys can run in parallel.
+ */
+@Component
+class PartitionedExecutor(@Value("\${sqs.listener.partitions:4}") partitions: Int) {
+  private val executors: List<ExecutorService> =
+    List(partitions) { Executors.newSingleThreadExecutor(CustomizableThreadFactory("event-partition-$it-")) }
+
+  /**
+   * Run the task on the key's partition and wait for it to finish, rethrowing anything the task threw.
+   */
+  fun <T> execute(key: Any?, task: () -> T): T {
+    try {
+      return submit(key, task).get()
+    } catch (e: ExecutionException) {
+      throw e.cause ?: e
+    }
+  }
+
+  fun <T> submit(key: Any?, task: () -> T): Future<T> =
+    executors[Math.floorMod(key.hashCode(), executors.size)].submit(Callable(task))
+
+  @PreDestroy
+  fun shutdown() {
+    executors.forEach { it.shutdown() }
+  }
+}
@@ -0,0 +1,59 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import io.micrometer.core.instrument.MeterRegistry
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import uk.gov.justice.hmpps.casenotes.model.ProcessedEvent
+import uk.gov.justice.hmpps.casenotes.repository.ProcessedEventRepository
+import java.time.Duration
+import java.time.LocalDateTime
+import java.util.Collections
+
+/**
+ * Records the ids of event messages that have been processed so that messages redelivered by SQS can be skipped.  The
+ * table is shared by all pods, with the most recently seen ids also held in memory so that a redelivery to the same pod
+ * doesn't need a database lookup.  Ids are kept for the retention period, which should be at least as long as the
+ * queue keeps messages.
+ */
+@Component
+class ProcessedEventStore(
+  private val repository: ProcessedEventRepository,
+  private val meterRegistry: MeterRegistry,
+  @Value("\${events.dedupe.cache-size:10000}") private val cacheSize: Int,
+  @Value("\${events.dedupe.retention:P14D}") private val retention: Duration
+) {
+  companion object {
+    private val log = LoggerFactory.getLogger(this::class.java)
+  }
+
+  private val recent: MutableSet<String> = Collections.newSetFromMap(
+    Collections.synchronizedMap(
+      object : LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Boolean>) = size > cacheSize
+      }
+    )
+  )
+
+  fun isProcessed(messageId: String): Boolean {
+    val result = when {
+      messageId in recent -> "cache"
+      repository.existsById(messageId) -> "database".also { recent.add(messageId) }
+      else -> "miss"
+    }
+    meterRegistry.counter("case_notes.events.dedupe.lookups", "result", result).increment()
+    return result != "miss"
+  }
+
+  fun markProcessed(messageId: String, eventType: String) {
+    repository.save(ProcessedEvent(messageId, eventType, LocalDateTime.now()))
+    recent.add(messageId)
+  }
+
+  @Scheduled(fixedDelayString = "\${events.dedupe.purge-interval-ms:3600000}")
+  fun purgeExpired() {
+    val purged = repository.deleteProcessedBefore(LocalDateTime.now().minus(retention))
+    if (purged > 0) log.info("Purged {} processed event ids older than {}", purged, retention)
+  }
+}
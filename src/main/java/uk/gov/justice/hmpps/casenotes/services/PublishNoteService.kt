@@ -1,14 +1,30 @@
 package uk.gov.justice.hmpps.casenotes.services
 
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.data.domain.PageRequest
+import org.springframework.scheduling.TaskScheduler
 import org.springframework.scheduling.annotation.Async
 import org.springframework.security.access.prepost.PreAuthorize
 import org.springframework.stereotype.Service
+import org.springframework.transaction.annotation.Propagation
 import org.springframework.transaction.annotation.Transactional
 import org.springframework.validation.annotation.Validated
 import uk.gov.justice.hmpps.casenotes.dto.CaseNote
+import uk.gov.justice.hmpps.casenotes.dto.PublishNotesJobStatus
+import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNote
+import uk.gov.justice.hmpps.casenotes.model.PublishNotesJob
+import uk.gov.justice.hmpps.casenotes.model.PublishNotesJob.Status.COMPLETED
+import uk.gov.justice.hmpps.casenotes.model.PublishNotesJob.Status.FAILED
+import uk.gov.justice.hmpps.casenotes.model.PublishNotesJob.Status.RUNNING
 import uk.gov.justice.hmpps.casenotes.repository.OffenderCaseNoteRepository
+import uk.gov.justice.hmpps.casenotes.repository.PublishNotesJobRepository
+import java.time.Duration
 import java.time.LocalDateTime
-import java.util.stream.Collectors
+import java.util.UUID
+import java.util.concurrent.CompletableFuture
+import javax.validation.ValidationException
 
 @Suppress("SpringJavaInjectionPointsAutowiringInspection")
 @Service
@@ -16,27 +32,125 @@ import java.util.stream.Collectors
 @Validated
 open class PublishNoteService(
   private val repository: OffenderCaseNoteRepository,
-  private val caseNoteEventPusher: CaseNoteEventPusher
+  private val jobRepository: PublishNotesJobRepository,
+  private val caseNoteEventPusher: CaseNoteEventPusher,
+  @Value("\${publish.chunk-size:1000}") private val chunkSize: Int,
+  @Value("\${publish.job.stale-after:PT5M}") private val staleAfter: Duration,
+  private val taskScheduler: TaskScheduler
 ) {
+  companion object {
+    val log: Logger = LoggerFactory.getLogger(this::class.java)
+  }
+
+  @PreAuthorize("hasAnyRole('PUBLISH_SENSITIVE_CASE_NOTES')")
+  open fun countCaseNotes(fromDateTime: LocalDateTime = LocalDateTime.MIN, toDateTime: LocalDateTime): Long =
+    repository.countByModifyDateTimeBetween(fromDateTime, toDateTime)
 
+  @Transactional
   @PreAuthorize("hasAnyRole('PUBLISH_SENSITIVE_CASE_NOTES')")
-  open fun findCaseNotes(fromDateTime: LocalDateTime = LocalDateTime.MIN, toDateTime: LocalDateTime): List<CaseNote> {
-    return repository.findByModifyDateTimeBetweenOrderByModifyDateTime(fromDateTime, toDateTime).stream().map {
-      CaseNote.builder()
-        .caseNoteId(it.id.toString())
-        .offenderIdentifier(it.offenderIdentifier)
-        .type(it.sensitiveCaseNoteType.parentType.type)
-        .subType(it.sensitiveCaseNoteType.type)
-        .creationDateTime(it.createDateTime)
-        .locationId(it.locationId)
+  open fun createJob(fromDateTime: LocalDateTime, toDateTime: LocalDateTime, totalRows: Long): PublishNotesJob {
+    val now = LocalDateTime.now()
+    return jobRepository.save(
+      PublishNotesJob.builder()
+        .fromDateTime(fromDateTime)
+        .toDateTime(toDateTime)
+        .totalRows(totalRows)
+        .runId(UUID.randomUUID())
+        .startedDateTime(now)
+        .heartbeatDateTime(now)
         .build()
-    }.collect(Collectors.toList<CaseNote>())
+    )
+  }
+
+  @PreAuthorize("hasAnyRole('PUBLISH_SENSITIVE_CASE_NOTES')")
+  open fun getJob(jobId: Long): PublishNotesJobStatus =
+    PublishNotesJobStatus(jobRepository.findById(jobId).orElseThrow(EntityNotFoundException.withId(jobId)))
+
+  /**
+   * Take over a job that has failed, or whose runner has stopped recording progress.  Returns the new run id, or null
+   * if the job is completed or still being actively run elsewhere.
+   */
+  @Transactional
+  open fun claimJob(jobId: Long): UUID? {
+    val runId = UUID.randomUUID()
+    val now = LocalDateTime.now()
+    return if (jobRepository.claim(jobId, RUNNING, FAILED, runId, now, now.minus(staleAfter)) == 1) runId else null
+  }
+
+  @Transactional
+  @PreAuthorize("hasAnyRole('PUBLISH_SENSITIVE_CASE_NOTES')")
+  open fun resumeJob(jobId: Long): UUID {
+    jobRepository.findById(jobId).orElseThrow(EntityNotFoundException.withId(jobId))
+    return claimJob(jobId) ?: throw ValidationException("Publish notes job $jobId is either completed or still running")
   }
 
+  open fun findStaleJobs(): List<Long> =
+    jobRepository.findByStatusAndHeartbeatDateTimeBefore(RUNNING, LocalDateTime.now().minus(staleAfter)).map { it.id }
+
+  /**
+   * Walks the case notes in the job's window in (modifyDateTime, id) order, one chunk at a time, starting after the
+   * job's checkpoint.  Each chunk is loaded in its own short read transaction and fully published before the
+   * checkpoint is moved on and the next chunk is fetched.  If another run has since claimed the job the checkpoint
+   * update will not match and this run stops.  The heartbeat is recorded on a schedule of its own while the run is
+   * going, so that a slow chunk doesn't make the job look stale and get taken over part way through.
+   */
   @Async
-  open fun pushCaseNotes(caseNotes: List<CaseNote>) {
-    caseNotes.forEach {
-      caseNoteEventPusher.sendEvent(it)
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  open fun runJob(jobId: Long, runId: UUID): CompletableFuture<PublishNotesJobStatus> {
+    val job = jobRepository.findById(jobId).orElseThrow(EntityNotFoundException.withId(jobId))
+    log.info("Running publish notes job {} from checkpoint {} {}", jobId, job.checkpointModifyDateTime, job.checkpointCaseNoteId)
+    val heartbeat = taskScheduler.scheduleAtFixedRate({ heartbeat(jobId, runId) }, staleAfter.dividedBy(5))
+    try {
+      val page = PageRequest.of(0, chunkSize)
+      var chunk = if (job.checkpointCaseNoteId == null)
+        repository.findByModifyDateTimeBetweenOrderByModifyDateTimeAscIdAsc(job.fromDateTime, job.toDateTime, page)
+      else
+        repository.findByModifyDateTimeAndIdAfter(job.checkpointModifyDateTime, job.checkpointCaseNoteId, job.toDateTime, page)
+
+      while (chunk.isNotEmpty()) {
+        val result = caseNoteEventPusher.sendEvents(chunk.map { toCaseNote(it) })
+        val last = chunk.last()
+        val updated = jobRepository.checkpoint(
+          jobId, runId, last.modifyDateTime, last.id, chunk.size.toLong(), result.published.toLong(), result.failed.toLong(), LocalDateTime.now()
+        )
+        if (updated == 0) {
+          log.warn("Publish notes job {} has been claimed by another run, stopping run {}", jobId, runId)
+          return CompletableFuture.completedFuture(getJobStatus(jobId))
+        }
+        if (chunk.size < chunkSize) break
+
+        chunk = repository.findByModifyDateTimeAndIdAfter(last.modifyDateTime, last.id, job.toDateTime, page)
+      }
+      jobRepository.finish(jobId, runId, COMPLETED, LocalDateTime.now())
+    } catch (e: RuntimeException) {
+      log.error("Publish notes job {} failed", jobId, e)
+      jobRepository.finish(jobId, runId, FAILED, LocalDateTime.now())
+    } finally {
+      heartbeat.cancel(false)
     }
+    val status = getJobStatus(jobId)
+    log.info("Publish notes job {} finished with status {}, {} published and {} failed", jobId, status.status, status.published, status.failed)
+    return CompletableFuture.completedFuture(status)
   }
+
+  private fun heartbeat(jobId: Long, runId: UUID) {
+    try {
+      jobRepository.heartbeat(jobId, runId, LocalDateTime.now(), RUNNING)
+    } catch (e: RuntimeException) {
+      // caught so that the schedule carries on, as a missed heartbeat or two is harmless
+      log.warn("Unable to record heartbeat of publish notes job {}", jobId, e)
+    }
+  }
+
+  private fun getJobStatus(jobId: Long) = PublishNotesJobStatus(jobRepository.findById(jobId).orElseThrow(EntityNotFoundException.withId(jobId)))
+
+  private fun toCaseNote(cn: OffenderCaseNote): CaseNote =
+    CaseNote.builder()
+      .caseNoteId(cn.id.toString())
+      .offenderIdentifier(cn.offenderIdentifier)
+      .type(cn.sensitiveCaseNoteType.parentType.type)
+      .subType(cn.sensitiveCaseNoteType.type)
+      .creationDateTime(cn.createDateTime)
+      .locationId(cn.locationId)
+      .build()
 }
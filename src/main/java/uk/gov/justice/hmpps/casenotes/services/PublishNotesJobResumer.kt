@@ -0,0 +1,26 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import org.slf4j.LoggerFactory
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+
+/**
+ * Picks up publish notes jobs that were left running by a pod that has since gone away.  Every pod polls, but only
+ * one will succeed in claiming each job.
+ */
+@Component
+class PublishNotesJobResumer(private val publishNoteService: PublishNoteService) {
+  companion object {
+    private val log = LoggerFactory.getLogger(this::class.java)
+  }
+
+  @Scheduled(fixedDelayString = "\${publish.job.resume-interval-ms:60000}", initialDelayString = "\${publish.job.resume-interval-ms:60000}")
+  fun resumeStaleJobs() {
+    publishNoteService.findStaleJobs().forEach { jobId ->
+      publishNoteService.claimJob(jobId)?.run {
+        log.info("Resuming stale publish notes job {} with run {}", jobId, this)
+        publishNoteService.runJob(jobId, this)
+      }
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.TransactionDefinition
+import org.springframework.transaction.event.TransactionalEventListener
+import org.springframework.transaction.support.TransactionTemplate
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteType
+import uk.gov.justice.hmpps.casenotes.model.ParentNoteType
+import uk.gov.justice.hmpps.casenotes.repository.ParentCaseNoteTypeRepository
+import java.util.Collections
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Published by [CaseNoteService] whenever a sensitive case note type is created or updated, so that the index is
+ * reloaded once the transaction has committed.
+ */
+data class CaseNoteTypesChanged(val parentType: String)
+
+/**
+ * Holds the sensitive case note types in memory.  There are only a few dozen of them and they are read on every
+ * sensitive case note write and every types request, but only change through the reference data maintenance endpoints.
+ * The types are loaded into an immutable snapshot which is replaced as a whole, after a change on this instance has
+ * committed and periodically to pick up changes made on other instances.
+ */
+@Component
+class SensitiveCaseNoteTypeIndex(
+  private val parentCaseNoteTypeRepository: ParentCaseNoteTypeRepository,
+  transactionManager: PlatformTransactionManager
+) {
+  companion object {
+    val log: Logger = LoggerFactory.getLogger(this::class.java)
+  }
+
+  // runs after the commit of a change, so needs its own transaction rather than joining the one that has completed
+  private val transactionTemplate = TransactionTemplate(transactionManager).apply {
+    propagationBehavior = TransactionDefinition.PROPAGATION_REQUIRES_NEW
+    isReadOnly = true
+  }
+  private val snapshot = AtomicReference<Snapshot>()
+
+  /**
+   * The sensitive sub type with the given parent type and sub type codes, or null if it isn't a sensitive type
+   */
+  fun findSubType(parentType: String?, subType: String?): SubType? = currentSnapshot().subTypes[parentType to subType]
+
+  /**
+   * All of the sensitive case note types, or only the active ones.  The same list is returned until the types are
+   * reloaded, which lets [CaseNoteTypeMerger] reuse its merged results.  The types are the snapshot's own rather than
+   * copies, so must not be changed or handed out - the merger only reads them and gives its callers its own types.
+   */
+  fun getCaseNoteTypes(allTypes: Boolean): List<CaseNoteType> =
+    if (allTypes) currentSnapshot().allTypes else currentSnapshot().activeTypes
+
+  @TransactionalEventListener
+  fun onChange(change: CaseNoteTypesChanged) {
+    log.debug("Case note type {} changed, reloading sensitive case note types", change.parentType)
+    reload()
+  }
+
+  @Scheduled(fixedDelayString = "\${case-note-types.refresh-interval-ms:60000}")
+  fun refresh() {
+    reload()
+  }
+
+  /**
+   * Loads a new snapshot.  Synchronised so that a slower, earlier load can't replace the result of a later one.
+   */
+  @Synchronized
+  fun reload(): Snapshot {
+    val loaded = transactionTemplate.execute { Snapshot(parentCaseNoteTypeRepository.findAllWithSubTypes()) }!!
+    snapshot.set(loaded)
+    return loaded
+  }
+
+  private fun currentSnapshot(): Snapshot = snapshot.get() ?: reload()
+
+  data class SubType(val id: Long, val parentType: String, val type: String, val isParentActive: Boolean, val isActive: Boolean)
+
+  class Snapshot(parentTypes: List<ParentNoteType>) {
+    internal val subTypes: Map<Pair<String, String>, SubType> = parentTypes
+      .flatMap { parent -> parent.subTypes.map { SubType(it.id, parent.type, it.type, parent.isActive, it.isActive) } }
+      .associateBy { it.parentType to it.type }
+    internal val allTypes: List<CaseNoteType> = Collections.unmodifiableList(parentTypes.map { CaseNoteService.transform(it, true) })
+    internal val activeTypes: List<CaseNoteType> = Collections.unmodifiableList(parentTypes.filter { it.isActive }.map { CaseNoteService.transform(it, false) })
+  }
+}
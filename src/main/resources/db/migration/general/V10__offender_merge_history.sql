@@ -0,0 +1,15 @@
+DROP TABLE IF EXISTS OFFENDER_MERGE_HISTORY;
+
+CREATE TABLE OFFENDER_MERGE_HISTORY
+(
+    OFFENDER_MERGE_HISTORY_ID SERIAL PRIMARY KEY,
+    BOOKING_ID                BIGINT       NOT NULL,
+    OFFENDER_IDENTIFIER       VARCHAR(12)  NOT NULL,
+    MERGED_IDENTIFIERS        VARCHAR(500) NOT NULL,
+    ROWS_MERGED               INTEGER      NOT NULL,
+    CREATE_DATE_TIME          TIMESTAMP    NOT NULL
+);
+
+COMMENT ON TABLE OFFENDER_MERGE_HISTORY IS 'Records case notes being moved to an offender identifier when offender records are merged';
+
+CREATE INDEX OFFENDER_MERGE_HISTORY_IDX1 ON OFFENDER_MERGE_HISTORY (OFFENDER_IDENTIFIER);
@@ -0,0 +1,21 @@
+DROP TABLE IF EXISTS OFFENDER_DELETION;
+
+CREATE TABLE OFFENDER_DELETION
+(
+    OFFENDER_DELETION_ID SERIAL PRIMARY KEY,
+    OFFENDER_IDENTIFIER  VARCHAR(12) NOT NULL,
+    STATUS               VARCHAR(12) NOT NULL,
+    RUN_ID               UUID,
+    CASE_NOTES_DELETED   BIGINT      NOT NULL DEFAULT 0,
+    AMENDMENTS_DELETED   BIGINT      NOT NULL DEFAULT 0,
+    CHUNKS               INT         NOT NULL DEFAULT 0,
+    STARTED_DATE_TIME    TIMESTAMP,
+    HEARTBEAT_DATE_TIME  TIMESTAMP,
+    COMPLETED_DATE_TIME  TIMESTAMP,
+    CREATE_DATE_TIME     TIMESTAMP   NOT NULL
+);
+
+COMMENT ON TABLE OFFENDER_DELETION IS 'Records the progress of deleting all case notes for an offender, so that an interrupted deletion can be resumed';
+
+CREATE INDEX OFFENDER_DELETION_IDX1 ON OFFENDER_DELETION (OFFENDER_IDENTIFIER, STATUS);
+CREATE INDEX OFFENDER_DELETION_IDX2 ON OFFENDER_DELETION (STATUS, HEARTBEAT_DATE_TIME);
@@ -0,0 +1,12 @@
+DROP TABLE IF EXISTS PROCESSED_EVENT;
+
+CREATE TABLE PROCESSED_EVENT
+(
+    MESSAGE_ID          VARCHAR(100) NOT NULL PRIMARY KEY,
+    EVENT_TYPE          VARCHAR(100) NOT NULL,
+    PROCESSED_DATE_TIME TIMESTAMP    NOT NULL
+);
+
+COMMENT ON TABLE PROCESSED_EVENT IS 'Ids of offender event messages that have been processed, so that redelivered messages can be skipped';
+
+CREATE INDEX PROCESSED_EVENT_IDX1 ON PROCESSED_EVENT (PROCESSED_DATE_TIME);
@@ -0,0 +1 @@
+ALTER TABLE PUBLISH_NOTES_JOB ADD COLUMN RUN_ROWS_SCANNED BIGINT NOT NULL DEFAULT 0;
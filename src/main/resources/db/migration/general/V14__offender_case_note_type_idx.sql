@@ -0,0 +1,3 @@
+DROP INDEX IF EXISTS OFFENDER_CASE_NOTE_IDX4;
+
+CREATE INDEX OFFENDER_CASE_NOTE_IDX4 ON OFFENDER_CASE_NOTE (CASE_NOTE_TYPE_ID);
@@ -0,0 +1,14 @@
+DROP TABLE IF EXISTS CASE_NOTE_CHANGE;
+
+CREATE TABLE CASE_NOTE_CHANGE
+(
+    CASE_NOTE_CHANGE_ID   BIGSERIAL PRIMARY KEY,
+    OFFENDER_CASE_NOTE_ID UUID        NOT NULL,
+    CHANGE_TYPE           VARCHAR(12) NOT NULL,
+    CHANGE_DATE_TIME      TIMESTAMP   NOT NULL,
+    FOREIGN KEY (OFFENDER_CASE_NOTE_ID) REFERENCES OFFENDER_CASE_NOTE (OFFENDER_CASE_NOTE_ID) ON DELETE CASCADE
+);
+
+COMMENT ON TABLE CASE_NOTE_CHANGE IS 'Each creation, amendment and deletion of a sensitive case note, in id order, so that the change stream can be replayed';
+
+CREATE INDEX CASE_NOTE_CHANGE_IDX1 ON CASE_NOTE_CHANGE (OFFENDER_CASE_NOTE_ID);
@@ -0,0 +1,3 @@
+DROP INDEX IF EXISTS OFFENDER_CASE_NOTE_IDX6;
+
+CREATE INDEX OFFENDER_CASE_NOTE_IDX6 ON OFFENDER_CASE_NOTE (MODIFY_DATE_TIME, OFFENDER_CASE_NOTE_ID);
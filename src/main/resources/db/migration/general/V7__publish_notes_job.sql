@@ -0,0 +1,25 @@
+DROP TABLE IF EXISTS PUBLISH_NOTES_JOB;
+
+CREATE TABLE PUBLISH_NOTES_JOB
+(
+    PUBLISH_NOTES_JOB_ID        SERIAL PRIMARY KEY,
+    FROM_DATE_TIME              TIMESTAMP   NOT NULL,
+    TO_DATE_TIME                TIMESTAMP   NOT NULL,
+    STATUS                      VARCHAR(12) NOT NULL,
+    RUN_ID                      UUID,
+    TOTAL_ROWS                  BIGINT      NOT NULL DEFAULT 0,
+    ROWS_SCANNED                BIGINT      NOT NULL DEFAULT 0,
+    PUBLISHED                   BIGINT      NOT NULL DEFAULT 0,
+    FAILED                      BIGINT      NOT NULL DEFAULT 0,
+    CHECKPOINT_MODIFY_DATE_TIME TIMESTAMP,
+    CHECKPOINT_CASE_NOTE_ID     UUID,
+    STARTED_DATE_TIME           TIMESTAMP,
+    HEARTBEAT_DATE_TIME         TIMESTAMP,
+    COMPLETED_DATE_TIME         TIMESTAMP,
+    CREATE_DATE_TIME            TIMESTAMP   NOT NULL,
+    CREATE_USER_ID              VARCHAR(32) NOT NULL
+);
+
+COMMENT ON TABLE PUBLISH_NOTES_JOB IS 'Records runs of the publish notes job and how far through they have got';
+
+CREATE INDEX PUBLISH_NOTES_JOB_IDX1 ON PUBLISH_NOTES_JOB (STATUS, HEARTBEAT_DATE_TIME);
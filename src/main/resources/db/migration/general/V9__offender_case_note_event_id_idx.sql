@@ -0,0 +1 @@
+CREATE INDEX OFFENDER_CASE_NOTE_IDX7 ON OFFENDER_CASE_NOTE (EVENT_ID);
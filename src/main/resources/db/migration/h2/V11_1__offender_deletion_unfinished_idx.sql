@@ -0,0 +1,5 @@
+-- At most one unfinished deletion per offender, so that concurrent requests can't both start one.  H2 has no partial
+-- indexes, so the unique index is on a computed column that is only set while the deletion is unfinished.
+ALTER TABLE OFFENDER_DELETION ADD COLUMN UNFINISHED_OFFENDER_IDENTIFIER VARCHAR(12) AS (CASE WHEN STATUS <> 'COMPLETED' THEN OFFENDER_IDENTIFIER END);
+
+CREATE UNIQUE INDEX OFFENDER_DELETION_IDX3 ON OFFENDER_DELETION (UNFINISHED_OFFENDER_IDENTIFIER);
@@ -0,0 +1,2 @@
+-- At most one unfinished deletion per offender, so that concurrent requests can't both start one
+CREATE UNIQUE INDEX OFFENDER_DELETION_IDX3 ON OFFENDER_DELETION (OFFENDER_IDENTIFIER) WHERE STATUS <> 'COMPLETED';
@@ -10,9 +10,9 @@ import org.junit.jupiter.api.extension.ExtendWith
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.boot.test.context.ConfigDataApplicationContextInitializer
 import org.springframework.context.annotation.Import
-import org.springframework.http.HttpHeaders
 import org.springframework.mock.web.MockHttpServletRequest
 import org.springframework.mock.web.MockHttpServletResponse
+import org.springframework.security.core.context.SecurityContextHolder
 import org.springframework.test.context.ActiveProfiles
 import org.springframework.test.context.ContextConfiguration
 import org.springframework.test.context.junit.jupiter.SpringExtension
@@ -39,13 +39,13 @@ class ClientTrackingConfigurationTest {
   @AfterEach
   fun tearDown() {
     ThreadContext.remove()
+    SecurityContextHolder.clearContext()
   }
 
   @Test
   fun shouldAddClientIdAndUserNameToInsightTelemetry() {
-    val token = jwtAuthHelper.createJwt("bob")
+    authenticate(jwtAuthHelper.createJwt("bob"))
     val req = MockHttpServletRequest()
-    req.addHeader(HttpHeaders.AUTHORIZATION, "Bearer $token")
     val res = MockHttpServletResponse()
     clientTrackingInterceptor.preHandle(req, res, "null")
     val insightTelemetry = ThreadContext.getRequestTelemetryContext().httpRequestTelemetry.properties
@@ -56,13 +56,24 @@ class ClientTrackingConfigurationTest {
 
   @Test
   fun shouldAddOnlyClientIdIfUsernameNullToInsightTelemetry() {
-    val token = jwtAuthHelper.createJwt(null)
+    // a client credentials token, whose subject is the client rather than a user
+    authenticate(jwtAuthHelper.createJwt("elite2apiclient", userName = null))
     val req = MockHttpServletRequest()
-    req.addHeader(HttpHeaders.AUTHORIZATION, "Bearer $token")
     val res = MockHttpServletResponse()
     clientTrackingInterceptor.preHandle(req, res, "null")
     val insightTelemetry = ThreadContext.getRequestTelemetryContext().httpRequestTelemetry.properties
     assertThat(insightTelemetry).hasSize(1)
     assertThat(insightTelemetry["clientId"]).isEqualTo("elite2apiclient")
   }
+
+  @Test
+  fun shouldAddNothingIfNotAuthenticated() {
+    clientTrackingInterceptor.preHandle(MockHttpServletRequest(), MockHttpServletResponse(), "null")
+    val insightTelemetry = ThreadContext.getRequestTelemetryContext().httpRequestTelemetry.properties
+    assertThat(insightTelemetry).isEmpty()
+  }
+
+  private fun authenticate(token: String) {
+    SecurityContextHolder.getContext().authentication = AuthAwareTokenConverter().convert(jwtAuthHelper.jwtDecoder().decode(token))
+  }
 }
@@ -0,0 +1,57 @@
+package uk.gov.justice.hmpps.casenotes.config
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import org.springframework.security.authentication.TestingAuthenticationToken
+import org.springframework.security.core.context.SecurityContextHolder
+import uk.gov.justice.hmpps.casenotes.utils.JwtAuthHelper
+
+class SecurityUserContextTest {
+  private val jwtAuthHelper = JwtAuthHelper()
+  private val securityUserContext = SecurityUserContext()
+
+  @AfterEach
+  fun tearDown() {
+    SecurityContextHolder.clearContext()
+  }
+
+  @Test
+  fun `roles are held without their prefix`() {
+    val authentication = authenticate(listOf("ROLE_POM", "ROLE_VIEW_SENSITIVE_CASE_NOTES"))
+
+    assertThat(authentication.roles).containsExactlyInAnyOrder("POM", "VIEW_SENSITIVE_CASE_NOTES")
+    assertThat(authentication.userName).isEqualTo("bob")
+    assertThat(authentication.clientId).isEqualTo("elite2apiclient")
+  }
+
+  @Test
+  fun `override role matches any of the roles`() {
+    authenticate(listOf("ROLE_VIEW_SENSITIVE_CASE_NOTES"))
+
+    assertThat(securityUserContext.isOverrideRole("POM", "VIEW_SENSITIVE_CASE_NOTES")).isTrue
+    assertThat(securityUserContext.isOverrideRole("POM", "ADD_SENSITIVE_CASE_NOTES")).isFalse
+    assertThat(securityUserContext.isOverrideRole()).isFalse
+  }
+
+  @Test
+  fun `override role defaults to system user`() {
+    authenticate(listOf("ROLE_SYSTEM_USER"))
+
+    assertThat(securityUserContext.isOverrideRole()).isTrue
+  }
+
+  @Test
+  fun `override role works with other authentications`() {
+    SecurityContextHolder.getContext().authentication = TestingAuthenticationToken("bob", null, "ROLE_POM")
+
+    assertThat(securityUserContext.isOverrideRole("POM")).isTrue
+    assertThat(securityUserContext.isOverrideRole("ADD_SENSITIVE_CASE_NOTES")).isFalse
+  }
+
+  private fun authenticate(roles: List<String>): AuthAwareAuthenticationToken {
+    val authentication = AuthAwareTokenConverter().convert(jwtAuthHelper.jwtDecoder().decode(jwtAuthHelper.createJwt("bob", roles = roles))) as AuthAwareAuthenticationToken
+    SecurityContextHolder.getContext().authentication = authentication
+    return authentication
+  }
+}
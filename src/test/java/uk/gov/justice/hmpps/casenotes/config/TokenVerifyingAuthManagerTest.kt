@@ -0,0 +1,98 @@
+package uk.gov.justice.hmpps.casenotes.config
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.Test
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpStatus
+import org.springframework.security.oauth2.server.resource.BearerTokenAuthenticationToken
+import org.springframework.security.oauth2.server.resource.InvalidBearerTokenException
+import org.springframework.web.reactive.function.client.ClientResponse
+import org.springframework.web.reactive.function.client.WebClient
+import reactor.core.publisher.Mono
+import uk.gov.justice.hmpps.casenotes.utils.JwtAuthHelper
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+class TokenVerifyingAuthManagerTest {
+  private val jwtAuthHelper = JwtAuthHelper()
+  private val meterRegistry = SimpleMeterRegistry()
+  private val verifyCalls = AtomicInteger()
+  private var active = true
+  private var delay = Duration.ZERO
+
+  private val webClient = WebClient.builder()
+    .exchangeFunction {
+      verifyCalls.incrementAndGet()
+      Mono.delay(delay).map {
+        ClientResponse.create(HttpStatus.OK)
+          .header(HttpHeaders.CONTENT_TYPE, "application/json")
+          .body("""{"active": $active}""")
+          .build()
+      }
+    }
+    .build()
+
+  private val authManager = TokenVerifyingAuthManager(jwtAuthHelper.jwtDecoder(), webClient, meterRegistry, true, Duration.ofMinutes(1), 100)
+
+  @Test
+  fun `verifies a token once`() {
+    val token = jwtAuthHelper.createJwt("bob")
+
+    authManager.authenticate(BearerTokenAuthenticationToken(token))
+    val authentication = authManager.authenticate(BearerTokenAuthenticationToken(token))
+
+    assertThat(authentication.name).isEqualTo("bob")
+    assertThat(verifyCalls.get()).isEqualTo(1)
+    assertThat(meterRegistry.get("case_notes.token_verification").tag("result", "cache").counter().count()).isEqualTo(1.0)
+  }
+
+  @Test
+  fun `remembers that a token is not active`() {
+    active = false
+    val token = jwtAuthHelper.createJwt("bob")
+
+    repeat(2) {
+      assertThatThrownBy { authManager.authenticate(BearerTokenAuthenticationToken(token)) }.isInstanceOf(InvalidBearerTokenException::class.java)
+    }
+    assertThat(verifyCalls.get()).isEqualTo(1)
+  }
+
+  @Test
+  fun `verifies different tokens separately`() {
+    authManager.authenticate(BearerTokenAuthenticationToken(jwtAuthHelper.createJwt("bob")))
+    authManager.authenticate(BearerTokenAuthenticationToken(jwtAuthHelper.createJwt("bob")))
+
+    assertThat(verifyCalls.get()).isEqualTo(2)
+  }
+
+  @Test
+  fun `does not keep a verification beyond the token expiry`() {
+    // still accepted by the decoder as it allows for clock skew
+    val token = jwtAuthHelper.createJwt("bob", expiryTime = Duration.ofSeconds(-10))
+
+    authManager.authenticate(BearerTokenAuthenticationToken(token))
+    authManager.authenticate(BearerTokenAuthenticationToken(token))
+
+    assertThat(verifyCalls.get()).isEqualTo(2)
+  }
+
+  @Test
+  fun `concurrent requests with the same token share a verification`() {
+    delay = Duration.ofMillis(300)
+    val token = jwtAuthHelper.createJwt("bob")
+    val executor = Executors.newFixedThreadPool(4)
+
+    try {
+      val results = executor.invokeAll((1..4).map { Callable { authManager.authenticate(BearerTokenAuthenticationToken(token)) } })
+
+      assertThat(results.map { it.get().name }).containsOnly("bob")
+      assertThat(verifyCalls.get()).isEqualTo(1)
+    } finally {
+      executor.shutdown()
+    }
+  }
+}
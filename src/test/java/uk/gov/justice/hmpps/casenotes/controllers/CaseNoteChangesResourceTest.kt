@@ -0,0 +1,225 @@
+package uk.gov.justice.hmpps.casenotes.controllers
+
+import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.core.ParameterizedTypeReference
+import org.springframework.http.MediaType.TEXT_EVENT_STREAM
+import org.springframework.http.codec.ServerSentEvent
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.test.context.TestPropertySource
+import uk.gov.justice.hmpps.casenotes.dto.CaseNote
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteChangeEvent
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteChangeEvent.ChangeType.AMENDED
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteChangeEvent.ChangeType.CREATED
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteChanges
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteResyncEvent
+import uk.gov.justice.hmpps.casenotes.health.wiremock.Elite2Extension.Companion.elite2Api
+import uk.gov.justice.hmpps.casenotes.health.wiremock.OAuthExtension.Companion.oAuthApi
+import java.time.Duration
+import java.time.LocalDateTime
+import java.util.UUID
+
+// replay a single missed note, so that a reconnect after two more has to resync, and page up to the notes just created
+@TestPropertySource(properties = ["case-note-stream.replay-limit=1", "case-note-changes.safety-lag=PT0S"])
+class CaseNoteChangesResourceTest : ResourceTest() {
+  @Autowired
+  private lateinit var jdbcTemplate: JdbcTemplate
+
+  @Test
+  fun testCanPageThroughChanges() {
+    val from = LocalDateTime.now()
+    val first = createCaseNote("First change")
+    val second = createCaseNote("Second change")
+
+    val firstPage = getChanges("/case-note-changes?fromDateTime={from}&size=1", from)
+    assertThat(firstPage.changes).extracting<String> { it.caseNoteId }.containsExactly(first)
+
+    val secondPage = getChanges("/case-note-changes?cursor={cursor}&size=1", firstPage.nextCursor)
+    assertThat(secondPage.changes).extracting<String> { it.caseNoteId }.containsExactly(second)
+
+    val lastPage = getChanges("/case-note-changes?cursor={cursor}&size=1", secondPage.nextCursor)
+    assertThat(lastPage.changes).isEmpty()
+    assertThat(lastPage.nextCursor).isEqualTo(secondPage.nextCursor)
+  }
+
+  @Test
+  fun testAmendedCaseNoteMovesToEndOfFeed() {
+    val from = LocalDateTime.now()
+    val first = createCaseNote("First change")
+    val second = createCaseNote("Second change")
+
+    webTestClient.put().uri("/case-notes/{offenderIdentifier}/{caseNoteId}", "A1234AD", first)
+      .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", CASENOTES_ROLES))
+      .bodyValue("""{ "text": "Amended case note" }""")
+      .exchange()
+      .expectStatus().isOk
+
+    val changes = getChanges("/case-note-changes?fromDateTime={from}", from)
+    assertThat(changes.changes).extracting<String> { it.caseNoteId }.containsExactly(second, first)
+    assertThat(changes.changes.last().amendments).extracting<String> { it.additionalNoteText }.containsExactly("Amended case note")
+  }
+
+  @Test
+  fun testCanFilterChangesByType() {
+    val from = LocalDateTime.now()
+    val caseNoteId = createCaseNote("Filtered change")
+
+    assertThat(getChanges("/case-note-changes?fromDateTime={from}&type=POM", from).changes)
+      .extracting<String> { it.caseNoteId }.containsExactly(caseNoteId)
+    assertThat(getChanges("/case-note-changes?fromDateTime={from}&type=OTHER", from).changes).isEmpty()
+  }
+
+  @Test
+  fun testInvalidCursor() {
+    webTestClient.get().uri("/case-note-changes?cursor={cursor}", "not-a-cursor")
+      .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", CASENOTES_ROLES))
+      .exchange()
+      .expectStatus().isBadRequest
+  }
+
+  @Test
+  fun testChangesAccessDenied() {
+    webTestClient.get().uri("/case-note-changes")
+      .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", listOf("ROLE_POM")))
+      .exchange()
+      .expectStatus().isForbidden
+  }
+
+  @Test
+  fun testStreamReceivesNewCaseNotes() {
+    val stream = streamChanges("/case-note-changes/stream?locationId={locationId}", "SSE1")
+
+    val caseNoteId = createCaseNote("Streamed change", "SSE1")
+
+    val event = stream.blockFirst(Duration.ofSeconds(10))!!
+    assertThat(event.event()).isEqualTo("created")
+    assertThat(event.data()!!.changeType).isEqualTo(CREATED)
+    assertThat(event.data()!!.caseNoteId).isEqualTo(caseNoteId)
+    assertThat(event.id()).isEqualTo(event.data()!!.changeId.toString())
+    assertThat(event.data()!!.changeId).isEqualTo(lastChangeId(caseNoteId))
+  }
+
+  @Test
+  fun testStreamReplaysFromLastEventId() {
+    val first = createCaseNote("First change", "SSE2")
+    val second = createCaseNote("Second change", "SSE2")
+
+    val stream = streamChanges("/case-note-changes/stream?locationId={locationId}", "SSE2", lastEventId = lastChangeId(first))
+
+    assertThat(stream.blockFirst(Duration.ofSeconds(10))!!.data()!!.caseNoteId).isEqualTo(second)
+  }
+
+  @Test
+  fun testStreamReplaysAmendedNotesAsAmended() {
+    val caseNoteId = createCaseNote("First change", "SSE3")
+    val lastSeen = lastChangeId(caseNoteId)
+    amendCaseNote(caseNoteId)
+
+    val stream = streamChanges("/case-note-changes/stream?locationId={locationId}", "SSE3", lastEventId = lastSeen)
+
+    val event = stream.blockFirst(Duration.ofSeconds(10))!!
+    assertThat(event.event()).isEqualTo("amended")
+    assertThat(event.data()!!.changeType).isEqualTo(AMENDED)
+    assertThat(event.data()!!.caseNoteId).isEqualTo(caseNoteId)
+  }
+
+  @Test
+  fun testStreamReplaysAmendmentOfOlderNote() {
+    val older = createCaseNote("Older change", "SSE5")
+    val newer = createCaseNote("Newer change", "SSE5")
+    val lastSeen = lastChangeId(newer)
+    // amended while the subscriber was disconnected, after a note it has already seen
+    amendCaseNote(older)
+
+    val stream = streamChanges("/case-note-changes/stream?locationId={locationId}", "SSE5", lastEventId = lastSeen)
+
+    val event = stream.blockFirst(Duration.ofSeconds(10))!!
+    assertThat(event.event()).isEqualTo("amended")
+    assertThat(event.data()!!.caseNoteId).isEqualTo(older)
+    assertThat(event.id()!!.toLong()).isGreaterThan(lastSeen)
+  }
+
+  @Test
+  fun testStreamResyncsWhenTooManyMissed() {
+    val first = createCaseNote("First change", "SSE4")
+    val second = createCaseNote("Second change", "SSE4")
+    val third = createCaseNote("Third change", "SSE4")
+
+    val events = webTestClient.get().uri("/case-note-changes/stream?locationId={locationId}", "SSE4")
+      .headers {
+        it.setBearerAuth(jwtHelper.createJwt("SECURE_CASENOTE_USER", roles = CASENOTES_ROLES))
+        it.add("Last-Event-ID", lastChangeId(first).toString())
+      }
+      .accept(TEXT_EVENT_STREAM)
+      .exchange()
+      .expectStatus().isOk
+      .returnResult(object : ParameterizedTypeReference<ServerSentEvent<String>>() {})
+      .responseBody.collectList().block(Duration.ofSeconds(10))!!
+
+    assertThat(events).extracting<String> { it.event() }.containsExactly("created", "resync")
+    assertThat(events[0].data()).contains(second)
+    val resync = jacksonObjectMapper().readValue(events[1].data(), CaseNoteResyncEvent::class.java)
+    assertThat(getChanges("/case-note-changes?cursor={cursor}", resync.cursor).changes).extracting<String> { it.caseNoteId }.contains(third)
+  }
+
+  @Test
+  fun testStreamAccessDenied() {
+    webTestClient.get().uri("/case-note-changes/stream")
+      .headers { it.setBearerAuth(jwtHelper.createJwt("SECURE_CASENOTE_USER", roles = listOf("ROLE_POM"))) }
+      .accept(TEXT_EVENT_STREAM)
+      .exchange()
+      .expectStatus().isForbidden
+  }
+
+  private fun streamChanges(uri: String, vararg uriVariables: Any, lastEventId: Long? = null) =
+    webTestClient.get().uri(uri, *uriVariables)
+      .headers {
+        it.setBearerAuth(jwtHelper.createJwt("SECURE_CASENOTE_USER", roles = CASENOTES_ROLES))
+        lastEventId?.run { it.add("Last-Event-ID", lastEventId.toString()) }
+      }
+      .accept(TEXT_EVENT_STREAM)
+      .exchange()
+      .expectStatus().isOk
+      .returnResult(object : ParameterizedTypeReference<ServerSentEvent<CaseNoteChangeEvent>>() {})
+      .responseBody
+
+  private fun lastChangeId(caseNoteId: String): Long =
+    jdbcTemplate.queryForObject(
+      "SELECT MAX(case_note_change_id) FROM case_note_change WHERE offender_case_note_id = ?", Long::class.java, UUID.fromString(caseNoteId)
+    )!!
+
+  private fun amendCaseNote(caseNoteId: String) {
+    webTestClient.put().uri("/case-notes/{offenderIdentifier}/{caseNoteId}", "A1234AD", caseNoteId)
+      .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", CASENOTES_ROLES))
+      .bodyValue("""{ "text": "Amended case note" }""")
+      .exchange()
+      .expectStatus().isOk
+  }
+
+  private fun createCaseNote(text: String, locationId: String? = null): String {
+    oAuthApi.subGetUserDetails("SECURE_CASENOTE_USER")
+    elite2Api.subGetOffender("A1234AD")
+    val location = locationId?.let { """"locationId": "$it", """ } ?: ""
+    return webTestClient.post().uri("/case-notes/{offenderIdentifier}", "A1234AD")
+      .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", CASENOTES_ROLES))
+      .bodyValue("""{$location"type": "POM", "subType": "GEN", "text": "$text"}""")
+      .exchange()
+      .expectStatus().isCreated
+      .returnResult(CaseNote::class.java)
+      .responseBody.blockFirst()!!.caseNoteId
+  }
+
+  private fun getChanges(uri: String, vararg uriVariables: Any): CaseNoteChanges =
+    webTestClient.get().uri(uri, *uriVariables)
+      .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", CASENOTES_ROLES))
+      .exchange()
+      .expectStatus().isOk
+      .returnResult(CaseNoteChanges::class.java)
+      .responseBody.blockFirst()!!
+
+  companion object {
+    private val CASENOTES_ROLES = listOf("ROLE_VIEW_SENSITIVE_CASE_NOTES", "ROLE_ADD_SENSITIVE_CASE_NOTES")
+  }
+}
@@ -0,0 +1,100 @@
+package uk.gov.justice.hmpps.casenotes.controllers
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.Test
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.dao.DataIntegrityViolationException
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource
+import uk.gov.justice.hmpps.casenotes.model.OffenderDeletion
+import uk.gov.justice.hmpps.casenotes.model.OffenderDeletion.Status.COMPLETED
+import uk.gov.justice.hmpps.casenotes.model.OffenderDeletion.Status.RUNNING
+import uk.gov.justice.hmpps.casenotes.repository.OffenderDeletionRepository
+import uk.gov.justice.hmpps.casenotes.services.OffenderDeletionService
+import java.time.LocalDateTime
+import java.util.UUID
+
+class OffenderDeletionResourceTest : ResourceTest() {
+  @Autowired
+  private lateinit var offenderDeletionService: OffenderDeletionService
+
+  @Autowired
+  private lateinit var deletionRepository: OffenderDeletionRepository
+
+  @Test
+  fun testDeleteOffenders() {
+    val deletionId = webTestClient.post().uri("/offender-deletions")
+      .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", DELETE_ROLE))
+      .bodyValue(listOf("A9999AA", "A9999AA"))
+      .exchange()
+      .expectStatus().isOk
+      .expectBody()
+      .jsonPath("$.length()").isEqualTo(1)
+      .jsonPath("[0].offenderIdentifier").isEqualTo("A9999AA")
+      .returnResult().responseBody!!.let { String(it) }
+      .substringAfter("\"id\":").substringBefore(",")
+
+    webTestClient.get().uri("/offender-deletions/{deletionId}", deletionId)
+      .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", DELETE_ROLE))
+      .exchange()
+      .expectStatus().isOk
+      .expectBody()
+      .jsonPath("offenderIdentifier").isEqualTo("A9999AA")
+  }
+
+  @Test
+  fun testDeleteOffenders_NoOffenders() {
+    webTestClient.post().uri("/offender-deletions")
+      .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", DELETE_ROLE))
+      .bodyValue(listOf<String>())
+      .exchange()
+      .expectStatus().isBadRequest
+  }
+
+  @Test
+  fun testDeleteOffenders_AccessDenied() {
+    webTestClient.post().uri("/offender-deletions")
+      .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", CASENOTES_ROLES))
+      .bodyValue(listOf("A9999AB"))
+      .exchange()
+      .expectStatus().isForbidden
+  }
+
+  @Test
+  fun testDeletionNotFound() {
+    webTestClient.get().uri("/offender-deletions/-1")
+      .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", DELETE_ROLE))
+      .exchange()
+      .expectStatus().isNotFound
+  }
+
+  @Test
+  fun testClaimStaleDeletionIsCommitted() {
+    val stale = deletionRepository.save(deletion("A9999AC", RUNNING, LocalDateTime.now().minusHours(1)))
+
+    val run = offenderDeletionService.claimDeletion(stale.id)
+
+    assertThat(run).isNotNull
+    assertThat(deletionRepository.findById(stale.id).orElseThrow().runId).isEqualTo(run!!.runId)
+    // H2 doesn't reject updates in read only transactions, unlike postgres, so check the claim isn't run in one
+    val claimDeletion = OffenderDeletionService::class.java.getMethod("claimDeletion", Long::class.java)
+    assertThat(AnnotationTransactionAttributeSource().getTransactionAttribute(claimDeletion, OffenderDeletionService::class.java)!!.isReadOnly).isFalse
+  }
+
+  @Test
+  fun testOnlyOneUnfinishedDeletionPerOffender() {
+    deletionRepository.save(deletion("A9999AD", COMPLETED))
+    deletionRepository.save(deletion("A9999AD", RUNNING))
+
+    assertThatThrownBy { deletionRepository.save(deletion("A9999AD", RUNNING)) }.isInstanceOf(DataIntegrityViolationException::class.java)
+  }
+
+  private fun deletion(offenderIdentifier: String, status: OffenderDeletion.Status, heartbeat: LocalDateTime = LocalDateTime.now()) =
+    OffenderDeletion.builder().offenderIdentifier(offenderIdentifier).status(status).runId(UUID.randomUUID())
+      .startedDateTime(heartbeat).heartbeatDateTime(heartbeat).build()
+
+  companion object {
+    private val CASENOTES_ROLES = listOf("ROLE_VIEW_SENSITIVE_CASE_NOTES", "ROLE_ADD_SENSITIVE_CASE_NOTES")
+    private val DELETE_ROLE = listOf("ROLE_DELETE_OFFENDER_CASE_NOTES")
+  }
+}
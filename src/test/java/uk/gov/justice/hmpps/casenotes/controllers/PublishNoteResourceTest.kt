@@ -1,6 +1,8 @@
 package uk.gov.justice.hmpps.casenotes.controllers
 
 import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.eq
+import com.nhaarman.mockitokotlin2.timeout
 import com.nhaarman.mockitokotlin2.verify
 import com.nhaarman.mockitokotlin2.whenever
 import org.junit.jupiter.api.Test
@@ -9,6 +11,7 @@ import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNote
 import uk.gov.justice.hmpps.casenotes.model.ParentNoteType
 import uk.gov.justice.hmpps.casenotes.model.SensitiveCaseNoteType
 import uk.gov.justice.hmpps.casenotes.repository.OffenderCaseNoteRepository
+import java.net.URI
 import java.time.LocalDateTime
 import java.time.LocalDateTime.now
 import java.util.UUID
@@ -19,7 +22,8 @@ class PublishNoteResourceTest : ResourceTest() {
 
   @Test
   fun testPublishCaseNotes_AccessDenied() {
-    whenever(repository.findByModifyDateTimeBetweenOrderByModifyDateTime(any(), any())).thenReturn(
+    whenever(repository.countByModifyDateTimeBetween(any(), any())).thenReturn(1)
+    whenever(repository.findByModifyDateTimeBetweenOrderByModifyDateTimeAscIdAsc(any(), any(), any())).thenReturn(
       listOf(createOffenderCaseNote(SensitiveCaseNoteType.builder().type("subtype").parentType(ParentNoteType.builder().type("parent").build()).build()))
     )
     webTestClient.post().uri("/publish-notes?toDateTime={toDateTime}", now())
@@ -30,22 +34,25 @@ class PublishNoteResourceTest : ResourceTest() {
 
   @Test
   fun testPublishCaseNotesNoFrom() {
-    whenever(repository.findByModifyDateTimeBetweenOrderByModifyDateTime(any(), any())).thenReturn(
+    whenever(repository.countByModifyDateTimeBetween(any(), any())).thenReturn(1)
+    whenever(repository.findByModifyDateTimeBetweenOrderByModifyDateTimeAscIdAsc(any(), any(), any())).thenReturn(
       listOf(createOffenderCaseNote(SensitiveCaseNoteType.builder().type("subtype").parentType(ParentNoteType.builder().type("parent").build()).build()))
     )
     val toDate: LocalDateTime = now()
     webTestClient.post().uri("/publish-notes?toDateTime={toDateTime}", toDate)
       .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", PUBLISH_ROLE))
       .exchange()
-      .expectStatus().isOk
+      .expectStatus().isAccepted
       .expectBody()
       .json("1")
-    verify(repository).findByModifyDateTimeBetweenOrderByModifyDateTime(LocalDateTime.parse("2019-01-01T00:00:00"), toDate)
+    verify(repository).countByModifyDateTimeBetween(LocalDateTime.parse("2019-01-01T00:00:00"), toDate)
+    verify(repository, timeout(1000)).findByModifyDateTimeBetweenOrderByModifyDateTimeAscIdAsc(eq(LocalDateTime.parse("2019-01-01T00:00:00")), eq(toDate), any())
   }
 
   @Test
   fun testPublishCaseNotes_FromAndTo() {
-    whenever(repository.findByModifyDateTimeBetweenOrderByModifyDateTime(any(), any())).thenReturn(
+    whenever(repository.countByModifyDateTimeBetween(any(), any())).thenReturn(1)
+    whenever(repository.findByModifyDateTimeBetweenOrderByModifyDateTimeAscIdAsc(any(), any(), any())).thenReturn(
       listOf(createOffenderCaseNote(SensitiveCaseNoteType.builder().type("subtype").parentType(ParentNoteType.builder().type("parent").build()).build()))
     )
     val toDate: LocalDateTime = now()
@@ -53,12 +60,65 @@ class PublishNoteResourceTest : ResourceTest() {
     webTestClient.post().uri("/publish-notes?toDateTime={toDateTime}&fromDateTime={fromDateTime}", toDate, fromDate)
       .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", PUBLISH_ROLE))
       .exchange()
-      .expectStatus().isOk
+      .expectStatus().isAccepted
       .expectBody()
       .json("1")
-    verify(repository).findByModifyDateTimeBetweenOrderByModifyDateTime(fromDate, toDate)
+    verify(repository).countByModifyDateTimeBetween(fromDate, toDate)
+    verify(repository, timeout(1000)).findByModifyDateTimeBetweenOrderByModifyDateTimeAscIdAsc(eq(fromDate), eq(toDate), any())
+  }
+
+  @Test
+  fun testPublishCaseNotes_JobProgress() {
+    whenever(repository.countByModifyDateTimeBetween(any(), any())).thenReturn(1)
+    whenever(repository.findByModifyDateTimeBetweenOrderByModifyDateTimeAscIdAsc(any(), any(), any())).thenReturn(
+      listOf(createOffenderCaseNote(SensitiveCaseNoteType.builder().type("subtype").parentType(ParentNoteType.builder().type("parent").build()).build()))
+    )
+    val location = webTestClient.post().uri("/publish-notes?toDateTime={toDateTime}", now())
+      .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", PUBLISH_ROLE))
+      .exchange()
+      .expectStatus().isAccepted
+      .expectHeader().valueMatches("Location", "/publish-notes/jobs/\\d+")
+      .returnResult(String::class.java).responseHeaders.location!!
+
+    // the job runs in the background, so poll it until it finishes
+    val deadline = System.currentTimeMillis() + 5000
+    while (jobIsRunning(location) && System.currentTimeMillis() < deadline) Thread.sleep(100)
+
+    webTestClient.get().uri(location)
+      .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", PUBLISH_ROLE))
+      .exchange()
+      .expectStatus().isOk
+      .expectBody()
+      .jsonPath("status").isEqualTo("COMPLETED")
+      .jsonPath("totalRows").isEqualTo(1)
+      .jsonPath("rowsScanned").isEqualTo(1)
+      .jsonPath("published").isEqualTo(1)
+      .jsonPath("failed").isEqualTo(0)
   }
 
+  @Test
+  fun testPublishCaseNotes_JobNotFound() {
+    webTestClient.get().uri("/publish-notes/jobs/-1")
+      .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", PUBLISH_ROLE))
+      .exchange()
+      .expectStatus().isNotFound
+  }
+
+  @Test
+  fun testPublishCaseNotes_JobAccessDenied() {
+    webTestClient.get().uri("/publish-notes/jobs/1")
+      .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", CASENOTES_ROLES))
+      .exchange()
+      .expectStatus().isForbidden
+  }
+
+  private fun jobIsRunning(location: URI): Boolean =
+    webTestClient.get().uri(location)
+      .headers(addBearerAuthorisation("SECURE_CASENOTE_USER", PUBLISH_ROLE))
+      .exchange()
+      .expectBody(String::class.java)
+      .returnResult().responseBody!!.contains("\"status\":\"RUNNING\"")
+
   private fun createOffenderCaseNote(caseNoteType: SensitiveCaseNoteType): OffenderCaseNote =
     OffenderCaseNote.builder()
       .id(UUID.randomUUID())
@@ -68,6 +128,7 @@ class PublishNoteResourceTest : ResourceTest() {
       .sensitiveCaseNoteType(caseNoteType)
       .noteText("HELLO")
       .createDateTime(LocalDateTime.parse("2019-02-03T23:20:19"))
+      .modifyDateTime(LocalDateTime.parse("2019-02-03T23:20:19"))
       .build()
 
   companion object {
@@ -0,0 +1,57 @@
+package uk.gov.justice.hmpps.casenotes.controllers
+
+import com.amazonaws.services.sqs.AmazonSQS
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.http.HttpHeaders
+import uk.gov.justice.hmpps.casenotes.dto.DlqRedriveResult
+import uk.gov.justice.hmpps.casenotes.health.IntegrationTest
+import uk.gov.justice.hmpps.casenotes.utils.JwtAuthHelper
+
+/**
+ * Runs against the localstack queues, see docker-compose-localstack.yaml
+ */
+class QueueAdminIntTest : IntegrationTest() {
+  @Autowired
+  private lateinit var jwtHelper: JwtAuthHelper
+
+  @Autowired
+  @Qualifier("awsSqsDlqClient")
+  private lateinit var awsSqsDlqClient: AmazonSQS
+
+  @Value("\${sqs.dlq.name}")
+  private lateinit var dlqName: String
+
+  @Test
+  fun `moves messages from the dead letter queue`() {
+    val dlqUrl = awsSqsDlqClient.getQueueUrl(dlqName).queueUrl
+    repeat(2) {
+      awsSqsDlqClient.sendMessage(
+        dlqUrl,
+        """{"Message":"{}","MessageAttributes":{"eventType":{"Type":"String","Value":"OFFENDER-UPDATED"}}}"""
+      )
+    }
+
+    val result = webTestClient.put().uri("/queue-admin/retry-dlq?messagesPerSecond=100")
+      .headers { it.add(HttpHeaders.AUTHORIZATION, "Bearer ${jwtHelper.createJwt("QUEUE_ADMIN_USER", roles = listOf("ROLE_QUEUE_ADMIN"))}") }
+      .exchange()
+      .expectStatus().isOk
+      .expectBody(DlqRedriveResult::class.java)
+      .returnResult().responseBody!!
+
+    assertThat(result.messagesMoved).isGreaterThanOrEqualTo(2)
+    assertThat(result.messagesFailed).isEqualTo(0)
+    assertThat(awsSqsDlqClient.getQueueAttributes(dlqUrl, listOf("ApproximateNumberOfMessages")).attributes["ApproximateNumberOfMessages"]).isEqualTo("0")
+  }
+
+  @Test
+  fun `requires the queue admin role`() {
+    webTestClient.put().uri("/queue-admin/retry-dlq")
+      .headers { it.add(HttpHeaders.AUTHORIZATION, "Bearer ${jwtHelper.createJwt("SECURE_CASENOTE_USER", roles = listOf("ROLE_VIEW_SENSITIVE_CASE_NOTES"))}") }
+      .exchange()
+      .expectStatus().isForbidden
+  }
+}
@@ -0,0 +1,55 @@
+package uk.gov.justice.hmpps.casenotes.datagen
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.context.TestPropertySource
+import org.springframework.transaction.annotation.Propagation
+import org.springframework.transaction.annotation.Transactional
+import javax.sql.DataSource
+
+@ActiveProfiles("test")
+@JdbcTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+// its own database, as the generated data is committed
+@TestPropertySource(properties = ["spring.datasource.url=jdbc:h2:mem:case-notes-datagen;MODE=PostgreSQL"])
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CaseNoteDataGeneratorTest {
+  @Autowired
+  private lateinit var dataSource: DataSource
+
+  @Autowired
+  private lateinit var jdbcTemplate: JdbcTemplate
+
+  @Test
+  fun `generate - fills the tables with skewed data`() {
+    val generated = CaseNoteDataGenerator(dataSource, seed = 1, batchSize = 100).generate(200)
+
+    val offender = CaseNoteDataGenerator.offenderIdentifier(0)
+    assertThat(count("SELECT COUNT(*) FROM OFFENDER_CASE_NOTE WHERE CREATE_USER_ID = 'DATAGEN'")).isEqualTo(generated.caseNotes)
+    assertThat(count("SELECT COUNT(*) FROM OFFENDER_CASE_NOTE_AMENDMENT WHERE CREATE_USER_ID = 'DATAGEN'")).isEqualTo(generated.amendments)
+    assertThat(count("SELECT COUNT(DISTINCT OFFENDER_IDENTIFIER) FROM OFFENDER_CASE_NOTE WHERE CREATE_USER_ID = 'DATAGEN'")).isEqualTo(200)
+    assertThat(count("SELECT COUNT(*) FROM OFFENDER_CASE_NOTE WHERE OFFENDER_IDENTIFIER = '$offender'")).isPositive()
+    assertThat(count("SELECT MAX(C) FROM (SELECT COUNT(*) C FROM OFFENDER_CASE_NOTE WHERE CREATE_USER_ID = 'DATAGEN' GROUP BY OFFENDER_IDENTIFIER)"))
+      .isGreaterThan(generated.caseNotes / 200 * 3)
+
+    // modified when created, or when last amended
+    assertThat(count("SELECT COUNT(*) FROM OFFENDER_CASE_NOTE WHERE CREATE_USER_ID = 'DATAGEN' AND (MODIFY_DATE_TIME IS NULL OR MODIFY_USER_ID IS NULL)"))
+      .isZero()
+    assertThat(count("SELECT COUNT(*) FROM OFFENDER_CASE_NOTE cn WHERE CREATE_USER_ID = 'DATAGEN' AND NOT EXISTS (SELECT 1 FROM OFFENDER_CASE_NOTE_AMENDMENT a WHERE a.OFFENDER_CASE_NOTE_ID = cn.OFFENDER_CASE_NOTE_ID) AND MODIFY_DATE_TIME <> CREATE_DATE_TIME"))
+      .isZero()
+    assertThat(count("SELECT COUNT(*) FROM OFFENDER_CASE_NOTE cn WHERE CREATE_USER_ID = 'DATAGEN' AND MODIFY_DATE_TIME <> (SELECT MAX(a.CREATE_DATE_TIME) FROM OFFENDER_CASE_NOTE_AMENDMENT a WHERE a.OFFENDER_CASE_NOTE_ID = cn.OFFENDER_CASE_NOTE_ID)"))
+      .isZero()
+  }
+
+  @Test
+  fun `offender identifier - in the NOMIS format`() {
+    assertThat(CaseNoteDataGenerator.offenderIdentifier(12345)).isEqualTo("G2345BA")
+  }
+
+  private fun count(sql: String): Long = jdbcTemplate.queryForObject(sql, Long::class.java)!!
+}
@@ -0,0 +1,90 @@
+package uk.gov.justice.hmpps.casenotes.health
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.springframework.boot.actuate.health.Health
+import org.springframework.boot.actuate.health.Status
+import reactor.core.publisher.Mono
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicInteger
+
+class BackgroundHealthIndicatorTest {
+
+  @Test
+  fun `health - latest result served until too old`() {
+    val indicator = CountingIndicator(Duration.ofMinutes(1))
+
+    indicator.health()
+    val health = indicator.health()
+
+    assertThat(health.status).isEqualTo(Status.UP)
+    assertThat(health.details).containsEntry("checks", 1).containsKey("SnapshotAgeMillis")
+    assertThat(indicator.checks.get()).isEqualTo(1)
+  }
+
+  @Test
+  fun `health - checked again when no max age`() {
+    val indicator = CountingIndicator(Duration.ZERO)
+
+    indicator.health()
+    indicator.health()
+
+    assertThat(indicator.checks.get()).isEqualTo(2)
+  }
+
+  @Test
+  fun `health - current details added to the latest result`() {
+    val indicator = CountingIndicator(Duration.ofMinutes(1))
+
+    indicator.health()
+    indicator.current = "changed"
+
+    assertThat(indicator.health().details).containsEntry("current", "changed")
+  }
+
+  @Test
+  fun `health - failed check reported as DOWN`() {
+    val indicator = object : BackgroundHealthIndicator(Duration.ofMinutes(1)) {
+      override fun check(): Mono<Health> = Mono.error(RuntimeException("broken"))
+    }
+
+    assertThat(indicator.health().status).isEqualTo(Status.DOWN)
+  }
+
+  @Test
+  fun `health - check with no result reported as UNKNOWN`() {
+    val indicator = object : BackgroundHealthIndicator(Duration.ofMinutes(1)) {
+      override fun check(): Mono<Health> = Mono.empty()
+    }
+
+    assertThat(indicator.health().status).isEqualTo(Status.UNKNOWN)
+  }
+
+  @Test
+  fun `health - check that takes too long reported as UNKNOWN`() {
+    val indicator = object : BackgroundHealthIndicator(Duration.ofMinutes(1), Duration.ofMillis(50)) {
+      override fun check(): Mono<Health> = Mono.never()
+    }
+
+    assertThat(indicator.health().status).isEqualTo(Status.UNKNOWN)
+  }
+
+  @Test
+  fun `refresher - refreshes all indicators`() {
+    val indicators = listOf(CountingIndicator(Duration.ofMinutes(1)), CountingIndicator(Duration.ofMinutes(1)))
+
+    HealthRefresher(indicators, Duration.ofSeconds(5)).refresh()
+    indicators.forEach { it.health() }
+
+    assertThat(indicators.map { it.checks.get() }).containsExactly(1, 1)
+  }
+
+  private class CountingIndicator(maxAge: Duration) : BackgroundHealthIndicator(maxAge) {
+    val checks = AtomicInteger()
+    var current = "initial"
+
+    override fun check(): Mono<Health> = Mono.fromCallable { Health.up().withDetail("checks", checks.incrementAndGet()).build() }
+
+    override fun currentDetails(): Map<String, Any?> = mapOf("current" to current)
+  }
+}
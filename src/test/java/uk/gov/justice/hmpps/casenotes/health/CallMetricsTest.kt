@@ -0,0 +1,53 @@
+package uk.gov.justice.hmpps.casenotes.health
+
+import io.micrometer.core.instrument.Tags
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.Test
+import reactor.core.publisher.Mono
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.function.Supplier
+
+class CallMetricsTest {
+  private val meterRegistry = SimpleMeterRegistry()
+  private val callMetrics = CallMetrics(meterRegistry)
+  private val tags = Tags.of("operation", "op")
+
+  @Test
+  fun `successful call - timed as a success`() {
+    assertThat(callMetrics.record("call", tags, Supplier { "result" })).isEqualTo("result")
+
+    assertThat(meterRegistry.get("call").tags("operation", "op", "outcome", "success").timer().count()).isEqualTo(1)
+    assertThat(meterRegistry.find("call.errors").counter()).isNull()
+  }
+
+  @Test
+  fun `failed call - timed as an error and counted by error`() {
+    assertThatThrownBy { callMetrics.record("call", tags, Supplier<String> { throw IllegalStateException("boom") }) }
+      .isInstanceOf(IllegalStateException::class.java)
+
+    assertThat(meterRegistry.get("call").tags("operation", "op", "outcome", "error").timer().count()).isEqualTo(1)
+    assertThat(meterRegistry.get("call.errors").tags("operation", "op", "error", "IllegalStateException").counter().count()).isEqualTo(1.0)
+  }
+
+  @Test
+  fun `mono - timed when subscribed rather than when created`() {
+    val mono = callMetrics.record("call", tags, Mono.just("result"))
+    assertThat(meterRegistry.find("call").timer()).isNull()
+
+    assertThat(mono.block()).isEqualTo("result")
+    assertThat(meterRegistry.get("call").tags("outcome", "success").timer().count()).isEqualTo(1)
+  }
+
+  @Test
+  fun `failed future - counted by the cause`() {
+    val call = CompletableFuture<String>()
+    val future = callMetrics.record("call", tags, call)
+    call.completeExceptionally(IllegalArgumentException("boom"))
+
+    assertThatThrownBy { future.get() }.isInstanceOf(ExecutionException::class.java)
+    assertThat(meterRegistry.get("call.errors").tags("error", "IllegalArgumentException").counter().count()).isEqualTo(1.0)
+  }
+}
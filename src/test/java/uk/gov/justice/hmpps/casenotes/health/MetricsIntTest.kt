@@ -0,0 +1,39 @@
+package uk.gov.justice.hmpps.casenotes.health
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.http.HttpHeaders
+import org.springframework.test.context.ActiveProfiles
+import uk.gov.justice.hmpps.casenotes.utils.JwtAuthHelper
+
+@ActiveProfiles("noqueue")
+class MetricsIntTest : IntegrationTest() {
+  @Autowired
+  private lateinit var jwtHelper: JwtAuthHelper
+
+  @Test
+  fun `metrics require a token`() {
+    webTestClient.get().uri("/prometheus").exchange().expectStatus().isUnauthorized
+  }
+
+  @Test
+  fun `metrics require the metrics role`() {
+    webTestClient.get().uri("/prometheus")
+      .headers { it.add(HttpHeaders.AUTHORIZATION, "Bearer ${jwtHelper.createJwt("SECURE_CASENOTE_USER", roles = listOf("ROLE_VIEW_SENSITIVE_CASE_NOTES"))}") }
+      .exchange()
+      .expectStatus().isForbidden
+  }
+
+  @Test
+  fun `metrics served to the scraper`() {
+    val metrics = webTestClient.get().uri("/prometheus")
+      .headers { it.add(HttpHeaders.AUTHORIZATION, "Bearer ${jwtHelper.createJwt("prometheus", roles = listOf("ROLE_CASE_NOTES_METRICS"))}") }
+      .exchange()
+      .expectStatus().isOk
+      .expectBody(String::class.java)
+      .returnResult().responseBody
+
+    assertThat(metrics).contains("jvm_memory_used_bytes")
+  }
+}
@@ -8,10 +8,12 @@ import com.amazonaws.services.sqs.model.QueueAttributeName
 import com.amazonaws.services.sqs.model.QueueDoesNotExistException
 import com.nhaarman.mockitokotlin2.mock
 import com.nhaarman.mockitokotlin2.whenever
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.Test
 import org.mockito.ArgumentMatchers.anyString
 import org.springframework.boot.actuate.health.Status
+import java.time.Duration
 import uk.gov.justice.hmpps.casenotes.health.QueueAttributes.MESSAGES_IN_FLIGHT
 import uk.gov.justice.hmpps.casenotes.health.QueueAttributes.MESSAGES_ON_DLQ
 import uk.gov.justice.hmpps.casenotes.health.QueueAttributes.MESSAGES_ON_QUEUE
@@ -27,7 +29,7 @@ class QueueHealthTest {
   private val someMessagesOnDLQCount = 789
   private val amazonSqs: AmazonSQS = mock()
   private val amazonSqsDLQ: AmazonSQS = mock()
-  private val queueHealth: QueueHealth = QueueHealth(amazonSqs, amazonSqsDLQ, someQueueName, someDLQName)
+  private val queueHealth: QueueHealth = QueueHealth(amazonSqs, amazonSqsDLQ, someQueueName, someDLQName, EventProcessingMetrics(SimpleMeterRegistry()), Duration.ZERO)
 
   @Test
   fun `health - queue found - UP`() {
@@ -48,6 +50,17 @@ class QueueHealthTest {
     assertThat(health.details[MESSAGES_IN_FLIGHT.healthName]).isEqualTo(someMessagesInFlightCount)
   }
 
+  @Test
+  fun `health - event processing counts included in health status`() {
+    mockHealthyQueue()
+
+    val health = queueHealth.health()
+
+    assertThat(health.details["EventsInFlight"]).isEqualTo(0)
+    assertThat(health.details["EventsProcessed"]).isEqualTo(0L)
+    assertThat(health.details["EventErrors"]).isEqualTo(0L)
+  }
+
   @Test
   fun `health - queue not found - DOWN`() {
     whenever(amazonSqs.getQueueUrl(anyString())).thenThrow(QueueDoesNotExistException::class.java)
@@ -0,0 +1,52 @@
+package uk.gov.justice.hmpps.casenotes.health
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.availability.ApplicationAvailability
+import org.springframework.boot.availability.ReadinessState.ACCEPTING_TRAFFIC
+import org.springframework.boot.availability.ReadinessState.REFUSING_TRAFFIC
+import org.springframework.test.context.ActiveProfiles
+
+@ActiveProfiles("noqueue")
+class ReadinessGateIntTest : IntegrationTest() {
+  companion object {
+    private const val WORK = "test warm up"
+  }
+
+  @Autowired
+  private lateinit var applicationAvailability: ApplicationAvailability
+
+  @Autowired
+  private lateinit var readinessGate: ReadinessGate
+
+  @AfterEach
+  fun release() {
+    readinessGate.release(WORK)
+  }
+
+  @Test
+  fun `gate replaces the application availability`() {
+    assertThat(applicationAvailability).isSameAs(readinessGate)
+  }
+
+  @Test
+  fun `ready application refuses traffic while work is held`() {
+    assertThat(applicationAvailability.readinessState).isEqualTo(ACCEPTING_TRAFFIC)
+
+    readinessGate.hold(WORK)
+
+    assertThat(applicationAvailability.readinessState).isEqualTo(REFUSING_TRAFFIC)
+    webTestClient.get().uri("/health/readiness").exchange()
+      .expectStatus().isEqualTo(503)
+      .expectBody().jsonPath("status").isEqualTo("OUT_OF_SERVICE")
+
+    readinessGate.release(WORK)
+
+    assertThat(applicationAvailability.readinessState).isEqualTo(ACCEPTING_TRAFFIC)
+    webTestClient.get().uri("/health/readiness").exchange()
+      .expectStatus().isOk
+      .expectBody().jsonPath("status").isEqualTo("UP")
+  }
+}
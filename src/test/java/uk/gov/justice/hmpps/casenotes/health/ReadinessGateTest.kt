@@ -0,0 +1,49 @@
+package uk.gov.justice.hmpps.casenotes.health
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.springframework.boot.availability.AvailabilityChangeEvent
+import org.springframework.boot.availability.LivenessState
+import org.springframework.boot.availability.ReadinessState
+import org.springframework.boot.availability.ReadinessState.ACCEPTING_TRAFFIC
+import org.springframework.boot.availability.ReadinessState.REFUSING_TRAFFIC
+
+class ReadinessGateTest {
+  private val readinessGate = ReadinessGate()
+
+  @Test
+  fun `ready with nothing held - accepting traffic`() {
+    readinessGate.onApplicationEvent(AvailabilityChangeEvent(this, ACCEPTING_TRAFFIC))
+
+    assertThat(readinessGate.readinessState).isEqualTo(ACCEPTING_TRAFFIC)
+  }
+
+  @Test
+  fun `ready while held - refuses traffic until released`() {
+    readinessGate.hold("one")
+    readinessGate.hold("two")
+
+    readinessGate.onApplicationEvent(AvailabilityChangeEvent(this, ACCEPTING_TRAFFIC))
+    readinessGate.release("one")
+    assertThat(readinessGate.readinessState).isEqualTo(REFUSING_TRAFFIC)
+    assertThat(readinessGate.getState(ReadinessState::class.java)).isEqualTo(REFUSING_TRAFFIC)
+
+    readinessGate.release("two")
+    assertThat(readinessGate.readinessState).isEqualTo(ACCEPTING_TRAFFIC)
+  }
+
+  @Test
+  fun `not ready while held - still refusing traffic`() {
+    readinessGate.hold("one")
+
+    assertThat(readinessGate.readinessState).isEqualTo(REFUSING_TRAFFIC)
+  }
+
+  @Test
+  fun `held - liveness unchanged`() {
+    readinessGate.hold("one")
+    readinessGate.onApplicationEvent(AvailabilityChangeEvent(this, LivenessState.CORRECT))
+
+    assertThat(readinessGate.livenessState).isEqualTo(LivenessState.CORRECT)
+  }
+}
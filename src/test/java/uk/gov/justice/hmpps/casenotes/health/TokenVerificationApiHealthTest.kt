@@ -5,13 +5,14 @@ import com.nhaarman.mockitokotlin2.verifyZeroInteractions
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.Test
 import org.springframework.web.reactive.function.client.WebClient
+import java.time.Duration
 
 class TokenVerificationApiHealthTest {
   val webClient: WebClient = mock()
 
   @Test
   fun `token verification disabled health passes`() {
-    val health = TokenVerificationApiHealth(webClient, false).health()
+    val health = TokenVerificationApiHealth(webClient, false, Duration.ZERO).health()
     assertThat(health.toString()).isEqualTo("UP {TokenVerification=Disabled}")
     verifyZeroInteractions(webClient)
   }
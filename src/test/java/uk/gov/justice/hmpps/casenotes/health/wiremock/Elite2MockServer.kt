@@ -6,6 +6,7 @@ import com.github.tomakehurst.wiremock.client.WireMock.aResponse
 import com.github.tomakehurst.wiremock.client.WireMock.get
 import com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo
 import com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration
 import com.google.gson.GsonBuilder
 import com.google.gson.JsonDeserializationContext
 import com.google.gson.JsonDeserializer
@@ -36,6 +37,7 @@ class Elite2Extension : BeforeAllCallback, AfterAllCallback, BeforeEachCallback
 
   override fun beforeEach(context: ExtensionContext) {
     elite2Api.resetRequests()
+    elite2Api.faults.reset()
   }
 
   override fun afterAll(context: ExtensionContext) {
@@ -43,7 +45,8 @@ class Elite2Extension : BeforeAllCallback, AfterAllCallback, BeforeEachCallback
   }
 }
 
-class Elite2MockServer : WireMockServer(WIREMOCK_PORT) {
+class Elite2MockServer(val faults: FaultInjector = FaultInjector()) :
+  WireMockServer(WireMockConfiguration.wireMockConfig().port(WIREMOCK_PORT).extensions(faults)) {
   private val gson = GsonBuilder().registerTypeAdapter(LocalDateTime::class.java, LocalDateTimeConverter()).create()
 
   fun subGetCaseNoteTypes() {
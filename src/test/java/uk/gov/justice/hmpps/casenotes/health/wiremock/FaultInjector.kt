@@ -0,0 +1,47 @@
+package uk.gov.justice.hmpps.casenotes.health.wiremock
+
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder
+import com.github.tomakehurst.wiremock.common.FileSource
+import com.github.tomakehurst.wiremock.extension.Parameters
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer
+import com.github.tomakehurst.wiremock.http.Request
+import com.github.tomakehurst.wiremock.http.ResponseDefinition
+import java.time.Duration
+import java.util.concurrent.ThreadLocalRandom
+
+/**
+ * Slows down and fails the responses of a mock server, to reproduce a service that is struggling.  Applies to every
+ * stub, and does nothing until faults are set.
+ */
+class FaultInjector : ResponseDefinitionTransformer() {
+  @Volatile
+  private var faults = Faults()
+
+  /**
+   * @param latency the median delay added to responses, which varies around it as real response times do
+   * @param errorRate the fraction of responses, from 0 to 1, that are replaced by a 503
+   */
+  fun set(latency: Duration = Duration.ZERO, errorRate: Double = 0.0) {
+    faults = Faults(latency, errorRate)
+  }
+
+  fun reset() = set()
+
+  override fun transform(request: Request, responseDefinition: ResponseDefinition, files: FileSource?, parameters: Parameters?): ResponseDefinition {
+    val faults = faults
+    if (faults.latency.isZero && faults.errorRate == 0.0) return responseDefinition
+
+    val builder = ResponseDefinitionBuilder.like(responseDefinition).but()
+    if (!faults.latency.isZero) builder.withLogNormalRandomDelay(faults.latency.toMillis().toDouble(), 0.25)
+    if (ThreadLocalRandom.current().nextDouble() < faults.errorRate) {
+      builder.withStatus(503)
+        .withHeader("Content-Type", "application/json")
+        .withBody("""{"status": 503, "userMessage": "Service unavailable"}""")
+    }
+    return builder.build()
+  }
+
+  override fun getName() = "fault-injector"
+
+  private data class Faults(val latency: Duration = Duration.ZERO, val errorRate: Double = 0.0)
+}
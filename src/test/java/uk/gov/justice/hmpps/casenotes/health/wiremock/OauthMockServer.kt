@@ -2,6 +2,7 @@ package uk.gov.justice.hmpps.casenotes.health.wiremock
 
 import com.github.tomakehurst.wiremock.WireMockServer
 import com.github.tomakehurst.wiremock.client.WireMock
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration
 import com.github.tomakehurst.wiremock.http.HttpHeader
 import com.github.tomakehurst.wiremock.http.HttpHeaders
 import com.google.gson.GsonBuilder
@@ -22,6 +23,7 @@ class OAuthExtension : BeforeAllCallback, AfterAllCallback, BeforeEachCallback {
 
   override fun beforeEach(context: ExtensionContext) {
     oAuthApi.resetRequests()
+    oAuthApi.faults.reset()
   }
 
   override fun afterAll(context: ExtensionContext) {
@@ -29,7 +31,8 @@ class OAuthExtension : BeforeAllCallback, AfterAllCallback, BeforeEachCallback {
   }
 }
 
-class OAuthMockServer : WireMockServer(WIREMOCK_PORT) {
+class OAuthMockServer(val faults: FaultInjector = FaultInjector()) :
+  WireMockServer(WireMockConfiguration.wireMockConfig().port(WIREMOCK_PORT).extensions(faults)) {
   private val gson = GsonBuilder().create()
 
   fun stubGrantToken() {
@@ -2,6 +2,7 @@ package uk.gov.justice.hmpps.casenotes.health.wiremock
 
 import com.github.tomakehurst.wiremock.WireMockServer
 import com.github.tomakehurst.wiremock.client.WireMock
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration
 import com.github.tomakehurst.wiremock.http.HttpHeader
 import com.github.tomakehurst.wiremock.http.HttpHeaders
 import org.junit.jupiter.api.extension.AfterAllCallback
@@ -21,6 +22,7 @@ class TokenVerificationExtension : BeforeAllCallback, AfterAllCallback, BeforeEa
 
   override fun beforeEach(context: ExtensionContext) {
     tokenVerificationApi.resetRequests()
+    tokenVerificationApi.faults.reset()
     tokenVerificationApi.stubVerifyRequest()
   }
 
@@ -29,7 +31,8 @@ class TokenVerificationExtension : BeforeAllCallback, AfterAllCallback, BeforeEa
   }
 }
 
-class TokenVerificationMockServer : WireMockServer(9100) {
+class TokenVerificationMockServer(val faults: FaultInjector = FaultInjector()) :
+  WireMockServer(WireMockConfiguration.wireMockConfig().port(9100).extensions(faults)) {
 
   fun stubVerifyRequest(active: Boolean = true) {
     stubFor(
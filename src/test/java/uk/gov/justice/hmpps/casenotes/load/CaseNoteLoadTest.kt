@@ -0,0 +1,212 @@
+package uk.gov.justice.hmpps.casenotes.load
+
+import org.HdrHistogram.ConcurrentHistogram
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Tag
+import org.junit.jupiter.api.Test
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.web.server.LocalServerPort
+import org.springframework.http.HttpHeaders
+import org.springframework.http.MediaType
+import org.springframework.http.client.reactive.ReactorClientHttpConnector
+import org.springframework.web.reactive.function.client.WebClient
+import reactor.netty.http.client.HttpClient
+import reactor.netty.resources.ConnectionProvider
+import uk.gov.justice.hmpps.casenotes.controllers.ResourceTest
+import uk.gov.justice.hmpps.casenotes.datagen.CaseNoteDataGenerator
+import uk.gov.justice.hmpps.casenotes.health.wiremock.Elite2Extension.Companion.elite2Api
+import uk.gov.justice.hmpps.casenotes.health.wiremock.OAuthExtension.Companion.oAuthApi
+import uk.gov.justice.hmpps.casenotes.health.wiremock.TokenVerificationExtension.Companion.tokenVerificationApi
+import java.io.File
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.atomic.LongAdder
+import javax.sql.DataSource
+
+/**
+ * Drives a mix of case note requests through the application, with the other services stubbed, and reports the
+ * throughput and latency of each.  The stubs can be slowed down and made to fail, to see how the application behaves
+ * when a service it depends on is struggling.  Run with ./gradlew loadTest, see the README for the settings.
+ */
+@Tag("load")
+class CaseNoteLoadTest : ResourceTest() {
+  @LocalServerPort
+  private var port = 0
+
+  @Autowired
+  private lateinit var dataSource: DataSource
+
+  private val settings = LoadSettings()
+  private var datasetOffenders = 0
+
+  @BeforeEach
+  fun setUp() {
+    datasetOffenders = settings.int("dataset.offenders", 0)
+    if (datasetOffenders > 0) CaseNoteDataGenerator(dataSource).generate(datasetOffenders)
+
+    listOf(NORMAL_USER, SENSITIVE_USER).forEach { oAuthApi.subGetUserDetails(it) }
+    // any prisoner, so that requests can be spread across the generated ones
+    elite2Api.subGetOffender(ANY_OFFENDER)
+    elite2Api.subGetCaseNotesForOffender(ANY_OFFENDER)
+    elite2Api.subGetCaseNoteForOffender(OFFENDER_IDENTIFIER, NOMIS_CASE_NOTE_ID)
+    elite2Api.subGetCaseNoteTypes()
+
+    elite2Api.faults.set(settings.duration("elite2.latency", Duration.ZERO), settings.double("elite2.error-rate", 0.0))
+    oAuthApi.faults.set(settings.duration("oauth.latency", Duration.ZERO), settings.double("oauth.error-rate", 0.0))
+    tokenVerificationApi.faults.set(settings.duration("token-verification.latency", Duration.ZERO), settings.double("token-verification.error-rate", 0.0))
+  }
+
+  @Test
+  fun `mixed case note workload`() {
+    val concurrency = settings.int("concurrency", 8)
+    val webClient = WebClient.builder()
+      .baseUrl("http://localhost:$port")
+      .clientConnector(ReactorClientHttpConnector(HttpClient.create(ConnectionProvider.create("load-test", concurrency))))
+      .build()
+    val normalToken = jwtHelper.createJwt(NORMAL_USER)
+    val sensitiveToken = jwtHelper.createJwt(SENSITIVE_USER, roles = SENSITIVE_ROLES)
+
+    val operations = listOf(
+      Operation("list") { webClient.get().uri("/case-notes/{offenderIdentifier}", OFFENDER_IDENTIFIER).auth(normalToken).status() },
+      Operation("list-sensitive") { webClient.get().uri("/case-notes/{offenderIdentifier}", offender()).auth(sensitiveToken).status() },
+      Operation("get") { webClient.get().uri("/case-notes/{offenderIdentifier}/{caseNoteIdentifier}", OFFENDER_IDENTIFIER, NOMIS_CASE_NOTE_ID).auth(normalToken).status() },
+      Operation("create-sensitive") {
+        webClient.post().uri("/case-notes/{offenderIdentifier}", offender()).auth(sensitiveToken)
+          .bodyValue("""{"type": "POM", "subType": "GEN", "text": "Load test case note"}""").status()
+      },
+      Operation("types") { webClient.get().uri("/case-notes/types").auth(normalToken).status() }
+    )
+    val mix = settings.mix(operations.map { it.name })
+
+    run(operations, mix, concurrency, settings.duration("warmup", Duration.ofSeconds(10)))
+    val results = run(operations, mix, concurrency, settings.duration("duration", Duration.ofSeconds(30)))
+
+    report(results)
+    assertThat(results.values.sumOf { it.latencies.totalCount }).isPositive()
+  }
+
+  private fun run(operations: List<Operation>, mix: List<Int>, concurrency: Int, duration: Duration): Map<String, Results> {
+    val results = ConcurrentHashMap<String, Results>()
+    val totalWeight = mix.sum()
+    val start = System.nanoTime()
+    val end = start + duration.toNanos()
+    val executor = Executors.newFixedThreadPool(concurrency)
+    try {
+      executor.invokeAll(
+        (1..concurrency).map {
+          Callable {
+            while (System.nanoTime() < end) {
+              val operation = pick(operations, mix, ThreadLocalRandom.current().nextInt(totalWeight))
+              val requestStart = System.nanoTime()
+              val status = try {
+                operation.request()
+              } catch (e: Exception) {
+                0
+              }
+              results.computeIfAbsent(operation.name) { Results() }.record(System.nanoTime() - requestStart, status)
+            }
+          }
+        }
+      )
+    } finally {
+      executor.shutdown()
+    }
+    val elapsed = Duration.ofNanos(System.nanoTime() - start)
+    results.values.forEach { it.elapsed = elapsed }
+    return results
+  }
+
+  private fun offender(): String =
+    if (datasetOffenders > 0) CaseNoteDataGenerator.offenderIdentifier(ThreadLocalRandom.current().nextInt(datasetOffenders)) else OFFENDER_IDENTIFIER
+
+  private fun pick(operations: List<Operation>, mix: List<Int>, choice: Int): Operation {
+    var remaining = choice
+    mix.forEachIndexed { i, weight ->
+      if (remaining < weight) return operations[i]
+      remaining -= weight
+    }
+    return operations.last()
+  }
+
+  private fun report(results: Map<String, Results>) {
+    val lines = mutableListOf(
+      "Case note load test: ${settings.describe()}",
+      String.format("%-18s %9s %8s %9s %9s %9s %9s %9s", "operation", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms")
+    )
+    results.toSortedMap().forEach { (name, result) ->
+      val latencies = result.latencies
+      lines += String.format(
+        "%-18s %9d %8d %9.1f %9.1f %9.1f %9.1f %9.1f",
+        name, latencies.totalCount, result.errors.sum(), latencies.totalCount / result.elapsed.toMillis().toDouble() * 1000,
+        latencies.getValueAtPercentile(50.0) / 1000.0, latencies.getValueAtPercentile(90.0) / 1000.0,
+        latencies.getValueAtPercentile(99.0) / 1000.0, latencies.maxValue / 1000.0
+      )
+    }
+    val report = lines.joinToString("\n")
+    println(report)
+    File("build/reports/load-test").apply { mkdirs() }.resolve("report.txt").writeText(report + "\n")
+  }
+
+  private fun WebClient.RequestHeadersSpec<*>.auth(token: String): WebClient.RequestHeadersSpec<*> = header(HttpHeaders.AUTHORIZATION, "Bearer $token")
+    .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+
+  private fun WebClient.RequestBodySpec.auth(token: String): WebClient.RequestBodySpec = header(HttpHeaders.AUTHORIZATION, "Bearer $token")
+    .contentType(MediaType.APPLICATION_JSON)
+
+  private fun WebClient.RequestHeadersSpec<*>.status(): Int =
+    exchangeToMono { it.releaseBody().thenReturn(it.rawStatusCode()) }.block() ?: 0
+
+  private class Operation(val name: String, val request: () -> Int)
+
+  private class Results {
+    // microseconds
+    val latencies = ConcurrentHistogram(3)
+    val errors = LongAdder()
+    var elapsed: Duration = Duration.ZERO
+
+    fun record(nanos: Long, status: Int) {
+      latencies.recordValue(nanos / 1000)
+      if (status !in 200..299) errors.increment()
+    }
+  }
+
+  /**
+   * Settings are given as system properties prefixed with load., for example -Dload.concurrency=16
+   */
+  private class LoadSettings {
+    private fun get(name: String): String? = System.getProperty("load.$name")
+
+    fun int(name: String, default: Int) = get(name)?.toInt() ?: default
+    fun double(name: String, default: Double) = get(name)?.toDouble() ?: default
+    fun duration(name: String, default: Duration): Duration = get(name)?.let { Duration.parse(it) } ?: default
+
+    /**
+     * The relative weight of each operation, given as name=weight pairs, for example list=50,get=20.  Operations that
+     * aren't given aren't run, and without the setting the default mix is used.
+     */
+    fun mix(names: List<String>): List<Int> {
+      val weights = (get("mix") ?: DEFAULT_MIX).split(",").associate {
+        val (name, weight) = it.trim().split("=")
+        name to weight.toInt()
+      }
+      return names.map { weights[it] ?: 0 }
+    }
+
+    fun describe() = System.getProperties().stringPropertyNames().filter { it.startsWith("load.") }.sorted()
+      .joinToString(", ") { "$it=${System.getProperty(it)}" }.ifEmpty { "defaults" }
+  }
+
+  companion object {
+    private const val OFFENDER_IDENTIFIER = "A1234AA"
+    private const val ANY_OFFENDER = "[A-Z0-9]+"
+    private const val NOMIS_CASE_NOTE_ID = 131232L
+    private const val NORMAL_USER = "API_TEST_USER"
+    private const val SENSITIVE_USER = "SECURE_CASENOTE_USER"
+    private const val DEFAULT_MIX = "list=50,list-sensitive=20,get=15,create-sensitive=5,types=10"
+    private val SENSITIVE_ROLES = listOf("ROLE_VIEW_SENSITIVE_CASE_NOTES", "ROLE_ADD_SENSITIVE_CASE_NOTES")
+  }
+}
@@ -1,9 +1,11 @@
 package uk.gov.justice.hmpps.casenotes.repository;
 
+import org.hibernate.SessionFactory;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -16,11 +18,16 @@ import uk.gov.justice.hmpps.casenotes.config.AuthAwareAuthenticationToken;
 import uk.gov.justice.hmpps.casenotes.filters.OffenderCaseNoteFilter;
 import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNote;
 import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNote.OffenderCaseNoteBuilder;
+import uk.gov.justice.hmpps.casenotes.model.ParentNoteType;
 import uk.gov.justice.hmpps.casenotes.model.SensitiveCaseNoteType;
 
+import javax.persistence.EntityManagerFactory;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static java.time.LocalDateTime.now;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -43,6 +50,9 @@ public class OffenderCaseNoteRepositoryTest {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     private SensitiveCaseNoteType genType;
 
     @BeforeEach
@@ -206,6 +216,90 @@ public class OffenderCaseNoteRepositoryTest {
         assertThat(rows).extracting(OffenderCaseNote::getNoteText).contains(newNoteText).doesNotContain(oldNoteText);
     }
 
+    @Test
+    public void findByModifiedDateInKeysetChunks() {
+        final var modifyDateTime = now().minusDays(3).withNano(0);
+
+        final var notes = new ArrayList<OffenderCaseNote>();
+        for (int i = 0; i < 5; i++) {
+            notes.add(repository.save(transientEntityBuilder("K1234KK").noteText("keyset note " + i).build()));
+        }
+
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+        TestTransaction.start();
+
+        // give them all the same modify date so that the id is needed to page through
+        final var update = jdbcTemplate.update("update offender_case_note set modify_date_time = ? where offender_identifier = ?", modifyDateTime, "K1234KK");
+        assertThat(update).isEqualTo(5);
+
+        final var page = PageRequest.of(0, 2);
+        final var seen = new ArrayList<OffenderCaseNote>();
+        var chunk = repository.findByModifyDateTimeBetweenOrderByModifyDateTimeAscIdAsc(modifyDateTime, modifyDateTime, page);
+        while (!chunk.isEmpty()) {
+            assertThat(chunk.size()).isLessThanOrEqualTo(2);
+            seen.addAll(chunk);
+            final var last = chunk.get(chunk.size() - 1);
+            chunk = repository.findByModifyDateTimeAndIdAfter(last.getModifyDateTime(), last.getId(), modifyDateTime, page);
+        }
+
+        assertThat(seen).extracting(OffenderCaseNote::getId).containsExactlyInAnyOrderElementsOf(notes.stream().map(OffenderCaseNote::getId).collect(Collectors.toList()));
+        assertThat(repository.countByModifyDateTimeBetween(modifyDateTime, modifyDateTime)).isEqualTo(5);
+    }
+
+    @Test
+    public void findChangesForTypesInKeysetChunks() {
+        final var modifyDateTime = now().minusDays(4).withNano(0);
+
+        final var notes = new ArrayList<OffenderCaseNote>();
+        for (int i = 0; i < 3; i++) {
+            notes.add(repository.save(transientEntityBuilder("T1234TT").noteText("typed keyset note " + i).build()));
+        }
+
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+        TestTransaction.start();
+
+        final var update = jdbcTemplate.update("update offender_case_note set modify_date_time = ? where offender_identifier = ?", modifyDateTime, "T1234TT");
+        assertThat(update).isEqualTo(3);
+
+        final var page = PageRequest.of(0, 2);
+        final var seen = new ArrayList<OffenderCaseNote>();
+        var chunk = repository.findChangesForTypesAfter(Set.of(PARENT_TYPE), modifyDateTime.minusSeconds(1), new UUID(0, 0), now(), page);
+        while (!chunk.isEmpty() && chunk.get(0).getModifyDateTime().equals(modifyDateTime)) {
+            seen.addAll(chunk);
+            final var last = chunk.get(chunk.size() - 1);
+            chunk = repository.findChangesForTypesAfter(Set.of(PARENT_TYPE), last.getModifyDateTime(), last.getId(), now(), page);
+        }
+
+        assertThat(seen).filteredOn(n -> n.getOffenderIdentifier().equals("T1234TT")).extracting(OffenderCaseNote::getId)
+                .containsExactlyInAnyOrderElementsOf(notes.stream().map(OffenderCaseNote::getId).collect(Collectors.toList()));
+        assertThat(repository.findChangesForTypesAfter(Set.of("BOB"), modifyDateTime.minusSeconds(1), new UUID(0, 0), now(), Pageable.unpaged()))
+                .extracting(OffenderCaseNote::getOffenderIdentifier).doesNotContain("T1234TT");
+    }
+
+    @Test
+    public void findChangesUpToToDateTime() {
+        final var modifyDateTime = now().minusDays(5).withNano(0);
+
+        final var earlier = repository.save(transientEntityBuilder("L1234LL").noteText("committed note").build());
+        final var later = repository.save(transientEntityBuilder("L1234LL").noteText("still committing note").build());
+
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+        TestTransaction.start();
+
+        jdbcTemplate.update("update offender_case_note set modify_date_time = ? where offender_case_note_id = ?", modifyDateTime, earlier.getId().toString());
+        jdbcTemplate.update("update offender_case_note set modify_date_time = ? where offender_case_note_id = ?", modifyDateTime.plusSeconds(10), later.getId().toString());
+
+        final var from = modifyDateTime.minusSeconds(1);
+        final var to = modifyDateTime.plusSeconds(5);
+        assertThat(repository.findChangesAfter(from, new UUID(0, 0), to, Pageable.unpaged()))
+                .extracting(OffenderCaseNote::getId).contains(earlier.getId()).doesNotContain(later.getId());
+        assertThat(repository.findChangesForTypesAfter(Set.of(PARENT_TYPE), from, new UUID(0, 0), to, Pageable.unpaged()))
+                .extracting(OffenderCaseNote::getId).contains(earlier.getId()).doesNotContain(later.getId());
+    }
+
     @Test
     public void testGenerationOfEventId() {
         final var note = repository.save(transientEntity(OFFENDER_IDENTIFIER));
@@ -226,7 +320,7 @@ public class OffenderCaseNoteRepositoryTest {
         TestTransaction.end();
         TestTransaction.start();
 
-        final var deletedCaseNotes = repository.deleteOffenderCaseNoteByOffenderIdentifier("X1111XX");
+        final var deletedCaseNotes = repository.deleteOffenderCaseNoteChunk("X1111XX", 100);
         assertThat(deletedCaseNotes).isEqualTo(1);
 
         TestTransaction.flagForCommit();
@@ -247,7 +341,7 @@ public class OffenderCaseNoteRepositoryTest {
         TestTransaction.end();
         TestTransaction.start();
 
-        final var deletedCaseNotes = repository.deleteOffenderCaseNoteByOffenderIdentifier("X2111XX");
+        final var deletedCaseNotes = repository.deleteOffenderCaseNoteChunk("X2111XX", 100);
         assertThat(deletedCaseNotes).isEqualTo(1);
 
         TestTransaction.flagForCommit();
@@ -278,8 +372,8 @@ public class OffenderCaseNoteRepositoryTest {
         assertThat(caseNoteCountBefore).isEqualTo(3);
 
         TestTransaction.start();
-        repository.deleteOffenderCaseNoteAmendmentsByOffenderIdentifier("X3111XX");
-        final var deletedCaseNotes = repository.deleteOffenderCaseNoteByOffenderIdentifier("X3111XX");
+        repository.deleteOffenderCaseNoteAmendmentChunk("X3111XX", 100);
+        final var deletedCaseNotes = repository.deleteOffenderCaseNoteChunk("X3111XX", 100);
         assertThat(deletedCaseNotes).isEqualTo(1);
 
         TestTransaction.flagForCommit();
@@ -293,6 +387,31 @@ public class OffenderCaseNoteRepositoryTest {
 
     }
 
+    @Test
+    @WithAnonymousUser
+    public void testDeleteCaseNotesInChunks() {
+        for (int i = 0; i < 3; i++) {
+            final var caseNote = transientEntityBuilder("X4111XX").noteText("chunked note " + i).softDeleted(i == 0).build();
+            caseNote.addAmendment("Amendment " + i, "someuser", "Some User", "user id");
+            repository.save(caseNote);
+        }
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+        TestTransaction.start();
+
+        assertThat(repository.deleteOffenderCaseNoteAmendmentChunk("X4111XX", 2)).isEqualTo(2);
+        assertThat(repository.deleteOffenderCaseNoteChunk("X4111XX", 2)).isEqualTo(2);
+        assertThat(repository.deleteOffenderCaseNoteAmendmentChunk("X4111XX", 2)).isEqualTo(1);
+        assertThat(repository.deleteOffenderCaseNoteChunk("X4111XX", 2)).isEqualTo(1);
+        assertThat(repository.deleteOffenderCaseNoteChunk("X4111XX", 2)).isEqualTo(0);
+
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+
+        final var caseNoteCountAfter = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM offender_case_note WHERE offender_identifier = 'X4111XX'", Integer.class);
+        assertThat(caseNoteCountAfter).isEqualTo(0);
+    }
+
     @Test
     @WithAnonymousUser
     public void testPersistCaseNoteAndAmendmentAndThenDelete() {
@@ -312,8 +431,8 @@ public class OffenderCaseNoteRepositoryTest {
         TestTransaction.end();
         TestTransaction.start();
 
-        repository.deleteOffenderCaseNoteAmendmentsByOffenderIdentifier(caseNote.getOffenderIdentifier());
-        final var deletedEntities = repository.deleteOffenderCaseNoteByOffenderIdentifier(caseNote.getOffenderIdentifier());
+        repository.deleteOffenderCaseNoteAmendmentChunk(caseNote.getOffenderIdentifier(), 100);
+        final var deletedEntities = repository.deleteOffenderCaseNoteChunk(caseNote.getOffenderIdentifier(), 100);
 
         assertThat(deletedEntities).isEqualTo(1);
         TestTransaction.flagForCommit();
@@ -340,7 +459,7 @@ public class OffenderCaseNoteRepositoryTest {
         TestTransaction.end();
         TestTransaction.start();
 
-        final var rows = repository.updateOffenderIdentifier("A1234ZZ", OFFENDER_IDENTIFIER);
+        final var rows = repository.updateOffenderIdentifiers(List.of("A1234ZZ"), OFFENDER_IDENTIFIER);
 
         assertThat(rows).isEqualTo(1);
         TestTransaction.flagForCommit();
@@ -351,6 +470,26 @@ public class OffenderCaseNoteRepositoryTest {
         assertThat(modifiedIdentity.getOffenderIdentifier()).isEqualTo(OFFENDER_IDENTIFIER);
     }
 
+    @Test
+    @WithAnonymousUser
+    public void testModifyMultipleOffenderIdentifiers() {
+        final var first = repository.save(transientEntity("A3234ZZ"));
+        final var second = repository.save(transientEntity("A4234ZZ"));
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+        TestTransaction.start();
+
+        final var rows = repository.updateOffenderIdentifiers(List.of("A3234ZZ", "A4234ZZ"), OFFENDER_IDENTIFIER);
+
+        assertThat(rows).isEqualTo(2);
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+        TestTransaction.start();
+
+        assertThat(repository.findById(first.getId()).orElseThrow().getOffenderIdentifier()).isEqualTo(OFFENDER_IDENTIFIER);
+        assertThat(repository.findById(second.getId()).orElseThrow().getOffenderIdentifier()).isEqualTo(OFFENDER_IDENTIFIER);
+    }
+
     @Test
     @WithAnonymousUser
     public void testModifyOffenderIdentifierWhenACaseNoteIsSoftDeleted() {
@@ -372,7 +511,7 @@ public class OffenderCaseNoteRepositoryTest {
         final var retrievedCaseNote2 = repository.findById(persistedEntity.getId());
         assertThat(retrievedCaseNote2).isEmpty();
 
-        final var rows = repository.updateOffenderIdentifier("A2234ZZ", OFFENDER_IDENTIFIER);
+        final var rows = repository.updateOffenderIdentifiers(List.of("A2234ZZ"), OFFENDER_IDENTIFIER);
 
         assertThat(rows).isEqualTo(1);
         TestTransaction.flagForCommit();
@@ -472,6 +611,29 @@ public class OffenderCaseNoteRepositoryTest {
     }
 
 
+    @Test
+    public void testLoadingCaseNoteTakesTypeFromCache() {
+        final var persistedEntity = repository.save(transientEntity(OFFENDER_IDENTIFIER));
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+        TestTransaction.start();
+
+        // make sure the types are cached, however the earlier tests have left things
+        repository.findById(persistedEntity.getId()).orElseThrow().getSensitiveCaseNoteType().getParentType().getType();
+        TestTransaction.end();
+        TestTransaction.start();
+
+        final var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        final var retrievedEntity = repository.findById(persistedEntity.getId()).orElseThrow();
+
+        assertThat(retrievedEntity.getSensitiveCaseNoteType().getParentType().getType()).isEqualTo(PARENT_TYPE);
+        assertThat(statistics.getEntityStatistics(SensitiveCaseNoteType.class.getName()).getLoadCount()).isZero();
+        assertThat(statistics.getEntityStatistics(ParentNoteType.class.getName()).getLoadCount()).isZero();
+        assertThat(statistics.getEntityStatistics(SensitiveCaseNoteType.class.getName()).getCacheHitCount()).isEqualTo(1);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
     private OffenderCaseNote transientEntity(final String offenderIdentifier) {
         return transientEntityBuilder(offenderIdentifier).build();
     }
@@ -0,0 +1,77 @@
+package uk.gov.justice.hmpps.casenotes.repository
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.security.core.context.SecurityContextHolder
+import org.springframework.security.oauth2.jwt.Jwt
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.transaction.annotation.Transactional
+import uk.gov.justice.hmpps.casenotes.config.AuthAwareAuthenticationToken
+import uk.gov.justice.hmpps.casenotes.dto.PublishNotesJobStatus
+import uk.gov.justice.hmpps.casenotes.model.PublishNotesJob
+import uk.gov.justice.hmpps.casenotes.model.PublishNotesJob.Status.FAILED
+import uk.gov.justice.hmpps.casenotes.model.PublishNotesJob.Status.RUNNING
+import java.time.LocalDateTime
+import java.util.UUID
+import javax.persistence.EntityManager
+
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@Transactional
+class PublishNotesJobRepositoryTest {
+  @Autowired
+  private lateinit var repository: PublishNotesJobRepository
+
+  @Autowired
+  private lateinit var entityManager: EntityManager
+
+  @BeforeEach
+  fun setUp() {
+    val jwt = Jwt.withTokenValue("some").subject("anonymous").header("head", "something").build()
+    SecurityContextHolder.getContext().authentication = AuthAwareAuthenticationToken(jwt, "userId", emptyList())
+  }
+
+  @Test
+  fun `claiming a job restarts its clock and its run's rate`() {
+    val firstRun = UUID.randomUUID()
+    val started = LocalDateTime.now().minusHours(2).withNano(0)
+    val job = repository.save(
+      PublishNotesJob.builder()
+        .fromDateTime(started).toDateTime(started).totalRows(200)
+        .runId(firstRun).startedDateTime(started).heartbeatDateTime(started)
+        .build()
+    )
+    repository.checkpoint(job.id, firstRun, started, UUID.randomUUID(), 100, 100, 0, started.plusSeconds(10))
+    repository.finish(job.id, firstRun, FAILED, started.plusSeconds(10))
+
+    // resumed an hour and a half after the first run failed
+    val secondRun = UUID.randomUUID()
+    val resumed = started.plusMinutes(100)
+    assertThat(repository.claim(job.id, RUNNING, FAILED, secondRun, resumed, resumed)).isEqualTo(1)
+    repository.checkpoint(job.id, secondRun, started, UUID.randomUUID(), 50, 50, 0, resumed.plusSeconds(10))
+    entityManager.clear()
+
+    val status = PublishNotesJobStatus(repository.findById(job.id).orElseThrow())
+    assertThat(status.startedDateTime).isEqualTo(resumed)
+    assertThat(status.rowsScanned).isEqualTo(150)
+    assertThat(status.rowsPerSecond).isEqualTo(5.0)
+  }
+
+  @Test
+  fun `heartbeat only recorded for the current run`() {
+    val runId = UUID.randomUUID()
+    val started = LocalDateTime.now().minusMinutes(10)
+    val job = repository.save(
+      PublishNotesJob.builder()
+        .fromDateTime(started).toDateTime(started)
+        .runId(runId).startedDateTime(started).heartbeatDateTime(started)
+        .build()
+    )
+
+    assertThat(repository.heartbeat(job.id, UUID.randomUUID(), LocalDateTime.now(), RUNNING)).isEqualTo(0)
+    assertThat(repository.heartbeat(job.id, runId, LocalDateTime.now(), RUNNING)).isEqualTo(1)
+  }
+}
@@ -4,23 +4,31 @@ import com.fasterxml.jackson.databind.ObjectMapper
 import com.nhaarman.mockitokotlin2.any
 import com.nhaarman.mockitokotlin2.check
 import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.times
 import com.nhaarman.mockitokotlin2.verify
 import com.nhaarman.mockitokotlin2.whenever
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.Test
 import software.amazon.awssdk.services.sns.SnsAsyncClient
+import software.amazon.awssdk.services.sns.model.BatchResultErrorEntry
 import software.amazon.awssdk.services.sns.model.MessageAttributeValue
+import software.amazon.awssdk.services.sns.model.PublishBatchRequest
+import software.amazon.awssdk.services.sns.model.PublishBatchResponse
 import software.amazon.awssdk.services.sns.model.PublishRequest
 import software.amazon.awssdk.services.sns.model.PublishResponse
 import uk.gov.justice.hmpps.casenotes.dto.CaseNote
+import uk.gov.justice.hmpps.casenotes.health.CallMetrics
 import java.time.LocalDateTime
 import java.util.concurrent.CompletableFuture
 
 class CaseNoteAwsEventPusherTest {
   private val snsClient: SnsAsyncClient = mock()
   private val objectMapper: ObjectMapper = mock()
+  private val meterRegistry = SimpleMeterRegistry()
 
-  private val service = CaseNoteAwsEventPusher(snsClient, "topicArn", objectMapper)
+  private val service = CaseNoteAwsEventPusher(snsClient, "topicArn", objectMapper, CallMetrics(meterRegistry), 2, 3, 0)
 
   @Test
   fun `send event converts to case note event`() {
@@ -54,11 +62,62 @@ class CaseNoteAwsEventPusherTest {
         assertThat(it.messageAttributes()).containsEntry("eventType", MessageAttributeValue.builder().dataType("String").stringValue("GEN-OSE").build())
       }
     )
+    assertThat(meterRegistry.get("case_notes.sns.publish").tags("operation", "publish", "outcome", "success").timer().count()).isEqualTo(1)
   }
 
-  private fun caseCaseNote(): CaseNote {
+  @Test
+  fun `send events publishes in batches of ten`() {
+    whenever(objectMapper.writeValueAsString(any())).thenReturn("messageAsJson")
+    whenever(snsClient.publishBatch(any<PublishBatchRequest>())).thenReturn(CompletableFuture.completedFuture(PublishBatchResponse.builder().build()))
+
+    val result = service.sendEvents((1..25).map { caseCaseNote("note$it") })
+
+    assertThat(result).isEqualTo(PublishResult(published = 25))
+    verify(snsClient, times(3)).publishBatch(
+      check<PublishBatchRequest> {
+        assertThat(it.topicArn()).isEqualTo("topicArn")
+        assertThat(it.publishBatchRequestEntries()).hasSizeLessThanOrEqualTo(10)
+      }
+    )
+  }
+
+  @Test
+  fun `send events ignores non sensitive case notes`() {
+    val result = service.sendEvents(listOf(caseCaseNote("12345")))
+
+    assertThat(result).isEqualTo(PublishResult())
+    verify(snsClient, never()).publishBatch(any<PublishBatchRequest>())
+  }
+
+  @Test
+  fun `send events retries failed entries and counts those that never succeed`() {
+    whenever(objectMapper.writeValueAsString(any())).thenReturn("messageAsJson")
+    val failure = BatchResultErrorEntry.builder().id("note2").code("InternalError").senderFault(false).build()
+    whenever(snsClient.publishBatch(any<PublishBatchRequest>()))
+      .thenReturn(CompletableFuture.completedFuture(PublishBatchResponse.builder().failed(failure).build()))
+
+    val result = service.sendEvents(listOf(caseCaseNote("note1"), caseCaseNote("note2")))
+
+    assertThat(result).isEqualTo(PublishResult(published = 1, failed = 1))
+    verify(snsClient, times(3)).publishBatch(any<PublishBatchRequest>())
+  }
+
+  @Test
+  fun `send events does not retry entries rejected as sender faults`() {
+    whenever(objectMapper.writeValueAsString(any())).thenReturn("messageAsJson")
+    val failure = BatchResultErrorEntry.builder().id("note1").code("InvalidParameter").senderFault(true).build()
+    whenever(snsClient.publishBatch(any<PublishBatchRequest>()))
+      .thenReturn(CompletableFuture.completedFuture(PublishBatchResponse.builder().failed(failure).build()))
+
+    val result = service.sendEvents(listOf(caseCaseNote("note1")))
+
+    assertThat(result).isEqualTo(PublishResult(failed = 1))
+    verify(snsClient).publishBatch(any<PublishBatchRequest>())
+  }
+
+  private fun caseCaseNote(caseNoteId: String = "abcde"): CaseNote {
     return CaseNote.builder()
-      .caseNoteId("abcde")
+      .caseNoteId(caseNoteId)
       .creationDateTime(LocalDateTime.parse("2019-03-04T10:11:12"))
       .occurrenceDateTime(LocalDateTime.parse("2018-02-03T10:11:12"))
       .locationId("MDI")
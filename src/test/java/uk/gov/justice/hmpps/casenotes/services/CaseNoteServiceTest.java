@@ -1,26 +1,32 @@
 package uk.gov.justice.hmpps.casenotes.services;
 
 import com.microsoft.applicationinsights.TelemetryClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.access.AccessDeniedException;
 import uk.gov.justice.hmpps.casenotes.config.SecurityUserContext;
 import uk.gov.justice.hmpps.casenotes.config.SecurityUserContext.UserIdUser;
 import uk.gov.justice.hmpps.casenotes.dto.CaseNoteAmendment;
+import uk.gov.justice.hmpps.casenotes.dto.CaseNoteChangeEvent.ChangeType;
 import uk.gov.justice.hmpps.casenotes.dto.NewCaseNote;
 import uk.gov.justice.hmpps.casenotes.dto.NomisCaseNote;
 import uk.gov.justice.hmpps.casenotes.dto.UpdateCaseNote;
 import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNote;
 import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNoteAmendment;
+import uk.gov.justice.hmpps.casenotes.model.OffenderCaseNoteChange;
 import uk.gov.justice.hmpps.casenotes.model.ParentNoteType;
 import uk.gov.justice.hmpps.casenotes.model.SensitiveCaseNoteType;
 import uk.gov.justice.hmpps.casenotes.repository.CaseNoteTypeRepository;
 import uk.gov.justice.hmpps.casenotes.repository.OffenderCaseNoteAmendmentRepository;
+import uk.gov.justice.hmpps.casenotes.repository.OffenderCaseNoteChangeRepository;
 import uk.gov.justice.hmpps.casenotes.repository.OffenderCaseNoteRepository;
 import uk.gov.justice.hmpps.casenotes.repository.ParentCaseNoteTypeRepository;
+import uk.gov.justice.hmpps.casenotes.services.SensitiveCaseNoteTypeIndex.SubType;
 
 import javax.validation.ValidationException;
 import java.time.LocalDateTime;
@@ -34,7 +40,8 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
-import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -56,17 +63,24 @@ public class CaseNoteServiceTest {
     private CaseNoteTypeMerger caseNoteTypeMerger;
     @Mock
     private TelemetryClient telemetryClient;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Mock
+    private SensitiveCaseNoteTypeIndex caseNoteTypeIndex;
+    @Mock
+    private OffenderCaseNoteChangeRepository changeRepository;
 
     private CaseNoteService caseNoteService;
 
     @BeforeEach
     public void setUp() {
-        caseNoteService = new CaseNoteService(repository, amendmentRepository, caseNoteTypeRepository, parentCaseNoteTypeRepository, securityUserContext, externalApiService, caseNoteTypeMerger, telemetryClient);
+        caseNoteService = new CaseNoteService(repository, amendmentRepository, caseNoteTypeRepository, parentCaseNoteTypeRepository, securityUserContext, externalApiService, caseNoteTypeMerger, telemetryClient, eventPublisher, caseNoteTypeIndex, new SimpleMeterRegistry(), changeRepository);
+        lenient().when(changeRepository.save(any())).thenReturn(OffenderCaseNoteChange.builder().id(1L).build());
     }
 
     @Test
     public void createCaseNote_callElite2() {
-        when(caseNoteTypeRepository.findSensitiveCaseNoteTypeByParentType_TypeAndType(anyString(), anyString())).thenReturn(null);
+        when(caseNoteTypeIndex.findSubType(anyString(), anyString())).thenReturn(null);
 
         final var nomisCaseNote = createNomisCaseNote();
         when(externalApiService.createCaseNote(anyString(), any())).thenReturn(nomisCaseNote);
@@ -79,12 +93,12 @@ public class CaseNoteServiceTest {
         assertThat(caseNote.getLocationId()).isEqualTo("agency");
         assertThat(caseNote.getCaseNoteId()).isEqualTo("12345");
         assertThat(caseNote.getEventId()).isEqualTo(12345);
-        verify(caseNoteTypeRepository).findSensitiveCaseNoteTypeByParentType_TypeAndType("type", "SUB");
+        verify(caseNoteTypeIndex).findSubType("type", "SUB");
     }
 
     @Test
     public void createCaseNote_noAddRole() {
-        when(caseNoteTypeRepository.findSensitiveCaseNoteTypeByParentType_TypeAndType(anyString(), anyString())).thenReturn(SensitiveCaseNoteType.builder().build());
+        when(caseNoteTypeIndex.findSubType(anyString(), anyString())).thenReturn(new SubType(1L, "type", "SUB", true, true));
         when(securityUserContext.isOverrideRole(anyString(), anyString())).thenReturn(Boolean.FALSE);
 
         assertThatThrownBy(() -> caseNoteService.createCaseNote("12345", NewCaseNote.builder().type("type").subType("SUB").build())).isInstanceOf(AccessDeniedException.class);
@@ -92,10 +106,20 @@ public class CaseNoteServiceTest {
         verify(securityUserContext).isOverrideRole("POM", "ADD_SENSITIVE_CASE_NOTES");
     }
 
+    @Test
+    public void createCaseNote_inactiveType() {
+        when(caseNoteTypeIndex.findSubType(anyString(), anyString())).thenReturn(new SubType(1L, "type", "SUB", true, false));
+        when(securityUserContext.isOverrideRole(anyString(), anyString())).thenReturn(Boolean.TRUE);
+
+        assertThatThrownBy(() -> caseNoteService.createCaseNote("12345", NewCaseNote.builder().type("type").subType("SUB").build()))
+                .isInstanceOf(ValidationException.class).hasMessage("Case Note Type type/SUB is not active");
+    }
+
     @Test
     public void createCaseNote() {
         final var noteType = SensitiveCaseNoteType.builder().type("sometype").parentType(ParentNoteType.builder().build()).build();
-        when(caseNoteTypeRepository.findSensitiveCaseNoteTypeByParentType_TypeAndType(anyString(), anyString())).thenReturn(noteType);
+        when(caseNoteTypeIndex.findSubType(anyString(), anyString())).thenReturn(new SubType(1L, "type", "sub", true, true));
+        when(caseNoteTypeRepository.getOne(anyLong())).thenReturn(noteType);
         when(securityUserContext.isOverrideRole(anyString(), anyString())).thenReturn(Boolean.TRUE);
         when(securityUserContext.getCurrentUser()).thenReturn(new UserIdUser("someuser", "userId"));
         final var offenderCaseNote = createOffenderCaseNote(noteType);
@@ -191,20 +215,6 @@ public class CaseNoteServiceTest {
                 .isInstanceOf(EntityNotFoundException.class).hasMessage("Resource with id [12345] not found.");
     }
 
-    @Test
-    public void deleteOffenderTest() {
-        when(repository.deleteOffenderCaseNoteByOffenderIdentifier(eq("A1234AC"))).thenReturn(3);
-        final var offendersDeleted = caseNoteService.deleteCaseNotesForOffender("A1234AC");
-        assertThat(offendersDeleted).isEqualTo(3);
-    }
-
-    @Test
-    public void deleteOffenderTest_telemetry() {
-        when(repository.deleteOffenderCaseNoteByOffenderIdentifier(eq("A1234AC"))).thenReturn(3);
-        caseNoteService.deleteCaseNotesForOffender("A1234AC");
-        verify(telemetryClient).trackEvent("OffenderDelete", Map.of("offenderNo", "A1234AC", "count", "3"), null);
-    }
-
     @Test
     public void amendCaseNote() {
         final var noteType = SensitiveCaseNoteType.builder().type("sometype").parentType(ParentNoteType.builder().build()).build();
@@ -251,6 +261,19 @@ public class CaseNoteServiceTest {
         verify(telemetryClient).trackEvent("SecureCaseNoteSoftDelete", Map.of("userName", "user", "offenderId", "A1234AC", "case note id", offenderCaseNoteId.toString()), null);
     }
 
+    @Test
+    public void softDeleteCaseNote_publishesChange() {
+        final var noteType = SensitiveCaseNoteType.builder().type("sometype").parentType(ParentNoteType.builder().build()).build();
+        final var offenderCaseNote = createOffenderCaseNote(noteType);
+        when(repository.findById(any())).thenReturn(Optional.of(offenderCaseNote));
+        when(securityUserContext.getCurrentUser()).thenReturn(new UserIdUser("user", "userId"));
+
+        caseNoteService.softDeleteCaseNote("A1234AC", offenderCaseNote.getId().toString());
+
+        verify(changeRepository).save(argThat(c -> c.getCaseNoteId().equals(offenderCaseNote.getId()) && c.getChangeType() == ChangeType.DELETED));
+        verify(eventPublisher).publishEvent(new CaseNoteChange(1L, ChangeType.DELETED, offenderCaseNote));
+    }
+
     @Test
     public void softDeleteCaseNoteEntityNotFoundExceptionThrownWhenCaseNoteNotFound() {
 
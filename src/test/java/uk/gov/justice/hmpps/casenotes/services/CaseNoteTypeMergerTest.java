@@ -6,10 +6,11 @@ import uk.gov.justice.hmpps.casenotes.dto.CaseNoteType;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class CaseNoteTypeMergerTest {
 
-    private final CaseNoteTypeMerger merger = new CaseNoteTypeMerger();
+    private final CaseNoteTypeMerger merger = new CaseNoteTypeMerger(10);
 
     @Test
     public void testSimpleMerge() {
@@ -88,6 +89,58 @@ public class CaseNoteTypeMergerTest {
         );
     }
 
+    @Test
+    public void testInputsNotChanged() {
+        final var list1 = List.of(
+                createBuilder("DRR", "Drug Rehabilitation Requirement").activeFlag("N").subCodes(
+                        List.of(create("DCOUN", "Drug Counselling Session"))
+                ).build()
+        );
+
+        merger.mergeAndSortList(list1, List.of());
+
+        assertThat(list1.get(0).getSubCodes()).containsExactly(create("DCOUN", "Drug Counselling Session"));
+    }
+
+    @Test
+    public void testSameInputsShareResult() {
+        final var list2 = List.of(createBuilder("POM", "POM Stuff").subCodes(List.of(create("GEN", "General"))).build());
+
+        final var first = merger.mergeAndSortList(List.of(create("OBS", "Observation")), list2);
+        final var second = merger.mergeAndSortList(List.of(create("OBS", "Observation")), list2);
+        final var different = merger.mergeAndSortList(List.of(create("KA", "Key worker")), list2);
+
+        assertThat(second).isSameAs(first);
+        assertThat(different).isNotSameAs(first);
+    }
+
+    @Test
+    public void testSharedResultCannotBeChanged() {
+        final var result = merger.mergeAndSortList(List.of(create("OBS", "Observation")),
+                List.of(createBuilder("POM", "POM Stuff").subCodes(List.of(create("GEN", "General"))).build()));
+
+        assertThatThrownBy(() -> result.add(create("KA", "Key worker"))).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> result.get(1).getSubCodes().clear()).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> result.get(1).setDescription("Changed")).isInstanceOf(UnsupportedOperationException.class);
+        assertThatThrownBy(() -> result.get(1).getSubCodes().get(0).setActiveFlag("N")).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void testReloadedLocalTypesMergedAgain() {
+        final var nomis = List.of(create("OBS", "Observation"));
+
+        final var first = merger.mergeAndSortList(nomis, List.of(create("POM", "POM Stuff")));
+        final var reloaded = merger.mergeAndSortList(nomis, List.of(create("POM", "POM Things")));
+
+        assertThat(reloaded).isNotSameAs(first).contains(create("POM", "POM Things"));
+    }
+
+    @Test
+    public void testNullLists() {
+        assertThat(merger.mergeAndSortList(null, List.of(create("OBS", "Observation")))).containsExactly(create("OBS", "Observation"));
+        assertThat(merger.mergeAndSortList(List.of(create("OBS", "Observation")), null)).containsExactly(create("OBS", "Observation"));
+    }
+
     private CaseNoteType.CaseNoteTypeBuilder createBuilder(final String obs, final String observation) {
         return CaseNoteType.builder().code(obs).description(observation);
     }
@@ -0,0 +1,121 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import com.amazonaws.services.sqs.AmazonSQS
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult
+import com.amazonaws.services.sqs.model.GetQueueUrlResult
+import com.amazonaws.services.sqs.model.Message
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest
+import com.amazonaws.services.sqs.model.ReceiveMessageResult
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest
+import com.amazonaws.services.sqs.model.SendMessageBatchResult
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.check
+import com.nhaarman.mockitokotlin2.eq
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.verify
+import com.nhaarman.mockitokotlin2.whenever
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import javax.validation.ValidationException
+
+class DlqRedriveServiceTest {
+  private val awsSqsClient: AmazonSQS = mock()
+  private val awsSqsDlqClient: AmazonSQS = mock()
+  private val meterRegistry = SimpleMeterRegistry()
+  private val service = DlqRedriveService(awsSqsClient, awsSqsDlqClient, "queue", "dlq", meterRegistry)
+
+  @BeforeEach
+  fun setUp() {
+    whenever(awsSqsClient.getQueueUrl("queue")).thenReturn(GetQueueUrlResult().withQueueUrl("queueUrl"))
+    whenever(awsSqsDlqClient.getQueueUrl("dlq")).thenReturn(GetQueueUrlResult().withQueueUrl("dlqUrl"))
+    whenever(awsSqsClient.sendMessageBatch(any<SendMessageBatchRequest>())).thenAnswer {
+      val entries = it.getArgument<SendMessageBatchRequest>(0).entries
+      SendMessageBatchResult().withSuccessful(entries.map { e -> SendMessageBatchResultEntry().withId(e.id) })
+    }
+    whenever(awsSqsDlqClient.deleteMessageBatch(any(), any<List<DeleteMessageBatchRequestEntry>>())).thenReturn(DeleteMessageBatchResult())
+  }
+
+  @Test
+  fun `moves messages until the dead letter queue is empty`() {
+    whenever(awsSqsDlqClient.receiveMessage(any<ReceiveMessageRequest>())).thenReturn(
+      ReceiveMessageResult().withMessages(message("1"), message("2")),
+      ReceiveMessageResult()
+    )
+
+    val result = service.redrive(100, 1000)
+
+    assertThat(result.messagesMoved).isEqualTo(2)
+    assertThat(result.messagesFailed).isEqualTo(0)
+    verify(awsSqsClient).sendMessageBatch(
+      check<SendMessageBatchRequest> { request ->
+        assertThat(request.queueUrl).isEqualTo("queueUrl")
+        assertThat(request.entries).extracting<String> { it.messageBody }.containsExactly("body-1", "body-2")
+      }
+    )
+    verify(awsSqsDlqClient).deleteMessageBatch(
+      eq("dlqUrl"),
+      check<List<DeleteMessageBatchRequestEntry>> { entries ->
+        assertThat(entries).extracting<String> { it.receiptHandle }.containsExactly("receipt-1", "receipt-2")
+      }
+    )
+  }
+
+  @Test
+  fun `stops at the maximum number of messages`() {
+    whenever(awsSqsDlqClient.receiveMessage(any<ReceiveMessageRequest>())).thenReturn(ReceiveMessageResult().withMessages(message("1")))
+
+    val result = service.redrive(1, 1000)
+
+    assertThat(result.messagesMoved).isEqualTo(1)
+    verify(awsSqsDlqClient).receiveMessage(check<ReceiveMessageRequest> { assertThat(it.maxNumberOfMessages).isEqualTo(1) })
+  }
+
+  @Test
+  fun `leaves messages that could not be sent on the dead letter queue`() {
+    whenever(awsSqsDlqClient.receiveMessage(any<ReceiveMessageRequest>())).thenReturn(
+      ReceiveMessageResult().withMessages(message("1")),
+      ReceiveMessageResult()
+    )
+    whenever(awsSqsClient.sendMessageBatch(any<SendMessageBatchRequest>())).thenReturn(
+      SendMessageBatchResult().withFailed(BatchResultErrorEntry().withId("0").withCode("InternalError").withSenderFault(false))
+    )
+
+    val result = service.redrive(100, 1000)
+
+    assertThat(result.messagesMoved).isEqualTo(0)
+    assertThat(result.messagesFailed).isEqualTo(1)
+    verify(awsSqsDlqClient, never()).deleteMessageBatch(any(), any<List<DeleteMessageBatchRequestEntry>>())
+    assertThat(meterRegistry.get("case_notes.events.dlq.redriven").tag("result", "failed").counter().count()).isEqualTo(1.0)
+  }
+
+  @Test
+  fun `limits the rate messages are moved at`() {
+    whenever(awsSqsDlqClient.receiveMessage(any<ReceiveMessageRequest>())).thenReturn(
+      ReceiveMessageResult().withMessages((1..10).map { message(it.toString()) }),
+      ReceiveMessageResult()
+    )
+
+    val result = service.redrive(100, 20)
+
+    assertThat(result.messagesMoved).isEqualTo(10)
+    assertThat(result.elapsedMillis).isGreaterThanOrEqualTo(500)
+  }
+
+  @Test
+  fun `rejects more than a minute's work`() {
+    assertThatThrownBy { service.redrive(1201, 20) }
+      .isInstanceOf(ValidationException::class.java)
+      .hasMessageContaining("more than 60 seconds")
+
+    verify(awsSqsDlqClient, never()).receiveMessage(any<ReceiveMessageRequest>())
+  }
+
+  private fun message(id: String) = Message().withMessageId(id).withReceiptHandle("receipt-$id").withBody("body-$id")
+}
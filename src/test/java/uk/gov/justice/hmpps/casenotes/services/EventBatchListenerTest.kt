@@ -0,0 +1,194 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import com.amazonaws.services.sqs.AmazonSQS
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry
+import com.amazonaws.services.sqs.model.GetQueueUrlResult
+import com.amazonaws.services.sqs.model.Message
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest
+import com.amazonaws.services.sqs.model.ReceiveMessageResult
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.check
+import com.nhaarman.mockitokotlin2.eq
+import com.nhaarman.mockitokotlin2.inOrder
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
+import com.nhaarman.mockitokotlin2.whenever
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import uk.gov.justice.hmpps.casenotes.health.EventProcessingMetrics
+import java.time.Instant
+import java.util.concurrent.TimeUnit
+
+class EventBatchListenerTest {
+  private val awsSqsClient: AmazonSQS = mock()
+  private val offenderDeletionService: OffenderDeletionService = mock()
+  private val mergeOffenderService: MergeOffenderService = mock()
+  private val processedEventStore: ProcessedEventStore = mock()
+  private val meterRegistry = SimpleMeterRegistry()
+  private val partitionedExecutor = PartitionedExecutor(2)
+  private val eventListener = EventListener(offenderDeletionService, mergeOffenderService, OffenderEventParser(), processedEventStore, partitionedExecutor, meterRegistry, EventProcessingMetrics(meterRegistry))
+
+  private val listener = EventBatchListener(awsSqsClient, "queue", eventListener, partitionedExecutor, meterRegistry, 1, 10, 20)
+
+  @BeforeEach
+  fun setUp() {
+    whenever(awsSqsClient.getQueueUrl("queue")).thenReturn(GetQueueUrlResult().withQueueUrl("queueUrl"))
+    whenever(awsSqsClient.deleteMessageBatch(any(), any<List<DeleteMessageBatchRequestEntry>>())).thenAnswer {
+      val entries = it.getArgument<List<DeleteMessageBatchRequestEntry>>(1)
+      DeleteMessageBatchResult().withSuccessful(entries.map { e -> DeleteMessageBatchResultEntry().withId(e.id) })
+    }
+  }
+
+  @AfterEach
+  fun tearDown() {
+    partitionedExecutor.shutdown()
+  }
+
+  @Test
+  fun `receives a batch with long polling`() {
+    receive()
+
+    assertThat(listener.pollOnce()).isEqualTo(0)
+
+    verify(awsSqsClient).receiveMessage(
+      check<ReceiveMessageRequest> {
+        assertThat(it.queueUrl).isEqualTo("queueUrl")
+        assertThat(it.maxNumberOfMessages).isEqualTo(10)
+        assertThat(it.waitTimeSeconds).isEqualTo(20)
+        assertThat(it.attributeNames).containsExactly("SentTimestamp")
+      }
+    )
+    verify(awsSqsClient, never()).deleteMessageBatch(any(), any<List<DeleteMessageBatchRequestEntry>>())
+  }
+
+  @Test
+  fun `coalesces deletes for the same offender and acknowledges the batch in one call`() {
+    receive(
+      message("1", deleteEvent("A1234AA")),
+      message("2", deleteEvent("A1234AA")),
+      message("3", mergeEvent(100001)),
+      message("4", deleteEvent("A1234AB"))
+    )
+
+    assertThat(listener.pollOnce()).isEqualTo(4)
+
+    inOrder(offenderDeletionService, mergeOffenderService) {
+      verify(offenderDeletionService).deleteCaseNotesForOffender("A1234AA")
+      verify(mergeOffenderService).checkAndMerge(100001L, Instant.parse("2019-11-11T11:11:11.111111Z"))
+      verify(offenderDeletionService).deleteCaseNotesForOffender("A1234AB")
+    }
+    verify(offenderDeletionService, times(1)).deleteCaseNotesForOffender("A1234AA")
+    verify(awsSqsClient, times(1)).deleteMessageBatch(
+      eq("queueUrl"),
+      check<List<DeleteMessageBatchRequestEntry>> { entries ->
+        assertThat(entries).extracting<String> { it.receiptHandle }.containsExactlyInAnyOrder("receipt-1", "receipt-2", "receipt-3", "receipt-4")
+      }
+    )
+    assertThat(meterRegistry.get("case_notes.events.coalesced").counter().count()).isEqualTo(1.0)
+  }
+
+  @Test
+  fun `does not coalesce deletes with another event in between`() {
+    receive(
+      message("1", deleteEvent("A1234AA")),
+      message("2", mergeEvent(100001)),
+      message("3", deleteEvent("A1234AA"))
+    )
+
+    assertThat(listener.pollOnce()).isEqualTo(3)
+
+    verify(offenderDeletionService, times(2)).deleteCaseNotesForOffender("A1234AA")
+    assertThat(meterRegistry.get("case_notes.events.coalesced").counter().count()).isEqualTo(0.0)
+  }
+
+  @Test
+  fun `merges and deletes share a partition`() {
+    // a merge only knows its booking, so can't be keyed by the prisoners whose deletes it has to be ordered with
+    val merge = OffenderEvent("BOOKING_NUMBER-CHANGED", null, 100001L)
+    val delete = OffenderEvent("DATA_COMPLIANCE_DELETE-OFFENDER", "A1234AA", null)
+
+    assertThat(merge.partitionKey).isEqualTo(delete.partitionKey)
+  }
+
+  @Test
+  fun `rejects more messages per batch than SQS allows`() {
+    assertThatThrownBy { EventBatchListener(awsSqsClient, "queue", eventListener, partitionedExecutor, meterRegistry, 1, 11, 20) }
+      .isInstanceOf(IllegalArgumentException::class.java)
+      .hasMessageContaining("sqs.listener.batch.max-messages")
+  }
+
+  @Test
+  fun `records the lag from when each message was sent`() {
+    receive(message("1", deleteEvent("A1234AA")).addAttributesEntry("SentTimestamp", Instant.now().minusSeconds(30).toEpochMilli().toString()))
+
+    listener.pollOnce()
+
+    val lag = meterRegistry.get("case_notes.events.end_to_end_lag").tag("eventType", "DATA_COMPLIANCE_DELETE-OFFENDER").timer()
+    assertThat(lag.count()).isEqualTo(1)
+    assertThat(lag.totalTime(TimeUnit.SECONDS)).isBetween(30.0, 60.0)
+  }
+
+  @Test
+  fun `leaves a failed message and the ones after it on the queue`() {
+    whenever(offenderDeletionService.deleteCaseNotesForOffender("A1234AA")).thenThrow(RuntimeException("failed"))
+    receive(
+      message("1", deleteEvent("A1234AB")),
+      message("2", deleteEvent("A1234AA")),
+      message("3", deleteEvent("A1234AA")),
+      message("4", mergeEvent(100001))
+    )
+
+    assertThat(listener.pollOnce()).isEqualTo(1)
+
+    verify(awsSqsClient).deleteMessageBatch(
+      eq("queueUrl"),
+      check<List<DeleteMessageBatchRequestEntry>> { entries ->
+        assertThat(entries).extracting<String> { it.receiptHandle }.containsExactly("receipt-1")
+      }
+    )
+    verify(mergeOffenderService, never()).checkAndMerge(any(), any())
+  }
+
+  @Test
+  fun `leaves unparseable messages on the queue`() {
+    receive(message("1", "not json"), message("2", deleteEvent("A1234AB")))
+
+    assertThat(listener.pollOnce()).isEqualTo(1)
+
+    verify(offenderDeletionService).deleteCaseNotesForOffender("A1234AB")
+  }
+
+  @Test
+  fun `reports the number actually deleted`() {
+    whenever(awsSqsClient.deleteMessageBatch(any(), any<List<DeleteMessageBatchRequestEntry>>())).thenReturn(
+      DeleteMessageBatchResult()
+        .withSuccessful(DeleteMessageBatchResultEntry().withId("0"))
+        .withFailed(BatchResultErrorEntry().withId("1").withCode("ReceiptHandleIsInvalid").withSenderFault(true))
+    )
+    receive(message("1", deleteEvent("A1234AA")), message("2", deleteEvent("A1234AB")))
+
+    assertThat(listener.pollOnce()).isEqualTo(1)
+  }
+
+  private fun receive(vararg messages: Message) {
+    whenever(awsSqsClient.receiveMessage(any<ReceiveMessageRequest>())).thenReturn(ReceiveMessageResult().withMessages(*messages))
+  }
+
+  private fun message(id: String, body: String) = Message().withMessageId(id).withReceiptHandle("receipt-$id").withBody(body)
+
+  private fun deleteEvent(offenderNo: String) = event("DATA_COMPLIANCE_DELETE-OFFENDER", """{\"offenderIdDisplay\":\"$offenderNo\"}""")
+
+  private fun mergeEvent(bookingId: Long) = event("BOOKING_NUMBER-CHANGED", """{\"eventType\":\"BOOKING_NUMBER-CHANGED\",\"bookingId\":$bookingId}""")
+
+  private fun event(eventType: String, message: String) =
+    """{"Type":"Notification","Timestamp":"2019-11-11T11:11:11.111111Z","Message":"$message","MessageAttributes":{"eventType":{"Type":"String","Value":"$eventType"}}}"""
+}
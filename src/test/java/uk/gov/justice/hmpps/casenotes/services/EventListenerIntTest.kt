@@ -25,8 +25,7 @@ class EventListenerIntTest : IntegrationTest() {
     elite2Api.stubGetBookingIdentifiers(100001)
     eventListener.handleEvents("booking-number-changed.json".readFile())
 
-    verify(repository).updateOffenderIdentifier("A2345CD", "A5156DY")
-    verify(repository).updateOffenderIdentifier("A1234BC", "A5156DY")
+    verify(repository).updateOffenderIdentifiers(listOf("A2345CD", "A1234BC"), "A5156DY")
   }
 }
 
@@ -1,53 +1,114 @@
 package uk.gov.justice.hmpps.casenotes.services;
 
-import com.google.gson.GsonBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import uk.gov.justice.hmpps.casenotes.health.EventProcessingMetrics;
 import wiremock.org.apache.commons.io.IOUtils;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class EventListenerTest {
 
     @Mock
-    private CaseNoteService caseNoteService;
+    private OffenderDeletionService offenderDeletionService;
 
     @Mock
     private MergeOffenderService mergeOffenderService;
 
+    @Mock
+    private ProcessedEventStore processedEventStore;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private EventListener eventListener;
 
     @BeforeEach
     public void setup() {
-        eventListener = new EventListener(caseNoteService, mergeOffenderService, new GsonBuilder().create());
+        eventListener = new EventListener(offenderDeletionService, mergeOffenderService, new OffenderEventParser(), processedEventStore, new PartitionedExecutor(2), meterRegistry, new EventProcessingMetrics(meterRegistry));
     }
 
     @Test
     public void testDeleteEvent() throws IOException {
-        when(caseNoteService.deleteCaseNotesForOffender(eq("A1234AA"))).thenReturn(3);
+        when(offenderDeletionService.deleteCaseNotesForOffender(eq("A1234AA"))).thenReturn(3);
+
+        eventListener.handleEvents(getJson("offender-deletion-request.json"));
+
+        verify(offenderDeletionService).deleteCaseNotesForOffender(eq("A1234AA"));
+        verify(processedEventStore).markProcessed("message1", "DATA_COMPLIANCE_DELETE-OFFENDER");
+    }
+
+    @Test
+    public void testDuplicateEventSkipped() throws IOException {
+        when(processedEventStore.isProcessed("message1")).thenReturn(true);
 
         eventListener.handleEvents(getJson("offender-deletion-request.json"));
 
-        verify(caseNoteService).deleteCaseNotesForOffender(eq("A1234AA"));
+        verify(offenderDeletionService, never()).deleteCaseNotesForOffender(anyString());
+        verify(processedEventStore, never()).markProcessed(anyString(), anyString());
+        assertThat(meterRegistry.get("case_notes.events.duplicates").tag("eventType", "DATA_COMPLIANCE_DELETE-OFFENDER").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testFailedEventNotMarkedProcessed() throws IOException {
+        when(offenderDeletionService.deleteCaseNotesForOffender(eq("A1234AA"))).thenThrow(new RuntimeException("failed"));
+
+        assertThatThrownBy(() -> eventListener.handleEvents(getJson("offender-deletion-request.json"))).hasMessage("failed");
+
+        verify(processedEventStore, never()).markProcessed(anyString(), anyString());
+        assertThat(meterRegistry.get("case_notes.events.errors").tag("eventType", "DATA_COMPLIANCE_DELETE-OFFENDER").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("case_notes.events.processing").tag("outcome", "error").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testProcessingTimedByEventType() throws IOException {
+        eventListener.handleEvents(getJson("booking-number-changed.json"));
+
+        assertThat(meterRegistry.get("case_notes.events.processing").tags("eventType", "BOOKING_NUMBER-CHANGED", "outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("case_notes.events.end_to_end_lag").tag("eventType", "BOOKING_NUMBER-CHANGED").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testUnhandledEventSkipped() {
+        eventListener.handleEvents("{\"MessageId\":\"message3\",\"Message\":\"{}\",\"MessageAttributes\":{\"eventType\":{\"Type\":\"String\",\"Value\":\"OFFENDER-UPDATED\"}}}");
+
+        verifyNoInteractions(processedEventStore);
+        assertThat(meterRegistry.get("case_notes.events.skipped").tag("eventType", "OFFENDER-UPDATED").counter().count()).isEqualTo(1);
     }
 
 
     @Test
     public void testMergeEvent() throws IOException {
-        when(mergeOffenderService.checkAndMerge(eq(100001L))).thenReturn(2);
+        when(mergeOffenderService.checkAndMerge(eq(100001L), eq(Instant.parse("2019-11-11T11:11:11.111111Z")))).thenReturn(2);
+
+        eventListener.handleEvents(getJson("booking-number-changed.json"));
 
+        verify(mergeOffenderService).checkAndMerge(eq(100001L), eq(Instant.parse("2019-11-11T11:11:11.111111Z")));
+    }
+
+    @Test
+    public void testLagMeasuredFromPublishTimeWithoutSentTime() throws IOException {
         eventListener.handleEvents(getJson("booking-number-changed.json"));
 
-        verify(mergeOffenderService).checkAndMerge(eq(100001L));
+        final var lag = meterRegistry.get("case_notes.events.end_to_end_lag").tag("eventType", "BOOKING_NUMBER-CHANGED").timer();
+        assertThat(lag.count()).isEqualTo(1);
+        assertThat(lag.max(TimeUnit.DAYS)).isGreaterThan(365);
     }
 
     private String getJson(final String filename) throws IOException {
@@ -0,0 +1,33 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.timeout
+import com.nhaarman.mockitokotlin2.verify
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.mockito.Answers.RETURNS_DEEP_STUBS
+import uk.gov.justice.hmpps.casenotes.health.ReadinessGate
+import javax.persistence.EntityManagerFactory
+
+class JitWarmupTest {
+  private val readinessGate: ReadinessGate = mock()
+  private val entityManagerFactory: EntityManagerFactory = mock(defaultAnswer = RETURNS_DEEP_STUBS)
+  private val jitWarmup = JitWarmup(readinessGate, ObjectMapper().findAndRegisterModules(), entityManagerFactory, 20)
+
+  @Test
+  fun `warmup - runs the iterations`() {
+    val result = jitWarmup.warmup()
+
+    assertThat(result.iterations).isEqualTo(20)
+    assertThat(result.firstIterationsMicros).isPositive()
+  }
+
+  @Test
+  fun `start - holds readiness until finished`() {
+    jitWarmup.start()
+
+    verify(readinessGate).hold("jit warm up")
+    verify(readinessGate, timeout(5000)).release("jit warm up")
+  }
+}
@@ -3,20 +3,31 @@ package uk.gov.justice.hmpps.casenotes.services;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClientException;
+import reactor.core.publisher.Mono;
 import uk.gov.justice.hmpps.casenotes.dto.BookingIdentifier;
 import uk.gov.justice.hmpps.casenotes.dto.OffenderBooking;
+import uk.gov.justice.hmpps.casenotes.model.OffenderMergeHistory;
 import uk.gov.justice.hmpps.casenotes.repository.OffenderCaseNoteRepository;
+import uk.gov.justice.hmpps.casenotes.repository.OffenderMergeHistoryRepository;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -33,82 +44,119 @@ public class MergeOffenderServiceTest {
     @Mock
     private OffenderCaseNoteRepository repository;
 
+    @Mock
+    private OffenderMergeHistoryRepository mergeHistoryRepository;
+
     private MergeOffenderService service;
 
     @BeforeEach
     public void setUp() {
-        service = new MergeOffenderService(externalApiService, repository);
+        service = new MergeOffenderService(externalApiService, repository, mergeHistoryRepository, Duration.ofMinutes(1));
     }
 
     @Test
     public void testCheckForExistingCaseNotesThatNeedMerging() {
-        when(externalApiService.getMergedIdentifiersByBookingId(BOOKING_ID))
-                .thenReturn(List.of(
-                        BookingIdentifier.builder().type("MERGED").value(MERGED_OFFENDER_NO).build()
-                ));
-
-        when(externalApiService.getBooking(BOOKING_ID))
-                .thenReturn(OffenderBooking.builder()
-                        .bookingId(BOOKING_ID)
-                        .offenderNo(OFFENDER_NO)
-                        .build());
+        stubBooking();
+        stubMergedIdentifiers(MERGED_OFFENDER_NO);
 
         final var numRows = 5;
-        when(repository.updateOffenderIdentifier(MERGED_OFFENDER_NO, OFFENDER_NO))
-                .thenReturn(numRows);
+        when(repository.updateOffenderIdentifiers(List.of(MERGED_OFFENDER_NO), OFFENDER_NO)).thenReturn(numRows);
 
         final var rowsUpdated = service.checkAndMerge(BOOKING_ID);
 
         assertThat(rowsUpdated).isEqualTo(numRows);
         verify(externalApiService).getMergedIdentifiersByBookingId(BOOKING_ID);
         verify(externalApiService).getBooking(BOOKING_ID);
-        verify(repository).updateOffenderIdentifier(MERGED_OFFENDER_NO, OFFENDER_NO);
+        verify(repository).updateOffenderIdentifiers(List.of(MERGED_OFFENDER_NO), OFFENDER_NO);
     }
 
     @Test
-    public void testCountingOfMultipleRows() {
-        when(externalApiService.getMergedIdentifiersByBookingId(BOOKING_ID))
-                .thenReturn(List.of(
-                        BookingIdentifier.builder().type("MERGED").value(MERGED_OFFENDER_NO).build(),
-                        BookingIdentifier.builder().type("MERGED").value("C1234CC").build()
-                ));
+    public void testMultipleIdentifiersMovedInOneUpdate() {
+        stubBooking();
+        stubMergedIdentifiers(MERGED_OFFENDER_NO, "C1234CC", MERGED_OFFENDER_NO, OFFENDER_NO);
 
-        when(externalApiService.getBooking(BOOKING_ID))
-                .thenReturn(OffenderBooking.builder()
-                        .bookingId(BOOKING_ID)
-                        .offenderNo(OFFENDER_NO)
-                        .build());
-
-        when(repository.updateOffenderIdentifier(MERGED_OFFENDER_NO, OFFENDER_NO)).thenReturn(2);
-        when(repository.updateOffenderIdentifier("C1234CC", OFFENDER_NO)).thenReturn(3);
+        when(repository.updateOffenderIdentifiers(List.of(MERGED_OFFENDER_NO, "C1234CC"), OFFENDER_NO)).thenReturn(5);
 
         final var rowsUpdated = service.checkAndMerge(BOOKING_ID);
 
         assertThat(rowsUpdated).isEqualTo(5);
-        verify(externalApiService).getMergedIdentifiersByBookingId(BOOKING_ID);
-        verify(externalApiService).getBooking(BOOKING_ID);
-        verify(repository).updateOffenderIdentifier(MERGED_OFFENDER_NO, OFFENDER_NO);
-        verify(repository).updateOffenderIdentifier("C1234CC", OFFENDER_NO);
+        verify(repository, times(1)).updateOffenderIdentifiers(List.of(MERGED_OFFENDER_NO, "C1234CC"), OFFENDER_NO);
+    }
+
+    @Test
+    public void testMergeHistoryRecorded() {
+        stubBooking();
+        stubMergedIdentifiers(MERGED_OFFENDER_NO, "C1234CC");
+        when(repository.updateOffenderIdentifiers(List.of(MERGED_OFFENDER_NO, "C1234CC"), OFFENDER_NO)).thenReturn(5);
+
+        service.checkAndMerge(BOOKING_ID);
+
+        final var history = ArgumentCaptor.forClass(OffenderMergeHistory.class);
+        verify(mergeHistoryRepository).save(history.capture());
+        assertThat(history.getValue()).extracting("bookingId", "offenderIdentifier", "mergedIdentifiers", "rowsMerged")
+                .containsExactly(BOOKING_ID, OFFENDER_NO, "B1234BB,C1234CC", 5);
     }
 
     @Test
     public void testCheckForExistingCaseNotesThatNeedMergingNoMergeFound() {
-        when(externalApiService.getMergedIdentifiersByBookingId(BOOKING_ID))
-                .thenReturn(List.of());
+        stubBooking();
+        when(externalApiService.getMergedIdentifiersByBookingId(BOOKING_ID)).thenReturn(Mono.just(List.of()));
 
         final var rowsUpdated = service.checkAndMerge(BOOKING_ID);
 
         assertThat(rowsUpdated).isEqualTo(0);
         verify(externalApiService).getMergedIdentifiersByBookingId(BOOKING_ID);
+        verify(repository, never()).updateOffenderIdentifiers(any(), any());
+        verify(mergeHistoryRepository, never()).save(any());
     }
 
     @Test
     public void testCheckForExistingCaseNotesThatNeedMergingNoBookingFound() {
         when(externalApiService.getBooking(BOOKING_ID))
-                .thenThrow(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", new HttpHeaders(), null, null));
+                .thenReturn(Mono.error(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", new HttpHeaders(), null, null)));
+        when(externalApiService.getMergedIdentifiersByBookingId(BOOKING_ID)).thenReturn(Mono.just(List.of()));
 
         assertThatThrownBy(() -> service.checkAndMerge(BOOKING_ID))
                 .isInstanceOf(RestClientException.class);
     }
 
+    @Test
+    public void testDuplicateEventCoalesced() {
+        stubBooking();
+        stubMergedIdentifiers(MERGED_OFFENDER_NO);
+        final var eventTime = Instant.now().minusSeconds(5);
+
+        service.checkAndMerge(BOOKING_ID, eventTime);
+        final var rowsUpdated = service.checkAndMerge(BOOKING_ID, eventTime);
+
+        assertThat(rowsUpdated).isEqualTo(0);
+        verify(externalApiService, times(1)).getBooking(BOOKING_ID);
+        verify(repository, times(1)).updateOffenderIdentifiers(List.of(MERGED_OFFENDER_NO), OFFENDER_NO);
+    }
+
+    @Test
+    public void testEventAfterLastMergeNotCoalesced() {
+        stubBooking();
+        stubMergedIdentifiers(MERGED_OFFENDER_NO);
+
+        service.checkAndMerge(BOOKING_ID, Instant.now().minusSeconds(5));
+        service.checkAndMerge(BOOKING_ID, Instant.now().plusSeconds(1));
+
+        verify(externalApiService, times(2)).getBooking(BOOKING_ID);
+    }
+
+    private void stubBooking() {
+        when(externalApiService.getBooking(BOOKING_ID))
+                .thenReturn(Mono.just(OffenderBooking.builder()
+                        .bookingId(BOOKING_ID)
+                        .offenderNo(OFFENDER_NO)
+                        .build()));
+    }
+
+    private void stubMergedIdentifiers(final String... identifiers) {
+        when(externalApiService.getMergedIdentifiersByBookingId(BOOKING_ID))
+                .thenReturn(Mono.just(Arrays.stream(identifiers)
+                        .map(id -> BookingIdentifier.builder().type("MERGED").value(id).build())
+                        .collect(Collectors.toList())));
+    }
 }
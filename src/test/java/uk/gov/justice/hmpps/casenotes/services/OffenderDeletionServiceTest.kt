@@ -0,0 +1,130 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import com.microsoft.applicationinsights.TelemetryClient
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.eq
+import com.nhaarman.mockitokotlin2.isNull
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
+import com.nhaarman.mockitokotlin2.whenever
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.springframework.dao.DataIntegrityViolationException
+import org.springframework.transaction.PlatformTransactionManager
+import uk.gov.justice.hmpps.casenotes.model.OffenderDeletion
+import uk.gov.justice.hmpps.casenotes.model.OffenderDeletion.Status.COMPLETED
+import uk.gov.justice.hmpps.casenotes.model.OffenderDeletion.Status.FAILED
+import uk.gov.justice.hmpps.casenotes.model.OffenderDeletion.Status.RUNNING
+import uk.gov.justice.hmpps.casenotes.repository.OffenderCaseNoteRepository
+import uk.gov.justice.hmpps.casenotes.repository.OffenderDeletionRepository
+import java.time.Duration
+import java.util.Optional
+import java.util.UUID
+
+class OffenderDeletionServiceTest {
+  private val repository: OffenderCaseNoteRepository = mock()
+  private val deletionRepository: OffenderDeletionRepository = mock()
+  private val transactionManager: PlatformTransactionManager = mock()
+  private val telemetryClient: TelemetryClient = mock()
+  private val meterRegistry = SimpleMeterRegistry()
+
+  private val service = OffenderDeletionService(repository, deletionRepository, transactionManager, telemetryClient, meterRegistry, 2, Duration.ofMinutes(5))
+
+  @BeforeEach
+  fun setUp() {
+    whenever(deletionRepository.save(any<OffenderDeletion>())).thenAnswer { it.getArgument<OffenderDeletion>(0).toBuilder().id(1L).build() }
+    whenever(deletionRepository.findById(1L)).thenReturn(Optional.of(deletion(caseNotesDeleted = 3)))
+    whenever(deletionRepository.checkpoint(eq(1L), any(), any(), any(), any())).thenReturn(1)
+  }
+
+  @Test
+  fun `deletes in chunks until a short chunk`() {
+    whenever(repository.deleteOffenderCaseNoteChunk("A1234AC", 2)).thenReturn(2, 1)
+    whenever(repository.deleteOffenderCaseNoteAmendmentChunk("A1234AC", 2)).thenReturn(1, 0)
+
+    assertThat(service.deleteCaseNotesForOffender("A1234AC")).isEqualTo(3)
+
+    verify(repository, times(2)).deleteOffenderCaseNoteChunk("A1234AC", 2)
+    verify(deletionRepository).checkpoint(eq(1L), any(), eq(2L), eq(1L), any())
+    verify(deletionRepository).checkpoint(eq(1L), any(), eq(1L), eq(0L), any())
+    verify(deletionRepository).finish(eq(1L), any(), eq(COMPLETED), any())
+    verify(transactionManager, times(2)).commit(isNull())
+  }
+
+  @Test
+  fun `records telemetry and timing`() {
+    whenever(repository.deleteOffenderCaseNoteChunk("A1234AC", 2)).thenReturn(1)
+
+    service.deleteCaseNotesForOffender("A1234AC")
+
+    verify(telemetryClient).trackEvent("OffenderDelete", mapOf("offenderNo" to "A1234AC", "count" to "3"), null)
+    assertThat(meterRegistry.get("case_notes.offender_deletion").tag("outcome", "completed").timer().count()).isEqualTo(1)
+    assertThat(meterRegistry.get("case_notes.offender_deletion.chunk").timer().count()).isEqualTo(1)
+    assertThat(meterRegistry.get("case_notes.offender_deletion.case_notes").summary().totalAmount()).isEqualTo(3.0)
+  }
+
+  @Test
+  fun `marks the deletion failed and rethrows`() {
+    whenever(repository.deleteOffenderCaseNoteChunk("A1234AC", 2)).thenThrow(RuntimeException("locked"))
+
+    assertThatThrownBy { service.deleteCaseNotesForOffender("A1234AC") }.hasMessage("locked")
+
+    verify(deletionRepository).finish(eq(1L), any(), eq(FAILED), any())
+    assertThat(meterRegistry.get("case_notes.offender_deletion").tag("outcome", "failed").timer().count()).isEqualTo(1)
+  }
+
+  @Test
+  fun `resumes an unfinished deletion`() {
+    whenever(deletionRepository.findFirstByOffenderIdentifierAndStatusNotOrderByCreateDateTimeDesc("A1234AC", COMPLETED))
+      .thenReturn(deletion(status = FAILED))
+    whenever(deletionRepository.claim(eq(1L), eq(RUNNING), eq(FAILED), any(), any(), any())).thenReturn(1)
+    whenever(repository.deleteOffenderCaseNoteChunk("A1234AC", 2)).thenReturn(0)
+
+    service.deleteCaseNotesForOffender("A1234AC")
+
+    verify(deletionRepository, never()).save(any<OffenderDeletion>())
+    verify(deletionRepository).finish(eq(1L), any(), eq(COMPLETED), any())
+  }
+
+  @Test
+  fun `leaves a deletion running elsewhere alone`() {
+    whenever(deletionRepository.findFirstByOffenderIdentifierAndStatusNotOrderByCreateDateTimeDesc("A1234AC", COMPLETED))
+      .thenReturn(deletion(status = RUNNING))
+    whenever(deletionRepository.claim(eq(1L), eq(RUNNING), eq(FAILED), any(), any(), any())).thenReturn(0)
+
+    assertThat(service.deleteCaseNotesForOffender("A1234AC")).isEqualTo(0)
+
+    verify(repository, never()).deleteOffenderCaseNoteChunk(any(), any())
+  }
+
+  @Test
+  fun `claims the deletion started by a concurrent request`() {
+    whenever(deletionRepository.save(any<OffenderDeletion>())).thenThrow(DataIntegrityViolationException("duplicate"))
+    whenever(deletionRepository.findFirstByOffenderIdentifierAndStatusNotOrderByCreateDateTimeDesc("A1234AC", COMPLETED))
+      .thenReturn(null, deletion(status = RUNNING))
+    whenever(deletionRepository.claim(eq(1L), eq(RUNNING), eq(FAILED), any(), any(), any())).thenReturn(0)
+
+    assertThat(service.deleteCaseNotesForOffender("A1234AC")).isEqualTo(0)
+
+    verify(repository, never()).deleteOffenderCaseNoteChunk(any(), any())
+  }
+
+  @Test
+  fun `stops when claimed by another run`() {
+    whenever(repository.deleteOffenderCaseNoteChunk("A1234AC", 2)).thenReturn(2)
+    whenever(deletionRepository.checkpoint(eq(1L), any(), any(), any(), any())).thenReturn(0)
+
+    service.deleteCaseNotesForOffender("A1234AC")
+
+    verify(repository, times(1)).deleteOffenderCaseNoteChunk("A1234AC", 2)
+    verify(deletionRepository, never()).finish(any(), any(), any(), any())
+  }
+
+  private fun deletion(status: OffenderDeletion.Status = RUNNING, caseNotesDeleted: Long = 0) =
+    OffenderDeletion.builder().id(1L).offenderIdentifier("A1234AC").status(status).runId(UUID.randomUUID()).caseNotesDeleted(caseNotesDeleted).build()
+}
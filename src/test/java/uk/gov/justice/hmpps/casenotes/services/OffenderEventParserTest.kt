@@ -0,0 +1,51 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.Test
+import java.time.Instant
+
+class OffenderEventParserTest {
+  private val parser = OffenderEventParser()
+
+  @Test
+  fun `parses a compliance delete`() {
+    val parsed = parser.parse("offender-deletion-request.json".readFile())
+
+    assertThat(parsed).isEqualTo(OffenderEvent("DATA_COMPLIANCE_DELETE-OFFENDER", "A1234AA", null, Instant.parse("2019-11-11T11:11:11.111111Z"), "message1"))
+  }
+
+  @Test
+  fun `parses a booking number change`() {
+    val parsed = parser.parse("booking-number-changed.json".readFile())
+
+    assertThat(parsed).isEqualTo(OffenderEvent("BOOKING_NUMBER-CHANGED", null, 100001, Instant.parse("2019-11-11T11:11:11.111111Z"), "message2"))
+  }
+
+  @Test
+  fun `reads the event type wherever the attributes appear`() {
+    val parsed = parser.parse(
+      """{"MessageAttributes":{"contentType":{"Type":"String","Value":"text/plain"},"eventType":{"Type":"String","Value":"DATA_COMPLIANCE_DELETE-OFFENDER"}},
+        |"Message":"{\"offenderIdDisplay\":\"A1234AB\",\"nested\":{\"offenderIdDisplay\":\"ignored\"}}"}""".trimMargin()
+    )
+
+    assertThat(parsed).isEqualTo(OffenderEvent("DATA_COMPLIANCE_DELETE-OFFENDER", "A1234AB", null))
+  }
+
+  @Test
+  fun `does not decode the message of unhandled events`() {
+    val parsed = parser.parse(
+      """{"Message":"not json","MessageAttributes":{"eventType":{"Type":"String","Value":"OFFENDER-UPDATED"}}}"""
+    )
+
+    assertThat(parsed).isEqualTo(OffenderEvent("OFFENDER-UPDATED", null, null))
+  }
+
+  @Test
+  fun `rejects a notification without an event type`() {
+    assertThatThrownBy { parser.parse("""{"Message":"{}","MessageAttributes":{}}""") }
+      .isInstanceOf(IllegalArgumentException::class.java)
+  }
+}
+
+private fun String.readFile(): String = OffenderEventParserTest::class.java.getResource(this).readText()
@@ -0,0 +1,68 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import java.util.Collections
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class PartitionedExecutorTest {
+  private val executor = PartitionedExecutor(4)
+
+  @AfterEach
+  fun tearDown() {
+    executor.shutdown()
+  }
+
+  @Test
+  fun `returns the result of the task`() {
+    assertThat(executor.execute("A1234AA") { 3 }).isEqualTo(3)
+  }
+
+  @Test
+  fun `rethrows the task's exception`() {
+    assertThatThrownBy { executor.execute<Unit>("A1234AA") { throw IllegalStateException("failed") } }
+      .isInstanceOf(IllegalStateException::class.java)
+      .hasMessage("failed")
+  }
+
+  @Test
+  fun `work for the same key runs in order`() {
+    val started = CountDownLatch(1)
+    val release = CountDownLatch(1)
+    val order = Collections.synchronizedList(mutableListOf<String>())
+
+    val first = CompletableFuture.runAsync {
+      executor.execute("A1234AA") {
+        started.countDown()
+        release.await(5, TimeUnit.SECONDS)
+        order.add("first")
+      }
+    }
+    started.await(5, TimeUnit.SECONDS)
+    val second = CompletableFuture.runAsync { executor.execute("A1234AA") { order.add("second") } }
+    Thread.sleep(100)
+    assertThat(order).isEmpty()
+
+    release.countDown()
+    CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS)
+    assertThat(order).containsExactly("first", "second")
+  }
+
+  @Test
+  fun `work for other keys is not held up`() {
+    val release = CountDownLatch(1)
+    val keys = (1..100).map { "A${it}AA" }
+    val blockedKey = keys[0]
+    val blocked = CompletableFuture.runAsync { executor.execute(blockedKey) { release.await(5, TimeUnit.SECONDS) } }
+
+    val otherKey = keys.first { Math.floorMod(it.hashCode(), 4) != Math.floorMod(blockedKey.hashCode(), 4) }
+    assertThat(executor.execute(otherKey) { "done" }).isEqualTo("done")
+
+    release.countDown()
+    blocked.get(5, TimeUnit.SECONDS)
+  }
+}
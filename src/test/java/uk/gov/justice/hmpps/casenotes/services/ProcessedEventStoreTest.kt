@@ -0,0 +1,82 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.check
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
+import com.nhaarman.mockitokotlin2.whenever
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.within
+import org.junit.jupiter.api.Test
+import uk.gov.justice.hmpps.casenotes.model.ProcessedEvent
+import uk.gov.justice.hmpps.casenotes.repository.ProcessedEventRepository
+import java.time.Duration
+import java.time.LocalDateTime
+import java.time.temporal.ChronoUnit
+
+class ProcessedEventStoreTest {
+  private val repository: ProcessedEventRepository = mock()
+  private val meterRegistry = SimpleMeterRegistry()
+  private val store = ProcessedEventStore(repository, meterRegistry, 2, Duration.ofDays(14))
+
+  @Test
+  fun `unknown message is not processed`() {
+    assertThat(store.isProcessed("message1")).isFalse
+
+    assertThat(lookups("miss")).isEqualTo(1.0)
+  }
+
+  @Test
+  fun `processed message is found without a database lookup`() {
+    store.markProcessed("message1", "BOOKING_NUMBER-CHANGED")
+
+    assertThat(store.isProcessed("message1")).isTrue
+
+    verify(repository).save(
+      check<ProcessedEvent> {
+        assertThat(it.messageId).isEqualTo("message1")
+        assertThat(it.eventType).isEqualTo("BOOKING_NUMBER-CHANGED")
+      }
+    )
+    verify(repository, times(0)).existsById(any())
+    assertThat(lookups("cache")).isEqualTo(1.0)
+  }
+
+  @Test
+  fun `message processed elsewhere is found in the database and then cached`() {
+    whenever(repository.existsById("message1")).thenReturn(true)
+
+    assertThat(store.isProcessed("message1")).isTrue
+    assertThat(store.isProcessed("message1")).isTrue
+
+    verify(repository, times(1)).existsById("message1")
+    assertThat(lookups("database")).isEqualTo(1.0)
+    assertThat(lookups("cache")).isEqualTo(1.0)
+  }
+
+  @Test
+  fun `least recently used ids are evicted from memory`() {
+    store.markProcessed("message1", "BOOKING_NUMBER-CHANGED")
+    store.markProcessed("message2", "BOOKING_NUMBER-CHANGED")
+    store.markProcessed("message3", "BOOKING_NUMBER-CHANGED")
+
+    store.isProcessed("message1")
+
+    verify(repository).existsById("message1")
+  }
+
+  @Test
+  fun `purges ids older than the retention period`() {
+    store.purgeExpired()
+
+    verify(repository).deleteProcessedBefore(
+      check {
+        assertThat(it).isCloseTo(LocalDateTime.now().minusDays(14), within(1, ChronoUnit.MINUTES))
+      }
+    )
+  }
+
+  private fun lookups(result: String) = meterRegistry.get("case_notes.events.dedupe.lookups").tag("result", result).counter().count()
+}
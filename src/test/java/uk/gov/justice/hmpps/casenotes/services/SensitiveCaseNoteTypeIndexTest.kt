@@ -0,0 +1,95 @@
+package uk.gov.justice.hmpps.casenotes.services
+
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
+import com.nhaarman.mockitokotlin2.whenever
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.springframework.transaction.PlatformTransactionManager
+import uk.gov.justice.hmpps.casenotes.model.ParentNoteType
+import uk.gov.justice.hmpps.casenotes.model.SensitiveCaseNoteType
+import uk.gov.justice.hmpps.casenotes.repository.ParentCaseNoteTypeRepository
+import uk.gov.justice.hmpps.casenotes.services.SensitiveCaseNoteTypeIndex.SubType
+
+class SensitiveCaseNoteTypeIndexTest {
+  private val repository: ParentCaseNoteTypeRepository = mock()
+  private val transactionManager: PlatformTransactionManager = mock()
+  private val index = SensitiveCaseNoteTypeIndex(repository, transactionManager)
+
+  @BeforeEach
+  fun setUp() {
+    whenever(repository.findAllWithSubTypes()).thenReturn(
+      listOf(
+        parentType("POM", true, subType(1, "GEN", true), subType(2, "OLD", false)),
+        parentType("OLDPOM", false, subType(3, "GEN", true))
+      )
+    )
+  }
+
+  @Test
+  fun `finds sub types by parent and sub type`() {
+    assertThat(index.findSubType("POM", "GEN")).isEqualTo(SubType(1, "POM", "GEN", isParentActive = true, isActive = true))
+    assertThat(index.findSubType("OLDPOM", "GEN")).isEqualTo(SubType(3, "OLDPOM", "GEN", isParentActive = false, isActive = true))
+    assertThat(index.findSubType("POM", "OTHER")).isNull()
+    assertThat(index.findSubType("OTHER", "GEN")).isNull()
+  }
+
+  @Test
+  fun `loads the types once`() {
+    index.findSubType("POM", "GEN")
+    index.getCaseNoteTypes(true)
+    index.getCaseNoteTypes(false)
+
+    verify(repository, times(1)).findAllWithSubTypes()
+  }
+
+  @Test
+  fun `all types includes the inactive types`() {
+    val types = index.getCaseNoteTypes(true)
+
+    assertThat(types).extracting<String> { it.code }.containsExactly("POM", "OLDPOM")
+    assertThat(types[0].subCodes).extracting<String> { it.code }.containsExactly("GEN", "OLD")
+    assertThat(types[0].subCodes).extracting<String> { it.activeFlag }.containsExactly("Y", "N")
+    assertThat(types[1].activeFlag).isEqualTo("N")
+    assertThat(types[0].source).isEqualTo("OCNS")
+  }
+
+  @Test
+  fun `active types excludes inactive parent and sub types`() {
+    val types = index.getCaseNoteTypes(false)
+
+    assertThat(types).extracting<String> { it.code }.containsExactly("POM")
+    assertThat(types[0].subCodes).extracting<String> { it.code }.containsExactly("GEN")
+  }
+
+  @Test
+  fun `returns the same types until reloaded`() {
+    val types = index.getCaseNoteTypes(true)
+
+    assertThat(index.getCaseNoteTypes(true)).isSameAs(types)
+    index.reload()
+    assertThat(index.getCaseNoteTypes(true)).isNotSameAs(types).isEqualTo(types)
+  }
+
+  @Test
+  fun `a change replaces the snapshot`() {
+    assertThat(index.findSubType("POM", "NEW")).isNull()
+    whenever(repository.findAllWithSubTypes()).thenReturn(listOf(parentType("POM", true, subType(4, "NEW", true))))
+
+    index.onChange(CaseNoteTypesChanged("POM"))
+
+    assertThat(index.findSubType("POM", "NEW")).isEqualTo(SubType(4, "POM", "NEW", isParentActive = true, isActive = true))
+    assertThat(index.findSubType("POM", "GEN")).isNull()
+  }
+
+  private fun parentType(type: String, active: Boolean, vararg subTypes: SensitiveCaseNoteType.SensitiveCaseNoteTypeBuilder): ParentNoteType {
+    val parent = ParentNoteType.builder().type(type).description("$type description").active(active).build()
+    subTypes.forEach { parent.subTypes.add(it.parentType(parent).build()) }
+    return parent
+  }
+
+  private fun subType(id: Long, type: String, active: Boolean) =
+    SensitiveCaseNoteType.builder().id(id).type(type).description("$type description").active(active)
+}
@@ -0,0 +1,322 @@
+package uk.gov.justice.hmpps.casenotes.datagen
+
+import org.postgresql.PGConnection
+import org.slf4j.LoggerFactory
+import org.springframework.jdbc.datasource.DriverManagerDataSource
+import java.io.StringReader
+import java.sql.Connection
+import java.sql.Timestamp
+import java.time.LocalDateTime
+import java.time.format.DateTimeFormatter
+import java.util.Random
+import java.util.UUID
+import javax.sql.DataSource
+import kotlin.math.exp
+import kotlin.math.ln
+import kotlin.math.min
+import kotlin.math.pow
+
+/**
+ * Fills the case note tables with synthetic data shaped like production, for testing at scale.  A few prisoners have
+ * many case notes while most have only a handful, note lengths vary from a line to several pages, most notes are never
+ * amended, and the notes are spread unevenly across prisons and types.  Data is generated from a seed, so the same
+ * seed and size always gives the same data, and loaded in bulk - with COPY on Postgres, and batched inserts otherwise.
+ *
+ * The schema must already exist.  Any sensitive case note types that are missing are added first.  As when a note is
+ * saved or amended through the service, each note's modify time is that of its latest amendment, or its creation if it
+ * has none, so that generated notes show up in the change feeds and in publishing.
+ */
+class CaseNoteDataGenerator(
+  private val dataSource: DataSource,
+  private val seed: Long = 42,
+  private val batchSize: Int = 5000
+) {
+  companion object {
+    private val log = LoggerFactory.getLogger(this::class.java)
+    private val TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+    private const val USER_ID = "DATAGEN"
+
+    private val TYPES = listOf(
+      Type("POM", "POM Notes", "GEN", "General POM Note", 40),
+      Type("POM", "POM Notes", "SPECIAL", "Special POM Note", 10),
+      Type("OMIC", "OMiC", "GEN", "General OMiC Note", 25),
+      Type("OMIC", "OMiC", "OPEN_COMM", "Open Case Note", 10),
+      Type("SAFEGUARD", "Safeguarding", "GEN", "General Safeguarding Note", 8),
+      Type("SAFEGUARD", "Safeguarding", "REFERRAL", "Safeguarding Referral", 4),
+      Type("CHAPLAIN", "Chaplaincy", "GEN", "Chaplaincy Note", 3)
+    )
+
+    private val WORDS = (
+      "the prisoner was seen on the wing this morning and discussed their progress with education work and family " +
+        "contact they were polite and engaged well but raised concerns about a forthcoming visit which will be followed " +
+        "up with the offender manager before the next review of their sentence plan and risk assessment"
+      ).split(" ")
+
+    /**
+     * The identifier of the nth generated prisoner, in the NOMIS format e.g. G0001AA
+     */
+    fun offenderIdentifier(n: Int): String =
+      "G%04d%c%c".format(n % 10000, 'A' + (n / 10000) % 26, 'A' + (n / 260000) % 26)
+
+    /**
+     * Fills the database at a jdbc url, e.g. a local Postgres that the service has been started against:
+     * url username password [offenders [seed]]
+     */
+    @JvmStatic
+    fun main(args: Array<String>) {
+      require(args.size >= 3) { "Usage: url username password [offenders [seed]]" }
+      val dataSource = DriverManagerDataSource(args[0], args[1], args[2])
+      val offenders = args.getOrNull(3)?.toInt() ?: 10000
+      CaseNoteDataGenerator(dataSource, args.getOrNull(4)?.toLong() ?: 42).generate(offenders)
+    }
+  }
+
+  private val random = Random(seed)
+  private val now = LocalDateTime.of(2021, 4, 1, 0, 0)
+
+  fun generate(offenders: Int): GeneratedData {
+    val start = System.currentTimeMillis()
+    dataSource.connection.use { connection ->
+      connection.autoCommit = false
+      val typeIds = ensureTypes(connection)
+      val loader = if (connection.metaData.databaseProductName == "PostgreSQL") CopyLoader(connection) else BatchLoader(connection)
+
+      var caseNotes = 0L
+      var amendments = 0L
+      for (n in 0 until offenders) {
+        val offenderIdentifier = offenderIdentifier(n)
+        val location = location()
+        repeat(caseNotesFor()) {
+          val caseNoteId = UUID(random.nextLong(), random.nextLong())
+          val type = pick(TYPES) { it.weight }
+          val occurred = now.minusMinutes(random.nextInt(5 * 365 * 24 * 60).toLong())
+          val created = occurred.plusMinutes(random.nextInt(3 * 24 * 60).toLong())
+          val author = author()
+          // a prisoner's notes are mostly written where they are held, but some come from earlier prisons
+          val noteLocation = if (random.nextInt(5) == 0) location() else location
+          val text = text()
+          val noteAmendments = List(amendmentsFor()) { a -> Amendment(author(), text(), created.plusHours((a + 1) * (1L + random.nextInt(48)))) }
+          val lastModified = noteAmendments.maxByOrNull { it.created }
+          loader.caseNote(
+            caseNoteId, offenderIdentifier, noteLocation, author, typeIds.getValue(type.parentType to type.subType), occurred, text, created,
+            Modified(lastModified?.created ?: created, (lastModified?.author ?: author).username)
+          )
+          caseNotes++
+
+          noteAmendments.forEach {
+            loader.amendment(caseNoteId, it.author, it.text, it.created)
+            amendments++
+          }
+          if (loader.size >= batchSize) loader.flush()
+        }
+      }
+      loader.flush()
+      val generated = GeneratedData(offenders, caseNotes, amendments, System.currentTimeMillis() - start)
+      log.info("Generated {}", generated)
+      return generated
+    }
+  }
+
+  private fun ensureTypes(connection: Connection): Map<Pair<String, String>, Long> {
+    val now = Timestamp.valueOf(LocalDateTime.now())
+    TYPES.distinctBy { it.parentType }.forEach { type ->
+      connection.prepareStatement(
+        "INSERT INTO CASE_NOTE_PARENT_TYPE (NOTE_TYPE, DESCRIPTION, ACTIVE, CREATE_DATE_TIME, CREATE_USER_ID) " +
+          "SELECT ?, ?, true, ?, ? WHERE NOT EXISTS (SELECT 1 FROM CASE_NOTE_PARENT_TYPE WHERE NOTE_TYPE = ?)"
+      ).use {
+        it.setString(1, type.parentType)
+        it.setString(2, type.parentDescription)
+        it.setTimestamp(3, now)
+        it.setString(4, USER_ID)
+        it.setString(5, type.parentType)
+        it.executeUpdate()
+      }
+    }
+    TYPES.forEach { type ->
+      connection.prepareStatement(
+        "INSERT INTO CASE_NOTE_TYPE (PARENT_TYPE, SUB_TYPE, DESCRIPTION, ACTIVE, CREATE_DATE_TIME, CREATE_USER_ID) " +
+          "SELECT ?, ?, ?, true, ?, ? WHERE NOT EXISTS (SELECT 1 FROM CASE_NOTE_TYPE WHERE PARENT_TYPE = ? AND SUB_TYPE = ?)"
+      ).use {
+        it.setString(1, type.parentType)
+        it.setString(2, type.subType)
+        it.setString(3, type.description)
+        it.setTimestamp(4, now)
+        it.setString(5, USER_ID)
+        it.setString(6, type.parentType)
+        it.setString(7, type.subType)
+        it.executeUpdate()
+      }
+    }
+    connection.commit()
+
+    return connection.createStatement().use { statement ->
+      statement.executeQuery("SELECT CASE_NOTE_TYPE_ID, PARENT_TYPE, SUB_TYPE FROM CASE_NOTE_TYPE").use {
+        val ids = mutableMapOf<Pair<String, String>, Long>()
+        while (it.next()) ids[it.getString(2) to it.getString(3)] = it.getLong(1)
+        ids
+      }
+    }
+  }
+
+  /**
+   * Pareto distributed, so that most prisoners have a few notes and a small number have hundreds
+   */
+  private fun caseNotesFor(): Int = min(1000.0, (1 - random.nextDouble()).pow(-1 / 1.2)).toInt()
+
+  private fun amendmentsFor(): Int = when (random.nextInt(100)) {
+    in 0..84 -> 0
+    in 85..94 -> 1
+    in 95..98 -> 2
+    else -> 3 + random.nextInt(3)
+  }
+
+  /**
+   * Prison sizes are skewed, so the lower numbered of the 120 prisons hold more prisoners
+   */
+  private fun location(): String {
+    val prison = min(119.0, -ln(1 - random.nextDouble()) * 25).toInt()
+    return "P" + ('A' + prison / 26) + ('A' + prison % 26)
+  }
+
+  private fun author(): Author {
+    val n = min(4999.0, -ln(1 - random.nextDouble()) * 500).toInt()
+    return Author("STAFF_USER$n", "$n", "Staff Member$n")
+  }
+
+  /**
+   * Log-normal, so most notes are a few lines but some run to several pages
+   */
+  private fun text(): String {
+    val length = min(10000.0, exp(5.7 + random.nextGaussian() * 0.9)).toInt().coerceAtLeast(10)
+    val text = StringBuilder(length + 20)
+    while (text.length < length) text.append(WORDS[random.nextInt(WORDS.size)]).append(' ')
+    return text.substring(0, length).trim()
+  }
+
+  private fun <T> pick(items: List<T>, weight: (T) -> Int): T {
+    var choice = random.nextInt(items.sumOf(weight))
+    items.forEach {
+      choice -= weight(it)
+      if (choice < 0) return it
+    }
+    return items.last()
+  }
+
+  private abstract class Loader(protected val connection: Connection) {
+    abstract val size: Int
+
+    abstract fun caseNote(id: UUID, offenderIdentifier: String, locationId: String, author: Author, typeId: Long, occurred: LocalDateTime, text: String, created: LocalDateTime, modified: Modified)
+
+    abstract fun amendment(caseNoteId: UUID, author: Author, text: String, created: LocalDateTime)
+
+    /**
+     * Loads the case notes before their amendments, then commits
+     */
+    abstract fun flush()
+  }
+
+  private class CopyLoader(connection: Connection) : Loader(connection) {
+    private val copy = connection.unwrap(PGConnection::class.java).copyAPI
+    private val caseNotes = StringBuilder()
+    private val amendments = StringBuilder()
+    override var size = 0
+
+    override fun caseNote(id: UUID, offenderIdentifier: String, locationId: String, author: Author, typeId: Long, occurred: LocalDateTime, text: String, created: LocalDateTime, modified: Modified) {
+      caseNotes.csv(
+        id, offenderIdentifier, locationId, author.username, author.userId, author.name, typeId, occurred.format(TIMESTAMP_FORMAT), text,
+        created.format(TIMESTAMP_FORMAT), USER_ID, modified.dateTime.format(TIMESTAMP_FORMAT), modified.userId
+      )
+      size++
+    }
+
+    override fun amendment(caseNoteId: UUID, author: Author, text: String, created: LocalDateTime) {
+      amendments.csv(caseNoteId, author.username, author.userId, author.name, text, created.format(TIMESTAMP_FORMAT), USER_ID)
+      size++
+    }
+
+    override fun flush() {
+      copy.copyIn(
+        "COPY OFFENDER_CASE_NOTE (OFFENDER_CASE_NOTE_ID, OFFENDER_IDENTIFIER, LOCATION_ID, AUTHOR_USERNAME, AUTHOR_USER_ID, AUTHOR_NAME, " +
+          "CASE_NOTE_TYPE_ID, OCCURRENCE_DATE_TIME, NOTE_TEXT, CREATE_DATE_TIME, CREATE_USER_ID, MODIFY_DATE_TIME, MODIFY_USER_ID) FROM STDIN (FORMAT csv)",
+        StringReader(caseNotes.toString())
+      )
+      copy.copyIn(
+        "COPY OFFENDER_CASE_NOTE_AMENDMENT (OFFENDER_CASE_NOTE_ID, AUTHOR_USERNAME, AUTHOR_USER_ID, AUTHOR_NAME, NOTE_TEXT, " +
+          "CREATE_DATE_TIME, CREATE_USER_ID) FROM STDIN (FORMAT csv)",
+        StringReader(amendments.toString())
+      )
+      connection.commit()
+      caseNotes.setLength(0)
+      amendments.setLength(0)
+      size = 0
+    }
+
+    private fun StringBuilder.csv(vararg values: Any) {
+      values.forEachIndexed { i, value ->
+        if (i > 0) append(',')
+        append('"').append(value.toString().replace("\"", "\"\"")).append('"')
+      }
+      append('\n')
+    }
+  }
+
+  private class BatchLoader(connection: Connection) : Loader(connection) {
+    private val caseNotes = connection.prepareStatement(
+      "INSERT INTO OFFENDER_CASE_NOTE (OFFENDER_CASE_NOTE_ID, OFFENDER_IDENTIFIER, LOCATION_ID, AUTHOR_USERNAME, AUTHOR_USER_ID, " +
+        "AUTHOR_NAME, CASE_NOTE_TYPE_ID, OCCURRENCE_DATE_TIME, NOTE_TEXT, CREATE_DATE_TIME, CREATE_USER_ID, MODIFY_DATE_TIME, MODIFY_USER_ID) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+    )
+    private val amendments = connection.prepareStatement(
+      "INSERT INTO OFFENDER_CASE_NOTE_AMENDMENT (OFFENDER_CASE_NOTE_ID, AUTHOR_USERNAME, AUTHOR_USER_ID, AUTHOR_NAME, NOTE_TEXT, " +
+        "CREATE_DATE_TIME, CREATE_USER_ID) VALUES (?, ?, ?, ?, ?, ?, ?)"
+    )
+    override var size = 0
+
+    override fun caseNote(id: UUID, offenderIdentifier: String, locationId: String, author: Author, typeId: Long, occurred: LocalDateTime, text: String, created: LocalDateTime, modified: Modified) {
+      caseNotes.setObject(1, id)
+      caseNotes.setString(2, offenderIdentifier)
+      caseNotes.setString(3, locationId)
+      caseNotes.setString(4, author.username)
+      caseNotes.setString(5, author.userId)
+      caseNotes.setString(6, author.name)
+      caseNotes.setLong(7, typeId)
+      caseNotes.setTimestamp(8, Timestamp.valueOf(occurred))
+      caseNotes.setString(9, text)
+      caseNotes.setTimestamp(10, Timestamp.valueOf(created))
+      caseNotes.setString(11, USER_ID)
+      caseNotes.setTimestamp(12, Timestamp.valueOf(modified.dateTime))
+      caseNotes.setString(13, modified.userId)
+      caseNotes.addBatch()
+      size++
+    }
+
+    override fun amendment(caseNoteId: UUID, author: Author, text: String, created: LocalDateTime) {
+      amendments.setObject(1, caseNoteId)
+      amendments.setString(2, author.username)
+      amendments.setString(3, author.userId)
+      amendments.setString(4, author.name)
+      amendments.setString(5, text)
+      amendments.setTimestamp(6, Timestamp.valueOf(created))
+      amendments.setString(7, USER_ID)
+      amendments.addBatch()
+      size++
+    }
+
+    override fun flush() {
+      caseNotes.executeBatch()
+      amendments.executeBatch()
+      connection.commit()
+      size = 0
+    }
+  }
+
+  private data class Type(val parentType: String, val parentDescription: String, val subType: String, val description: String, val weight: Int)
+
+  private data class Author(val username: String, val userId: String, val name: String)
+
+  private data class Amendment(val author: Author, val text: String, val created: LocalDateTime)
+
+  private data class Modified(val dateTime: LocalDateTime, val userId: String)
+}
+
+data class GeneratedData(val offenders: Int, val caseNotes: Long, val amendments: Long, val elapsedMillis: Long)